@@ -64,6 +64,10 @@ public class BrackitConnection {
 		send('b');
 	}
 
+	public void begin(boolean readOnly) throws BrackitException {
+		send((readOnly) ? 'B' : 'b');
+	}
+
 	public void commit() throws BrackitException {
 		send('c');
 	}
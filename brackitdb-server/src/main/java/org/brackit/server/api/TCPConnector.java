@@ -161,6 +161,10 @@ public class TCPConnector implements Runnable {
 							session.begin(false);
 							writeString(to, "begin");
 							break;
+						case 'B':
+							session.begin(true);
+							writeString(to, "begin");
+							break;
 						case 'c':
 							session.commit();
 							writeString(to, "commit");
@@ -28,6 +28,8 @@
 package org.brackit.server.io.buffer;
 
 import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
 
 import org.brackit.server.io.buffer.log.PageLogOperation.PageUnitPair;
 import org.brackit.server.tx.Tx;
@@ -60,6 +62,21 @@ public interface Buffer {
 
 	public Handle allocatePage(Tx tx, int unitID) throws BufferException;
 
+	/**
+	 * Allocates a page for a bulk load whose page contents are not logged but
+	 * forced at commit. If the unit was created by the given transaction, the
+	 * allocation is not logged either because an undo of the unit creation
+	 * releases all blocks of the unit. Instead, the block space metadata is
+	 * forced with {@link #syncBulkAllocations(Tx)} or at commit at the latest.
+	 */
+	public Handle allocateBulkPage(Tx tx, int unitID) throws BufferException;
+
+	/**
+	 * Forces the block space metadata if the given transaction allocated pages
+	 * without logging since the last call.
+	 */
+	public void syncBulkAllocations(Tx tx) throws BufferException;
+
 	/**
 	 * @param force
 	 *            if pageID != null, this flag forces the allocation of the
@@ -77,6 +94,27 @@ public interface Buffer {
 
 	public Handle fixPage(Tx tx, PageID pageID) throws BufferException;
 
+	/**
+	 * Returns the IDs of the resident pages ordered from the hottest to the
+	 * coldest page according to the replacement strategy.
+	 */
+	public List<PageID> getHotPages();
+
+	/**
+	 * Loads up to <code>numPages</code> consecutive pages starting with the
+	 * given page without fixing them. Unused and resident pages are skipped.
+	 */
+	public void preload(PageID pageID, int numPages) throws BufferException;
+
+	/**
+	 * Fixes a page like {@link #fixPage(Tx, PageID)}. If <code>bulk</code>
+	 * is set, the page is accessed as part of a large scan. Pages loaded for
+	 * bulk reads cycle through a small set of frames and do not displace the
+	 * working set of other transactions.
+	 */
+	public Handle fixPage(Tx tx, PageID pageID, boolean bulk)
+			throws BufferException;
+
 	public void unfixPage(Handle handle) throws BufferException;
 
 	public void clear() throws BufferException;
@@ -89,6 +127,12 @@ public interface Buffer {
 
 	public long checkMinRedoLSN();
 
+	/**
+	 * Adds all dirty pages together with their redo LSN, i.e., the LSN of the
+	 * first update since the page was last written, to the given table.
+	 */
+	public void getDirtyPages(Map<PageID, Long> dirtyPageTable);
+
 	public void sync() throws BufferException;
 
 	public int getFixCount();
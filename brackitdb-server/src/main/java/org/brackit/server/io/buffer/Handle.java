@@ -31,7 +31,7 @@ import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.brackit.server.tx.Tx;
-import org.brackit.server.tx.thread.SyncLatch;
+import org.brackit.server.tx.thread.AtomicLatch;
 import org.brackit.server.util.Calc;
 
 /**
@@ -46,7 +46,7 @@ import org.brackit.server.util.Calc;
  * @author Sebastian Baechle
  * 
  */
-public class Handle extends SyncLatch {
+public class Handle extends AtomicLatch {
 	/**
 	 * Size of the page header in bytes.
 	 * <ul>
@@ -102,7 +102,10 @@ public class Handle extends SyncLatch {
 
 	public synchronized void setModified(boolean modified) {
 		this.modified = modified;
-		this.redoLSN = Long.MAX_VALUE;
+
+		if (!modified) {
+			this.redoLSN = Long.MAX_VALUE;
+		}
 	}
 
 	public void setRedoLSN(long LSN) {
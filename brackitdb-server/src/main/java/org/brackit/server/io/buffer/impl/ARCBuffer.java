@@ -0,0 +1,273 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.io.buffer.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.brackit.server.io.buffer.BufferException;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.io.file.BlockSpace;
+import org.brackit.server.io.manager.BufferMgr;
+import org.brackit.server.tx.log.Log;
+import org.brackit.xquery.util.Cfg;
+
+/**
+ * Buffer with adaptive replacement (ARC). Pages referenced once are kept in
+ * the recency list T1 and pages referenced at least twice in the frequency
+ * list T2. The ghost lists B1 and B2 remember the IDs of pages recently
+ * replaced from T1 and T2, respectively. A fault on a ghost page shifts the
+ * target size of T1 towards the list which would have kept the page, so that
+ * one-time scans only compete for the recency part of the buffer.
+ * <p>
+ * Like in 2Q, prefetched pages are kept in a separate list and are replaced
+ * first.
+ */
+public final class ARCBuffer extends AbstractBuffer {
+
+	final class ARCPartition extends Partition {
+		private final class ARCFrame extends Frame {
+			FrameList list;
+			ARCFrame toLRU;
+			ARCFrame toMRU;
+
+			ARCFrame(int pageSize) {
+				super(pageSize);
+			}
+
+			@Override
+			void drop() {
+				if (list != null) {
+					list.remove(this);
+				}
+			}
+
+			@Override
+			void prefetched() {
+				p.addAsMRU(this);
+			}
+
+			@Override
+			void referenced() {
+				if ((list == null) || (list == p)) {
+					if (list == p) {
+						p.remove(this);
+					}
+					PageID pageID = getPageID();
+					if (b1.remove(pageID)) {
+						// T1 was too small to keep the page
+						target = Math.min(size, target
+								+ Math.max(b2.size() / Math.max(1, b1.size()), 1));
+						t2.addAsMRU(this);
+					} else if (b2.remove(pageID)) {
+						// T2 was too small to keep the page
+						target = Math.max(0, target
+								- Math.max(b1.size() / Math.max(1, b2.size()), 1));
+						t2.addAsMRU(this);
+					} else {
+						t1.addAsMRU(this);
+					}
+				} else {
+					// second reference: (re-)insert as MRU of T2
+					list.remove(this);
+					t2.addAsMRU(this);
+				}
+			}
+
+			@Override
+			public String toString() {
+				return super.toString()
+						+ ((list != null) ? list.name : "FREE");
+			}
+		}
+
+		final class FrameList {
+			final String name;
+			ARCFrame lru;
+			ARCFrame mru;
+			int length;
+
+			FrameList(String name) {
+				this.name = name;
+			}
+
+			void addAsMRU(ARCFrame frame) {
+				if (mru == null) {
+					lru = frame;
+				} else {
+					mru.toMRU = frame;
+					frame.toLRU = mru;
+				}
+				mru = frame;
+				frame.list = this;
+				length++;
+			}
+
+			void remove(ARCFrame frame) {
+				if (frame.toLRU == null)
+					lru = frame.toMRU;
+				else
+					frame.toLRU.toMRU = frame.toMRU;
+
+				if (frame.toMRU == null)
+					mru = frame.toLRU;
+				else
+					frame.toMRU.toLRU = frame.toLRU;
+
+				frame.toLRU = null;
+				frame.toMRU = null;
+				frame.list = null;
+				length--;
+			}
+
+			ARCFrame replaceableLRU() {
+				for (ARCFrame f = lru; f != null; f = f.toMRU) {
+					if (f.isReplaceable()) {
+						return f;
+					}
+				}
+				return null;
+			}
+
+			void victims(List<Frame> victims, int max) {
+				for (ARCFrame f = lru; (f != null) && (victims.size() < max); f = f.toMRU) {
+					if (f.fix == 0) {
+						victims.add(f);
+					}
+				}
+			}
+		}
+
+		// prefetched
+		final FrameList p = new FrameList("PREFETCHED");
+
+		// recency
+		final FrameList t1 = new FrameList("T1");
+
+		// frequency
+		final FrameList t2 = new FrameList("T2");
+
+		// ghosts of T1 and T2 in LRU order
+		final LinkedHashSet<PageID> b1 = new LinkedHashSet<PageID>();
+
+		final LinkedHashSet<PageID> b2 = new LinkedHashSet<PageID>();
+
+		/**
+		 * Adaptive target size of T1
+		 */
+		int target;
+
+		ARCPartition(int no, int size) {
+			super(no, size);
+		}
+
+		@Override
+		protected Frame grow(int pageSize) {
+			return new ARCFrame(pageSize);
+		}
+
+		@Override
+		protected Frame shrink() {
+			ARCFrame victim = p.replaceableLRU();
+			if (victim != null) {
+				p.remove(victim);
+				return victim;
+			}
+
+			boolean fromT1 = (t1.length > 0)
+					&& ((t1.length > target) || (t2.length == 0));
+			FrameList first = (fromT1) ? t1 : t2;
+			FrameList second = (fromT1) ? t2 : t1;
+
+			if ((victim = first.replaceableLRU()) == null) {
+				if ((victim = second.replaceableLRU()) == null) {
+					return null;
+				}
+				first = second;
+			}
+
+			first.remove(victim);
+			remember((first == t1) ? b1 : b2, victim.getPageID());
+			return victim;
+		}
+
+		private void remember(LinkedHashSet<PageID> ghosts, PageID pageID) {
+			if (pageID == null) {
+				return;
+			}
+			ghosts.add(pageID);
+			// |T1| + |B1| <= c and |T1| + |T2| + |B1| + |B2| <= 2c
+			trim(b1, size - t1.length);
+			trim(b2, 2 * size - t1.length - t2.length - b1.size());
+		}
+
+		private void trim(LinkedHashSet<PageID> ghosts, int max) {
+			for (Iterator<PageID> it = ghosts.iterator(); (ghosts.size() > Math
+					.max(0, max)) && (it.hasNext());) {
+				it.next();
+				it.remove();
+			}
+		}
+
+		@Override
+		protected void victims(List<Frame> victims, int max) {
+			p.victims(victims, max);
+			if ((t1.length > target) || (t2.length == 0)) {
+				t1.victims(victims, max);
+				t2.victims(victims, max);
+			} else {
+				t2.victims(victims, max);
+				t1.victims(victims, max);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return super.toString()
+					+ String.format(", T1 %s (target %s), T2 %s, B1 %s, B2 %s",
+							t1.length, target, t2.length, b1.size(), b2.size());
+		}
+	}
+
+	public ARCBuffer(BlockSpace blockSpace, int bufferSize, Log transactionLog,
+			BufferMgr bufferMgr) throws BufferException {
+		this(blockSpace, bufferSize, Cfg.asInt(PARTITIONS, 1), transactionLog,
+				bufferMgr);
+	}
+
+	public ARCBuffer(BlockSpace blockSpace, int bufferSize, int partitions,
+			Log transactionLog, BufferMgr bufferMgr) throws BufferException {
+		super(blockSpace, bufferSize, partitions, transactionLog, bufferMgr);
+	}
+
+	@Override
+	protected Partition createPartition(int no, int size) {
+		return new ARCPartition(no, size);
+	}
+}
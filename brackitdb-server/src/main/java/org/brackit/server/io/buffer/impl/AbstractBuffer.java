@@ -39,7 +39,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import org.brackit.server.ServerException;
 import org.brackit.server.io.buffer.Buffer;
@@ -66,6 +71,7 @@ import org.brackit.server.tx.log.LogException;
 import org.brackit.server.tx.thread.ThreadCB;
 import org.brackit.server.xquery.function.bdb.statistics.InfoContributor;
 import org.brackit.server.xquery.function.bdb.statistics.ListBuffer;
+import org.brackit.xquery.util.Cfg;
 import org.brackit.xquery.util.log.Logger;
 
 /**
@@ -76,21 +82,165 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 
 	protected static abstract class Frame extends Handle {
 
+		/**
+		 * Signals a pending read or write-back of this frame. Only accessed
+		 * while holding the monitor of the owning partition.
+		 */
+		private CountDownLatch io;
+
+		/**
+		 * Number of fixes. Only modified while holding the monitor of the
+		 * owning partition.
+		 */
+		volatile int fix;
+
+		/**
+		 * Indicates that the frame belongs to the bulk-read ring of its
+		 * partition and not to the replacement lists.
+		 */
+		boolean bulk;
+
+		/**
+		 * Indicates that the page cleaner holds a shared latch on the frame
+		 * while it writes it back. Such frames must not be chosen for
+		 * replacement. Only accessed while holding the monitor of the owning
+		 * partition.
+		 */
+		boolean cleaning;
+
 		public Frame(int pageSize) {
 			super(pageSize);
 		}
 
+		final void beginIO() {
+			io = new CountDownLatch(1);
+		}
+
+		final void endIO() {
+			io.countDown();
+			io = null;
+		}
+
+		final CountDownLatch pendingIO() {
+			return io;
+		}
+
+		final void unfix() {
+			if (fix-- == 0) {
+				throw new RuntimeException("handle already unfixed");
+			}
+		}
+
+		final boolean isFixed() {
+			return fix > 0;
+		}
+
+		/**
+		 * Indicates whether the frame can be latched exclusively for
+		 * replacement without blocking.
+		 */
+		final boolean isReplaceable() {
+			return (fix == 0) && (!cleaning);
+		}
+
+		final int fixCount() {
+			return fix;
+		}
+
+		/**
+		 * Removes the frame from the replacement lists.
+		 */
 		abstract void drop();
 
+		/**
+		 * Adds a loaded but not yet fixed frame to the replacement lists.
+		 */
 		abstract void prefetched();
 
-		abstract void fix();
+		/**
+		 * Updates the replacement lists for a fix of the frame.
+		 */
+		abstract void referenced();
+	}
+
+	/**
+	 * A partition (shard) of the buffer. Each partition maintains its own
+	 * page table, frame pool, replacement lists and statistics. All these
+	 * structures are guarded by the monitor of the partition, so that threads
+	 * accessing pages of different partitions never contend on a common lock.
+	 * Code must never hold the monitors of two partitions at the same time.
+	 */
+	protected abstract class Partition {
+		/**
+		 * Contains the mapping of page number to buffer position
+		 */
+		final HashMap<PageID, Frame> pageNoToFrame;
+
+		final List<Frame> pool;
+
+		/**
+		 * Frames of pages loaded for bulk reads in load order. They are
+		 * recycled among themselves and never enter the replacement lists.
+		 */
+		final LinkedHashSet<Frame> ring;
+
+		final int ringSize;
+
+		final int no;
+
+		/**
+		 * Number of maintained buffer positions in this partition
+		 */
+		final int size;
+
+		int unfixCnt;
+
+		int fixCnt;
+
+		int hitCnt;
+
+		int faultCnt;
 
-		abstract void unfix();
+		int readAheadCnt;
 
-		abstract boolean isFixed();
+		/**
+		 * Number of dirty victims written back on behalf of a fixer
+		 */
+		int dirtyVictimCnt;
 
-		abstract int fixCount();
+		/**
+		 * Signals the end of a write-back of the page cleaner
+		 */
+		CountDownLatch cleaned;
+
+		protected Partition(int no, int size) {
+			this.no = no;
+			this.size = size;
+			this.pageNoToFrame = new HashMap<PageID, Frame>();
+			this.pool = new ArrayList<Frame>(size);
+			this.ring = new LinkedHashSet<Frame>();
+			this.ringSize = Math.max(1, Math.min(Cfg.asInt(RING_SIZE, 16),
+					size / 8));
+		}
+
+		protected abstract Frame shrink();
+
+		protected abstract Frame grow(int pageSize);
+
+		/**
+		 * Collects up to <code>max</code> unfixed frames in the order in
+		 * which they are going to be chosen as replacement victims.
+		 */
+		protected abstract void victims(List<Frame> victims, int max);
+
+		@Override
+		public String toString() {
+			return String.format("partition %s: %s pages, %s fixed,"
+					+ " buffer hit ratio %s, fault ratio %s, dirty victims %s,"
+					+ " read ahead %s, bulk ring %s/%s", no, size, fixCnt
+					- unfixCnt, hitCnt, faultCnt, dirtyVictimCnt,
+					readAheadCnt, ring.size(), ringSize);
+		}
 	}
 
 	private final class DeallocateHook implements PreCommitHook,
@@ -168,18 +318,14 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 			// release single pages
 			for (PageUnitPair entry : pageList) {
 				try {
-					Frame frame = pageNoToFrame.remove(entry.pageID);
-					if (frame != null) {
-						// The handle of a deleted page is allowed to be fixed
-						// by concurrent threads. However, the safe flag should
-						// be
-						// used in this case to signal them that they
-						// must not use the handle anymore.
-						// To avoid any change for corruption we drop the
-						// handle!
-						frame.drop();
-						pool.remove(frame);
-					}
+					// The handle of a deleted page is allowed to be fixed
+					// by concurrent threads. However, the safe flag should
+					// be
+					// used in this case to signal them that they
+					// must not use the handle anymore.
+					// To avoid any change for corruption we drop the
+					// handle!
+					dropFrame(entry.pageID);
 
 					deallocateBlock(entry.pageID, entry.unitID, force);
 				} catch (BufferException e) {
@@ -195,22 +341,7 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 			// drop units
 			for (int unitID : unitList) {
 				try {
-					ArrayList<Frame> toDrop = new ArrayList<Frame>();
-
-					// determine frames that belong to this unit
-					for (Frame frame : pool) {
-						if (frame.getUnitID() == unitID) {
-							pageNoToFrame.remove(frame.getPageID());
-							frame.drop();
-							toDrop.add(frame);
-						}
-					}
-
-					// drop frames
-					for (Frame frame : toDrop) {
-						pool.remove(frame);
-					}
-
+					dropFrames(unitID);
 					blockSpace.dropUnit(unitID, force);
 				} catch (StoreException e) {
 					// log the exception, but continue to drop the
@@ -229,6 +360,27 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		}
 	}
 
+	/**
+	 * Remembers the units created by a transaction and forces the block space
+	 * metadata at commit if pages of these units were allocated without
+	 * logging.
+	 */
+	private final class BulkAllocationHook implements PreCommitHook {
+		private final Set<Integer> units = new HashSet<Integer>();
+
+		private boolean unsynced;
+
+		@Override
+		public void prepare(Tx tx) throws ServerException {
+			syncBulkAllocations(tx);
+		}
+
+		@Override
+		public void abort(Tx tx) throws ServerException {
+			// unlogged allocations are released with the unit
+		}
+	}
+
 	private class PageReleaserImpl implements PageReleaser {
 
 		private final PageID pageID;
@@ -243,18 +395,162 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 
 		@Override
 		public void release() throws BufferException {
+			// The handle of a deleted page is allowed to be fixed
+			// by concurrent threads. However, the safe flag should be
+			// used in this case to signal them that they
+			// must not use the handle anymore.
+			// To avoid any change for corruption we drop the handle!
+			dropFrame(pageID);
+			deallocateBlock(pageID, unitID, force);
+		}
+	}
+
+	/**
+	 * A page load which is performed outside the partition monitor. The
+	 * frames are reserved and mapped while holding the monitor and marked as
+	 * in transit. Then the monitor is released to write back dirty victims
+	 * and to read the requested blocks. Finally, the loaded frames are
+	 * published under the monitor again. Concurrent fixers of the affected
+	 * pages only wait for the I/O of the particular frame.
+	 */
+	private final class Load {
+		private final Partition p;
+
+		private final PageID pageID;
+
+		private final List<Frame> frames;
+
+		private final List<Frame> victims;
 
-			Frame frame = pageNoToFrame.remove(pageID);
-			if (frame != null) {
-				// The handle of a deleted page is allowed to be fixed
-				// by concurrent threads. However, the safe flag should be
-				// used in this case to signal them that they
-				// must not use the handle anymore.
-				// To avoid any change for corruption we drop the handle!
-				frame.drop();
-				pool.remove(frame);
+		private final List<PageID> victimPageIDs;
+
+		private final boolean bulk;
+
+		Load(Partition p, PageID pageID, List<Frame> frames, boolean bulk) {
+			this.p = p;
+			this.bulk = bulk;
+			this.pageID = pageID;
+			this.frames = frames;
+			this.victims = new ArrayList<Frame>();
+			this.victimPageIDs = new ArrayList<PageID>();
+
+			int containerNo = pageID.getContainerNo();
+			int blockNo = pageID.getBlockNo();
+			for (Frame frame : frames) {
+				frame.beginIO();
+				PageID oldPageID = frame.getPageID();
+				if (oldPageID != null) {
+					if (frame.isModified()) {
+						// dirty page remains mapped until it is written back
+						victims.add(frame);
+						victimPageIDs.add(oldPageID);
+						p.dirtyVictimCnt++;
+					} else {
+						// unmap clean page directly
+						p.pageNoToFrame.remove(oldPageID);
+					}
+				}
+				if (p.pageNoToFrame.put(new PageID(containerNo, blockNo++),
+						frame) != null)
+					throw new RuntimeException(pageID.toString());
+			}
+		}
+
+		int size() {
+			return frames.size();
+		}
+
+		Frame execute(boolean fix) throws BufferException {
+			int fetched;
+
+			try {
+				if (!victims.isEmpty()) {
+					if (cleaner != null) {
+						// the cleaner seems to lag behind
+						cleaner.wakeup();
+					}
+					flush(new ArrayList<Frame>(victims));
+				}
+
+				// blocks are scattered into the frames without a staging
+				// array (the channel still copies via a direct buffer)
+				int containerNo = pageID.getContainerNo();
+				int blockNo = pageID.getBlockNo();
+				byte[][] pages = new byte[frames.size()][];
+				for (int i = 0; i < pages.length; i++) {
+					Frame frame = frames.get(i);
+					// unitID not relevant, since it is overwritten by the read
+					frame.init(new PageID(containerNo, blockNo + i), 0);
+					pages[i] = frame.page;
+				}
+				fetched = (pages.length == 1) ? readBlocks(pageID, pages[0], 1)
+						: readBlocks(pageID, pages, pages.length);
+			} catch (BufferException e) {
+				synchronized (p) {
+					abort();
+				}
+				throw e;
+			}
+
+			synchronized (p) {
+				return publish(fetched, fix);
+			}
+		}
+
+		private Frame publish(int fetched, boolean fix) {
+			Frame requested = frames.get(0);
+
+			// remove written back pages from the mapping
+			for (int i = 0; i < victims.size(); i++) {
+				unmap(p, victimPageIDs.get(i), victims.get(i));
+			}
+
+			// mark loaded frames as prefetched and
+			// kick out frames of blocks that were not read
+			int containerNo = pageID.getContainerNo();
+			int blockNo = pageID.getBlockNo();
+			for (int i = 0; i < frames.size(); i++) {
+				Frame frame = frames.get(i);
+				if (i < fetched) {
+					if (!frame.bulk) {
+						frame.prefetched();
+					}
+				} else {
+					unmap(p, new PageID(containerNo, blockNo + i), frame);
+					release(p, frame);
+				}
+				frame.endIO();
+				frame.unlatch();
+			}
+
+			if (fix) {
+				fix(p, requested, bulk);
+			}
+			return requested;
+		}
+
+		private void abort() {
+			int containerNo = pageID.getContainerNo();
+			int blockNo = pageID.getBlockNo();
+			for (int i = 0; i < frames.size(); i++) {
+				Frame frame = frames.get(i);
+				unmap(p, new PageID(containerNo, blockNo + i), frame);
+				int victim = victims.indexOf(frame);
+				if ((victim >= 0) && (frame.isModified())) {
+					// write back failed: keep the dirty page
+					if (!frame.bulk) {
+						frame.prefetched();
+					}
+				} else {
+					if (victim >= 0) {
+						unmap(p, victimPageIDs.get(victim), frame);
+					}
+					// frame is free: simply kick it out
+					release(p, frame);
+				}
+				frame.endIO();
+				frame.unlatch();
 			}
-			deallocateBlock(pageID, unitID, force);
 		}
 	}
 
@@ -296,11 +592,59 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 	 */
 	private final static boolean FIX_DEBUG = false;
 
-	// buffer management
 	/**
-	 * Contains the mapping of page number to buffer position
+	 * Name of the configuration property for the number of buffer partitions
+	 */
+	public static final String PARTITIONS = "org.brackit.server.io.buffer.partitions";
+
+	/**
+	 * Number of consecutive blocks which are mapped to the same partition.
+	 * Striping keeps prefetch and write runs within a single partition.
 	 */
-	private final HashMap<PageID, Frame> pageNoToFrame;
+	private static final int PARTITION_STRIPE = 64;
+
+	/**
+	 * Name of the configuration property to enable the background page
+	 * cleaner
+	 */
+	public static final String CLEANER = "org.brackit.server.io.buffer.cleaner";
+
+	/**
+	 * Name of the configuration property for the cleaner interval in ms
+	 */
+	public static final String CLEANER_INTERVAL = "org.brackit.server.io.buffer.cleaner.interval";
+
+	/**
+	 * Name of the configuration property for the percentage of each partition
+	 * which the cleaner keeps clean at the replacement end
+	 */
+	public static final String CLEANER_SHARE = "org.brackit.server.io.buffer.cleaner.share";
+
+	/**
+	 * Name of the configuration property to enable asynchronous read-ahead
+	 * for sequential scans
+	 */
+	public static final String READ_AHEAD = "org.brackit.server.io.buffer.readahead";
+
+	/**
+	 * Name of the configuration property for the number of read-ahead threads
+	 */
+	public static final String READ_AHEAD_THREADS = "org.brackit.server.io.buffer.readahead.threads";
+
+	/**
+	 * Name of the configuration property for the maximum read-ahead window in
+	 * pages
+	 */
+	public static final String READ_AHEAD_MAX = "org.brackit.server.io.buffer.readahead.max";
+
+	/**
+	 * Name of the configuration property for the maximum number of frames per
+	 * partition which are used for bulk reads
+	 */
+	public static final String RING_SIZE = "org.brackit.server.io.buffer.ring";
+
+	// buffer management
+	private final Partition[] partitions;
 
 	// Initilization-dependent fields
 	/**
@@ -319,46 +663,85 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 
 	private final int prefetchSize;
 
-	private final byte[] prefetchBuffer;
-
 	private final int writeSize;
 
-	private final byte[] writeBuffer;
-
-	private final List<Frame> pool;
-
-	private int unfixCnt;
+	private final String deallocateHookName;
 
-	private int fixCnt;
+	private final String bulkAllocationHookName;
 
-	private int hitCnt;
+	private final PageCleaner cleaner;
 
-	private int faultCnt;
+	private final int cleanShare;
 
-	private final String deallocateHookName;
+	private final ReadAhead readAhead;
 
 	public AbstractBuffer(BlockSpace blockSpace, int bufferSize,
 			Log transactionLog, BufferMgr bufferMgr) throws BufferException {
+		this(blockSpace, bufferSize, 1, transactionLog, bufferMgr);
+	}
+
+	public AbstractBuffer(BlockSpace blockSpace, int bufferSize,
+			int partitionCount, Log transactionLog, BufferMgr bufferMgr)
+			throws BufferException {
 		this.transactionLog = transactionLog;
 		this.blockSpace = blockSpace;
 		this.bufferSize = bufferSize;
-		this.pageNoToFrame = new HashMap<PageID, Frame>();
-		this.pool = new ArrayList<Frame>(bufferSize);
 		// open first to determine page size
 		open();
 		this.prefetchSize = 10;
-		this.prefetchBuffer = new byte[prefetchSize * pageSize];
 		this.writeSize = 40;
-		this.writeBuffer = new byte[writeSize * pageSize];
+		partitionCount = Math.max(1, Math.min(partitionCount, bufferSize));
+		this.partitions = new Partition[partitionCount];
+		for (int i = 0; i < partitionCount; i++) {
+			int size = (bufferSize / partitionCount)
+					+ ((i < bufferSize % partitionCount) ? 1 : 0);
+			partitions[i] = createPartition(i, size);
+		}
 		ListBuffer.add(this);
 
 		this.deallocateHookName = String
 				.format("DEALLOC%s", blockSpace.getId());
+		this.bulkAllocationHookName = String.format("BULKALLOC%s", blockSpace
+				.getId());
+
+		this.cleanShare = Math.max(1,
+				Math.min(Cfg.asInt(CLEANER_SHARE, 25), 100));
+		if (Cfg.asBool(CLEANER, false)) {
+			this.cleaner = new PageCleaner(this, Cfg.asInt(CLEANER_INTERVAL,
+					100));
+			this.cleaner.start();
+		} else {
+			this.cleaner = null;
+		}
+
+		if (Cfg.asBool(READ_AHEAD, false)) {
+			// a window must never occupy more than a quarter of a partition
+			int maxWindow = Math.min(Cfg.asInt(READ_AHEAD_MAX, 64),
+					(bufferSize / partitionCount) / 4);
+			this.readAhead = new ReadAhead(this, Math.max(1, Cfg.asInt(
+					READ_AHEAD_THREADS, 2)), maxWindow);
+			this.readAhead.start();
+		} else {
+			this.readAhead = null;
+		}
 	}
 
-	protected abstract Frame shrink();
+	protected abstract Partition createPartition(int no, int size);
+
+	/**
+	 * Returns the partition responsible for the given page.
+	 */
+	protected final Partition partition(PageID pageID) {
+		if (partitions.length == 1) {
+			return partitions[0];
+		}
+		int h = (pageID.getBlockNo() / PARTITION_STRIPE) * 0x9E3779B9;
+		return partitions[(h >>> 1) % partitions.length];
+	}
 
-	protected abstract Frame grow(int pageSize);
+	public int getPartitionCount() {
+		return partitions.length;
+	}
 
 	public synchronized void open() throws BufferException {
 		if (!blockSpace.isClosed()) {
@@ -372,48 +755,91 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		}
 	}
 
-	public synchronized Handle fixPage(Tx transaction, PageID pageID)
+	public Handle fixPage(Tx transaction, PageID pageID)
 			throws BufferException {
-		Frame requested = pageNoToFrame.get(pageID);
+		return fixPage(transaction, pageID, false);
+	}
 
-		if (requested == null) {
-			faultCnt++;
-			requested = load(pageID);
-		} else {
-			hitCnt++;
+	public Handle fixPage(Tx transaction, PageID pageID, boolean bulk)
+			throws BufferException {
+		Frame frame = fixFrame(pageID, bulk);
+		if (readAhead != null) {
+			readAhead.access(frame.getUnitID(), pageID.getBlockNo());
 		}
+		return frame;
+	}
+
+	private Frame fixFrame(PageID pageID, boolean bulk)
+			throws BufferException {
+		Partition p = partition(pageID);
+
+		while (true) {
+			Load load = null;
+			CountDownLatch pending;
 
+			synchronized (p) {
+				Frame requested = p.pageNoToFrame.get(pageID);
+
+				if (requested == null) {
+					load = prepareLoad(p, pageID, prefetchSize, bulk);
+					if (load != null) {
+						p.faultCnt++;
+					}
+					pending = (load == null) ? pendingIO(p) : null;
+				} else if ((pending = requested.pendingIO()) == null) {
+					p.hitCnt++;
+					fix(p, requested, bulk);
+					return requested;
+				}
+			}
+
+			if (load != null) {
+				// perform I/O without holding the partition monitor
+				return load.execute(true);
+			}
+
+			// wait for the frame or for any frame to become free
+			await(pending);
+		}
+	}
+
+	private void fix(Partition p, Frame frame, boolean bulk) {
+		if (!frame.bulk) {
+			frame.referenced();
+		} else if (!bulk) {
+			// regular access: page leaves the bulk-read ring
+			p.ring.remove(frame);
+			frame.bulk = false;
+			frame.referenced();
+		}
 		// fix handle and update statistics
-		requested.fix();
-		fixCnt++;
+		frame.fix++;
+		p.fixCnt++;
 		if (FIX_DEBUG) {
-			ThreadCB.get().registerFix(pageID);
+			ThreadCB.get().registerFix(frame.getPageID());
 		}
-
-		return requested;
 	}
 
 	@Override
-	public synchronized void redoAllocation(Tx tx, PageID pageID, int unitID,
-			long LSN) throws BufferException {
+	public void redoAllocation(Tx tx, PageID pageID, int unitID, long LSN)
+			throws BufferException {
 
 		// mark block as used in the free space info
 		allocateBlock(pageID, unitID, true);
 
-		Frame requested = pageNoToFrame.get(pageID);
+		Frame requested = (Frame) fixPage(tx, pageID);
 
-		if (requested == null) {
-			faultCnt++;
-			requested = load(pageID);
-		} else {
-			hitCnt++;
-		}
-
-		if (requested.getLSN() < LSN) {
-			// format handle again
-			requested.init(pageID, unitID);
-			requested.setLSN(LSN);
-			requested.setModified(true);
+		try {
+			synchronized (partition(pageID)) {
+				if (requested.getLSN() < LSN) {
+					// format handle again
+					requested.init(pageID, unitID);
+					requested.setLSN(LSN);
+					requested.setModified(true);
+				}
+			}
+		} finally {
+			unfixPage(requested);
 		}
 	}
 
@@ -432,33 +858,44 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		allocateBlock(pageID, unitID, true);
 	}
 
-	public synchronized void unfixPage(Handle handle) throws BufferException {
+	public void unfixPage(Handle handle) throws BufferException {
 		if (FIX_DEBUG) {
 			ThreadCB.get().registerUnfix(handle.getPageID());
 		}
-		((Frame) handle).unfix();
-		unfixCnt++;
+		Partition p = partition(handle.getPageID());
+
+		synchronized (p) {
+			((Frame) handle).unfix();
+			p.unfixCnt++;
+		}
 	}
 
-	public synchronized void flush() throws BufferException {
+	public void flush() throws BufferException {
 		flushInternal(null);
 	}
 
-	public synchronized void flushAssigned(Tx transaction)
-			throws BufferException {
+	public void flushAssigned(Tx transaction) throws BufferException {
 		flushInternal(transaction);
 	}
 
-	public synchronized void flush(Handle handle) throws BufferException {
-		if (!handle.isModified()) {
+	public void flush(Handle handle) throws BufferException {
+		Partition p = partition(handle.getPageID());
+
+		synchronized (p) {
+			flush(p, (Frame) handle);
+		}
+	}
+
+	private void flush(Partition p, Frame frame) throws BufferException {
+		if (!frame.isModified()) {
 			return;
 		}
-		List<Frame> toFlush = buildRun((Frame) handle);
+		List<Frame> toFlush = buildRun(p, frame);
 		try {
 			flushRun(toFlush);
 		} finally {
 			for (Frame f : toFlush) {
-				if (f != handle) {
+				if (f != frame) {
 					f.unlatch();
 				}
 			}
@@ -471,19 +908,42 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 
 		flush();
 
-		synchronized (this) {
-			pageNoToFrame.clear();
-			pool.clear();
+		for (Partition p : partitions) {
+			synchronized (p) {
+				p.pageNoToFrame.clear();
+				p.pool.clear();
+			}
 		}
 	}
 
-	public synchronized long checkMinRedoLSN() {
-		if (pool.isEmpty()) {
-			return Long.MAX_VALUE;
+	public long checkMinRedoLSN() {
+		long minRedoLSN = Long.MAX_VALUE;
+
+		for (Partition p : partitions) {
+			synchronized (p) {
+				if (!p.pool.isEmpty()) {
+					Frame frame = Collections.min(new ArrayList<Frame>(p.pool),
+							REDO_COMPARATOR);
+					minRedoLSN = Math.min(minRedoLSN, frame.getRedoLSN());
+				}
+			}
+		}
+		return minRedoLSN;
+	}
+
+	@Override
+	public void getDirtyPages(Map<PageID, Long> dirtyPageTable) {
+		for (Partition p : partitions) {
+			synchronized (p) {
+				for (Frame frame : p.pool) {
+					long redoLSN = frame.getRedoLSN();
+
+					if (redoLSN != Long.MAX_VALUE) {
+						dirtyPageTable.put(frame.getPageID(), redoLSN);
+					}
+				}
+			}
 		}
-		Frame frame = Collections.min(new ArrayList<Frame>(pool),
-				REDO_COMPARATOR);
-		return frame.getRedoLSN();
 	}
 
 	@Override
@@ -499,6 +959,8 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 			log.trace(String.format("Creating unit %s.", unitID));
 		}
 
+		checkUpdate(tx);
+
 		try {
 			unitID = blockSpace.createUnit(unitID, force);
 		} catch (StoreException e) {
@@ -510,6 +972,15 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 				if (undoNextLSN == -1) {
 					tx.logUpdate(new CreateUnitLogOperation(blockSpace.getId(),
 							unitID));
+
+					// remember new unit for unlogged bulk allocations
+					PreCommitHook hook = tx
+							.getPreCommitHook(bulkAllocationHookName);
+					if (hook == null) {
+						hook = new BulkAllocationHook();
+						tx.addPreCommitHook(hook, bulkAllocationHookName);
+					}
+					((BulkAllocationHook) hook).units.add(unitID);
 				} else {
 					tx.logCLR(new CreateUnitLogOperation(blockSpace.getId(),
 							unitID), undoNextLSN);
@@ -531,6 +1002,8 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 			log.trace(String.format("Dropping unit %s.", unitID));
 		}
 
+		checkUpdate(tx);
+
 		if (logged) {
 			try {
 				if (undoNextLSN == -1) {
@@ -546,21 +1019,7 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 			}
 		}
 
-		ArrayList<Frame> toDrop = new ArrayList<Frame>();
-
-		// determine frames that belong to this unit
-		for (Frame frame : pool) {
-			if (frame.getUnitID() == unitID) {
-				pageNoToFrame.remove(frame.getPageID());
-				frame.drop();
-				toDrop.add(frame);
-			}
-		}
-
-		// drop frames
-		for (Frame frame : toDrop) {
-			pool.remove(frame);
-		}
+		dropFrames(unitID);
 
 		try {
 			blockSpace.dropUnit(unitID, force);
@@ -593,12 +1052,37 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		dropUnit(tx, unitID, true, -1, false);
 	}
 
-	public synchronized Handle allocatePage(Tx tx, int unitID)
-			throws BufferException {
+	public Handle allocatePage(Tx tx, int unitID) throws BufferException {
 		return allocatePage(tx, unitID, null, true, -1, false);
 	}
 
-	public synchronized Handle allocatePage(Tx tx, int unitID, PageID pageID,
+	@Override
+	public Handle allocateBulkPage(Tx tx, int unitID) throws BufferException {
+		BulkAllocationHook hook = (BulkAllocationHook) tx
+				.getPreCommitHook(bulkAllocationHookName);
+
+		if ((hook == null) || (!hook.units.contains(unitID))) {
+			return allocatePage(tx, unitID, null, true, -1, false);
+		}
+
+		hook.unsynced = true;
+		Handle handle = allocatePage(tx, unitID, null, false, -1, false);
+		handle.setAssignedTo(tx);
+		return handle;
+	}
+
+	@Override
+	public void syncBulkAllocations(Tx tx) throws BufferException {
+		BulkAllocationHook hook = (BulkAllocationHook) tx
+				.getPreCommitHook(bulkAllocationHookName);
+
+		if ((hook != null) && (hook.unsynced)) {
+			hook.unsynced = false;
+			sync();
+		}
+	}
+
+	public Handle allocatePage(Tx tx, int unitID, PageID pageID,
 			boolean logged, long undoNextLSN, boolean force)
 			throws BufferException {
 
@@ -613,17 +1097,81 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 			log.trace(String.format("Allocating page %s.", pageID));
 		}
 
-		if (pageNoToFrame.containsKey(pageID)) {
-			throw new BufferException("Page %s is already loaded into buffer",
-					pageID);
+		checkUpdate(tx);
+
+		// the partition of the new page is only known after the block is
+		// allocated -> allocate a free block first
+		boolean allocated = false;
+		if (pageID == null) {
+			pageID = allocateBlock(null, unitID, force);
+			allocated = true;
+		}
+
+		return allocatePage(partition(pageID), tx, unitID, pageID, allocated,
+				logged, undoNextLSN, force);
+	}
+
+	private Handle allocatePage(Partition p, Tx tx, int unitID,
+			PageID pageID, boolean allocated, boolean logged,
+			long undoNextLSN, boolean force) throws BufferException {
+
+		Frame victim;
+		PageID oldPageID;
+
+		while (true) {
+			CountDownLatch pending;
+
+			synchronized (p) {
+				if (p.pageNoToFrame.containsKey(pageID)) {
+					throw new BufferException(
+							"Page %s is already loaded into buffer", pageID);
+				}
+
+				List<Frame> frames;
+				try {
+					frames = allocateFrames(p, 1);
+				} catch (BufferException e) {
+					if (allocated) {
+						releaseBlock(pageID, unitID, force);
+					}
+					throw e;
+				}
+
+				if (!frames.isEmpty()) {
+					// reserve the victim for the new page; a dirty
+					// victim remains mapped until it is written back
+					victim = frames.get(0);
+					victim.beginIO();
+					oldPageID = victim.getPageID();
+					if (oldPageID != null) {
+						if (victim.isModified()) {
+							p.dirtyVictimCnt++;
+						} else {
+							p.pageNoToFrame.remove(oldPageID);
+							oldPageID = null;
+						}
+					}
+					p.pageNoToFrame.put(pageID, victim);
+					break;
+				}
+				pending = pendingIO(p);
+			}
+
+			await(pending);
 		}
 
-		Frame victim = allocateFrames(1).get(0);
 		long LSN = -1;
 
 		try {
-			evict(victim);
-			pageID = allocateBlock(pageID, unitID, force);
+			if (oldPageID != null) {
+				List<Frame> toFlush = new ArrayList<Frame>(1);
+				toFlush.add(victim);
+				flush(toFlush);
+			}
+			if (!allocated) {
+				pageID = allocateBlock(pageID, unitID, force);
+				allocated = true;
+			}
 
 			if (logged) {
 				try {
@@ -641,26 +1189,42 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 				}
 			}
 		} catch (BufferException e) {
-			// victim is free simply kick the page out
-			pool.remove(victim);
+			if (allocated) {
+				// hand the block back to the block space
+				releaseBlock(pageID, unitID, force);
+			}
+			synchronized (p) {
+				unmap(p, pageID, victim);
+				if ((oldPageID != null) && (victim.isModified())) {
+					// write back failed: keep the dirty page
+					victim.prefetched();
+				} else {
+					if (oldPageID != null) {
+						unmap(p, oldPageID, victim);
+					}
+					// victim is free simply kick the page out
+					p.pool.remove(victim);
+				}
+				victim.endIO();
+				victim.unlatch();
+			}
 			throw e;
 		}
 
 		if (victim.getAssignedTo() != null)
 			throw new RuntimeException();
 
-		victim.fix();
-		victim.init(pageID, unitID);
-		victim.setLSN(LSN);
-		// update page mapping
-		if (pageNoToFrame.put(pageID, victim) != null)
-			throw new RuntimeException(pageID.toString());
-		// new page is always "modified" and not in sync with external storage
-		victim.setModified(true);
-
-		fixCnt++;
-		if (FIX_DEBUG) {
-			ThreadCB.get().registerFix(victim.getPageID());
+		synchronized (p) {
+			if (oldPageID != null) {
+				unmap(p, oldPageID, victim);
+			}
+			victim.init(pageID, unitID);
+			victim.setLSN(LSN);
+			// new page is always "modified" and not in sync with external
+			// storage
+			victim.setModified(true);
+			fix(p, victim, false);
+			victim.endIO();
 		}
 
 		return victim;
@@ -684,6 +1248,12 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		((DeallocateHook) hook).addPage(pageID, unitID);
 	}
 
+	private void checkUpdate(Tx tx) throws BufferException {
+		if ((tx != null) && (tx.isReadOnly())) {
+			throw new BufferException("%s is read-only.", tx);
+		}
+	}
+
 	@Override
 	public PageReleaser deletePage(Tx tx, PageID pageID, int unitID)
 			throws BufferException {
@@ -699,6 +1269,8 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 			log.trace(String.format("Deleting page %s.", pageID));
 		}
 
+		checkUpdate(tx);
+
 		if (logged) {
 			try {
 				if (undoNextLSN == -1) {
@@ -733,7 +1305,25 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		}
 	}
 
-	private void writeBlocks(PageID pageID, byte[] buffer, int numOfBlocks) throws BufferException {
+	private int readBlocks(PageID pageID, byte[][] buffers, int numOfBlocks)
+			throws BufferException {
+		if (log.isTraceEnabled()) {
+			log.trace(String.format(
+					"Reading run of size %s starting with block %s of page %s",
+					numOfBlocks, pageID.getBlockNo(), pageID));
+		}
+		try {
+			return blockSpace.read(pageID.getBlockNo(), buffers, numOfBlocks);
+		} catch (StoreException e) {
+			throw new BufferException(
+					e,
+					"Reading run of size %s starting with block %s of page %s failed",
+					numOfBlocks, pageID.getBlockNo(), pageID);
+		}
+	}
+
+	private void writeBlocks(PageID pageID, byte[] buffer, int numOfBlocks)
+			throws BufferException {
 		if (log.isTraceEnabled()) {
 			log.trace(String.format(
 					"Writing %s blocks [%s-%s] starting with block of page %s",
@@ -741,7 +1331,25 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 							+ numOfBlocks - 1, pageID));
 		}
 		try {
-			blockSpace.write(pageID.getBlockNo(), writeBuffer, numOfBlocks);
+			blockSpace.write(pageID.getBlockNo(), buffer, numOfBlocks);
+		} catch (StoreException e) {
+			throw new BufferException(e,
+					"Writing %s blocks [%s-%s] starting with block of page %s",
+					numOfBlocks, pageID.getBlockNo(), pageID.getBlockNo()
+							+ numOfBlocks - 1, pageID);
+		}
+	}
+
+	private void writeBlocks(PageID pageID, byte[][] buffers, int numOfBlocks)
+			throws BufferException {
+		if (log.isTraceEnabled()) {
+			log.trace(String.format(
+					"Writing %s blocks [%s-%s] starting with block of page %s",
+					numOfBlocks, pageID.getBlockNo(), pageID.getBlockNo()
+							+ numOfBlocks - 1, pageID));
+		}
+		try {
+			blockSpace.write(pageID.getBlockNo(), buffers, numOfBlocks);
 		} catch (StoreException e) {
 			throw new BufferException(e,
 					"Writing %s blocks [%s-%s] starting with block of page %s",
@@ -792,42 +1400,24 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		}
 	}
 
-	private void transferToFrames(PageID firstPageID, byte[] buffer,
-			List<Frame> frames) {
-		int containerNo = firstPageID.getContainerNo();
-		int currentBlockNo = firstPageID.getBlockNo();
-		int offset = 0;
-
-		for (Frame frame : frames) {
-			// TODO remove
-			if (frame.getAssignedTo() != null)
-				throw new RuntimeException();
-
-			PageID pID = new PageID(containerNo, currentBlockNo);
-			frame.init(pID, 0); // unitID not relevant, since it is overwritten
-								// in the next line anyway
-			System.arraycopy(buffer, offset, frame.page, 0, pageSize);
-			currentBlockNo++;
-			offset += pageSize;
-		}
-	}
-
-	private void transferToBuffer(List<Frame> frames, byte[] buffer) {
-		int offset = 0;
-		for (Frame frame : frames) {
-			System.arraycopy(frame.page, 0, buffer, offset, pageSize);
-			offset += pageSize;
+	private void releaseBlock(PageID pageID, int unitID, boolean force) {
+		try {
+			deallocateBlock(pageID, unitID, force);
+		} catch (BufferException e) {
+			log.error(String.format("Releasing block of failed allocation "
+					+ "of page %s failed.", pageID), e);
 		}
 	}
 
-	private List<Frame> allocateFrames(int noOfFrames) throws BufferException {
+	private List<Frame> allocateFrames(Partition p, int noOfFrames)
+			throws BufferException {
 		List<Frame> frames = new ArrayList<Frame>(noOfFrames);
 		int allocated = 0;
 		Frame frame;
 
-		while ((allocated < noOfFrames) && (pool.size() < bufferSize)) {
-			frame = grow(pageSize);
-			pool.add(frame);
+		while ((allocated < noOfFrames) && (p.pool.size() < p.size)) {
+			frame = p.grow(pageSize);
+			p.pool.add(frame);
 			allocated++;
 			// handle is not fixed and calling method must be synchronized ->
 			// deadlock cannot occur
@@ -835,15 +1425,19 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 			frames.add(frame);
 		}
 
-		while ((allocated < noOfFrames) && ((frame = shrink()) != null)) {
+		while ((allocated < noOfFrames) && ((frame = p.shrink()) != null)) {
 			allocated++;
-			// handle is not fixed and calling method must be synchronized ->
-			// deadlock cannot occur
+			// handle is neither fixed nor held by the cleaner and calling
+			// method must be synchronized -> deadlock cannot occur
 			frame.latchX();
 			frames.add(frame);
 		}
 
 		if (allocated == 0) {
+			if (pendingIO(p) != null) {
+				// all free frames are currently in transit
+				return frames;
+			}
 			// no page found -> all pages fixed
 			throw new BufferException("No free buffer position avaliable.");
 		}
@@ -869,7 +1463,7 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		return frames;
 	}
 
-	protected List<Frame> buildRun(Frame frame) {
+	protected List<Frame> buildRun(Partition p, Frame frame) {
 		List<Frame> run = new ArrayList<AbstractBuffer.Frame>();
 		run.add(frame);
 
@@ -877,7 +1471,7 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		PageID current = new PageID(start.value() + 1);
 		Frame tmp;
 		while ((run.size() < writeSize)
-				&& ((tmp = pageNoToFrame.get(current)) != null)
+				&& ((tmp = p.pageNoToFrame.get(current)) != null)
 				&& (tmp.latchSC())) {
 			if (!tmp.isModified()) {
 				tmp.unlatch();
@@ -889,7 +1483,7 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		tmp = null;
 		current = new PageID(start.value() - 1);
 		while ((run.size() < writeSize)
-				&& ((tmp = pageNoToFrame.get(current)) != null)
+				&& ((tmp = p.pageNoToFrame.get(current)) != null)
 				&& (tmp.latchSC())) {
 			if (!tmp.isModified()) {
 				tmp.unlatch();
@@ -911,98 +1505,289 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		return run;
 	}
 
-	private Frame load(PageID pageID) throws BufferException {
-		// read chunk from disk into read buffer
+	/**
+	 * Reserves frames for the given page and its prefetched successors.
+	 * Returns <code>null</code> if all free frames are currently in transit.
+	 */
+	private Load prepareLoad(Partition p, PageID pageID, int max,
+			boolean bulk) throws BufferException {
+		if (bulk) {
+			max = Math.min(max, p.ringSize);
+		}
+		// prefetching stops at resident pages and at the stripe boundary of
+		// the partition
 		int containerNo = pageID.getContainerNo();
 		int prefetchBlockNo = pageID.getBlockNo() + 1;
 		int maxFetchSize = 1;
-		while ((maxFetchSize < prefetchSize)
-				&& (!pageNoToFrame.containsKey(new PageID(containerNo,
-						prefetchBlockNo++))))
+		while (maxFetchSize < max) {
+			PageID next = new PageID(containerNo, prefetchBlockNo++);
+			if ((partition(next) != p) || (p.pageNoToFrame.containsKey(next))) {
+				break;
+			}
 			maxFetchSize++;
-		int fetched = readBlocks(pageID, prefetchBuffer, maxFetchSize);
+		}
 
-		// allocate frames and load buffer into them
-		List<Frame> frames = allocateFrames(fetched);
-		try {
-			evict(frames);
-			transferToFrames(pageID, prefetchBuffer, frames);
-		} catch (BufferException e) {
-			// frames are free: simply kick all out
-			for (Frame frame : frames) {
-				pool.remove(frame);
-			}
-			throw e;
+		List<Frame> frames = (bulk) ? allocateRingFrames(p, maxFetchSize)
+				: allocateFrames(p, maxFetchSize);
+		if (frames.isEmpty()) {
+			return null;
 		}
+		return new Load(p, pageID, frames, bulk);
+	}
 
-		// map loaded frames in buffer and
-		// mark as prefetched
-		Frame requested = null;
-		for (Frame frame : frames) {
-			if (requested == null) {
-				requested = frame;
+	/**
+	 * Loads up to <code>count</code> blocks starting at the given block
+	 * without fixing them. Blocks which are unused or already resident are
+	 * skipped. Called by the read-ahead threads.
+	 */
+	void readAhead(int blockNo, int count) throws BufferException {
+		int containerNo = getContainerNo();
+		int end = blockNo + count;
+
+		while (blockNo < end) {
+			if (!blockSpace.isUsed(blockNo)) {
+				blockNo++;
+				continue;
+			}
+
+			PageID pageID = new PageID(containerNo, blockNo);
+			Partition p = partition(pageID);
+			Load load;
+
+			synchronized (p) {
+				if (p.pageNoToFrame.containsKey(pageID)) {
+					blockNo++;
+					continue;
+				}
+				// read-ahead may fill free frames, but must not displace
+				// more than a quarter of the partition at once
+				int max = Math.min(end - blockNo, (p.size - p.pool.size())
+						+ Math.max(1, p.size / 4));
+				load = prepareLoad(p, pageID, max, false);
+				if (load == null) {
+					// all free frames are in transit: give up
+					return;
+				}
+				p.readAheadCnt += load.size();
 			}
-			if (pageNoToFrame.put(frame.getPageID(), frame) != null)
-				throw new RuntimeException(frame.getPageID().toString());
-			frame.prefetched();
-			frame.unlatch();
+
+			load.execute(false);
+			blockNo += load.size();
 		}
-		return requested;
 	}
 
-	private void evict(Frame victim) throws BufferException {
-		PageID oldPageID = victim.getPageID();
+	public List<PageID> getHotPages() {
+		List<List<PageID>> lists = new ArrayList<List<PageID>>();
+		List<Frame> victims = new ArrayList<Frame>();
+		int count = 0;
+
+		for (Partition p : partitions) {
+			List<PageID> pageIDs = new ArrayList<PageID>();
+			synchronized (p) {
+				victims.clear();
+				p.victims(victims, p.size);
+				// victims are ordered from the coldest to the hottest page
+				for (int i = victims.size() - 1; i >= 0; i--) {
+					PageID pageID = victims.get(i).getPageID();
+					if (pageID != null) {
+						pageIDs.add(pageID);
+					}
+				}
+			}
+			lists.add(pageIDs);
+			count += pageIDs.size();
+		}
 
-		if (oldPageID != null) {
-			if (victim.isModified()) {
-				flush(victim);
+		// interleave the partitions
+		List<PageID> hotPages = new ArrayList<PageID>(count);
+		for (int i = 0; hotPages.size() < count; i++) {
+			for (List<PageID> pageIDs : lists) {
+				if (i < pageIDs.size()) {
+					hotPages.add(pageIDs.get(i));
+				}
 			}
-			// unmap clean pages directly
-			pageNoToFrame.remove(oldPageID);
 		}
+		return hotPages;
 	}
 
-	private void evict(List<Frame> frames) throws BufferException {
-		List<Frame> toFlush = null;
+	public void preload(PageID pageID, int numPages) throws BufferException {
+		readAhead(pageID.getBlockNo(), numPages);
+	}
+
+	/**
+	 * Allocates frames for a bulk read. Once the ring of the partition is
+	 * full, its oldest unfixed frames are recycled. Otherwise, the ring grows
+	 * with frames taken from the replacement lists.
+	 */
+	private List<Frame> allocateRingFrames(Partition p, int noOfFrames)
+			throws BufferException {
+		List<Frame> frames = new ArrayList<Frame>(noOfFrames);
+
+		int recycle = Math.min(noOfFrames, p.ring.size() + noOfFrames
+				- p.ringSize);
+		for (Iterator<Frame> it = p.ring.iterator(); (recycle > 0)
+				&& (it.hasNext());) {
+			Frame frame = it.next();
+			if ((frame.isReplaceable()) && (frame.pendingIO() == null)) {
+				it.remove();
+				// handle is not fixed and calling method must be
+				// synchronized -> deadlock cannot occur
+				frame.latchX();
+				frames.add(frame);
+				recycle--;
+			}
+		}
+
+		int grow = Math.min(noOfFrames - frames.size(), p.ringSize
+				- p.ring.size() - frames.size());
+		if (frames.isEmpty()) {
+			// ring is full of fixed frames or still empty
+			frames = allocateFrames(p, Math.max(1, grow));
+		} else if (grow > 0) {
+			try {
+				frames.addAll(allocateFrames(p, grow));
+			} catch (BufferException e) {
+				// all other frames are fixed: stick to the recycled ones
+			}
+		}
+
 		for (Frame frame : frames) {
-			if (frame.getPageID() == null) {
-				// TODO remove
-				if (frame.isModified())
-					throw new RuntimeException();
-				continue;
+			frame.bulk = true;
+			p.ring.add(frame);
+		}
+		return frames;
+	}
+
+	/**
+	 * Removes a frame from the replacement lists or the bulk-read ring.
+	 */
+	private static void discard(Partition p, Frame frame) {
+		if (frame.bulk) {
+			p.ring.remove(frame);
+			frame.bulk = false;
+		} else {
+			frame.drop();
+		}
+	}
+
+	/**
+	 * Removes an unmapped frame from the pool of its partition.
+	 */
+	private static void release(Partition p, Frame frame) {
+		if (frame.bulk) {
+			p.ring.remove(frame);
+			frame.bulk = false;
+		}
+		p.pool.remove(frame);
+	}
+
+	private static void unmap(Partition p, PageID pageID, Frame frame) {
+		if (p.pageNoToFrame.get(pageID) == frame) {
+			p.pageNoToFrame.remove(pageID);
+		}
+	}
+
+	private static CountDownLatch pendingIO(Partition p) {
+		if (p.cleaned != null) {
+			// frames are held by the page cleaner
+			return p.cleaned;
+		}
+		for (Frame frame : p.pool) {
+			CountDownLatch pending = frame.pendingIO();
+			if (pending != null) {
+				return pending;
+			}
+		}
+		return null;
+	}
+
+	private static void await(CountDownLatch pending) {
+		while (true) {
+			try {
+				pending.await();
+				return;
+			} catch (InterruptedException e) {
 			}
+		}
+	}
 
-			if (frame.isModified()) {
-				if (toFlush == null) {
-					toFlush = new ArrayList<Frame>();
-				}
-				toFlush.add(frame);
-			} else {
-				// TODO remove
-				if (frame.getAssignedTo() != null) {
-					System.out.println(frame.isFixed());
-					throw new RuntimeException();
+	/**
+	 * Writes dirty pages ahead of demand, so that the next victims of each
+	 * partition are clean. The frames are latched and collected while holding
+	 * the partition monitor, but written without it.
+	 */
+	void clean() throws BufferException {
+		List<Frame> candidates = new ArrayList<Frame>();
+		Set<Frame> toFlush = new LinkedHashSet<Frame>();
+
+		for (Partition p : partitions) {
+			CountDownLatch cleaned = null;
+
+			synchronized (p) {
+				candidates.clear();
+				p.victims(candidates, Math.max(1, (p.size * cleanShare) / 100));
+
+				for (Frame frame : candidates) {
+					if ((!frame.isModified()) || (toFlush.contains(frame))
+							|| (!frame.latchSC())) {
+						continue;
+					}
+					if (!frame.isModified()) {
+						frame.unlatch();
+						continue;
+					}
+					// extend to a run of dirty neighbors
+					for (Frame f : buildRun(p, frame)) {
+						if (toFlush.add(f)) {
+							// keep fixers from waiting for the write-back
+							// while holding the partition monitor
+							f.cleaning = true;
+						} else {
+							f.unlatch();
+						}
+					}
 				}
 
-				// unmap clean page directly
-				pageNoToFrame.remove(frame.getPageID());
+				if (!toFlush.isEmpty()) {
+					cleaned = new CountDownLatch(1);
+					p.cleaned = cleaned;
+				}
 			}
-		}
 
-		if (toFlush != null) {
-			flush(toFlush);
+			if (toFlush.isEmpty()) {
+				continue;
+			}
 
-			// remove now also the flushed pages
-			// from the mapping and
-			// unlink them from transactions
-			for (Frame flushed : toFlush) {
-				pageNoToFrame.remove(flushed.getPageID());
+			try {
+				flush(new ArrayList<Frame>(toFlush));
+			} finally {
+				synchronized (p) {
+					for (Frame frame : toFlush) {
+						frame.cleaning = false;
+						frame.unlatch();
+					}
+					p.cleaned = null;
+				}
+				cleaned.countDown();
+				toFlush.clear();
 			}
 		}
 	}
 
 	private void flushInternal(Tx tx) throws BufferException {
-		List<Frame> frames = new ArrayList<Frame>(pool);
+		// flush partition by partition to keep the others accessible
+		for (Partition p : partitions) {
+			synchronized (p) {
+				flushInternal(p, tx);
+			}
+		}
+
+		// sync data file
+		syncData();
+	}
+
+	private void flushInternal(Partition p, Tx tx) throws BufferException {
+		List<Frame> frames = new ArrayList<Frame>(p.pool);
 		List<Frame> toFlush = new ArrayList<Frame>();
 
 		while (!frames.isEmpty()) {
@@ -1011,6 +1796,12 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 			int size = frames.size();
 			while (pos < size) {
 				Frame frame = frames.get(pos);
+				if (frame.pendingIO() != null) {
+					// frame is in transit and written back by its loader
+					frames.remove(pos);
+					size--;
+					continue;
+				}
 				if (toFlush.isEmpty()) {
 					// latch first page unconditionally to avoid starvation
 					frame.latchS();
@@ -1047,9 +1838,6 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 				}
 			}
 		}
-
-		// sync data file
-		syncData();
 	}
 
 	/**
@@ -1124,8 +1912,16 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		// System.err.println("Before: ");
 		// checkBuffer();
 
-		transferToBuffer(run, writeBuffer);
-		writeBlocks(firstPageID, writeBuffer, run.size());
+		// blocks are gathered from the frames without a staging array
+		if (run.size() == 1) {
+			writeBlocks(firstPageID, run.get(0).page, 1);
+		} else {
+			byte[][] pages = new byte[run.size()][];
+			for (int i = 0; i < pages.length; i++) {
+				pages[i] = run.get(i).page;
+			}
+			writeBlocks(firstPageID, pages, pages.length);
+		}
 
 		for (Frame frame : run) {
 			// unlink clean pages from a transaction
@@ -1137,8 +1933,8 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		// checkBuffer();
 	}
 
-	private void checkBuffer() {
-		for (Frame frame : pool) {
+	private void checkBuffer(Partition p) {
+		for (Frame frame : p.pool) {
 			System.err.print("Page " + frame.getPageID()
 					+ (frame.isModified() ? "* " : " "));
 			try {
@@ -1162,23 +1958,101 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		}
 	}
 
+	private void dropFrame(PageID pageID) {
+		Partition p = partition(pageID);
+
+		while (true) {
+			CountDownLatch pending;
+
+			synchronized (p) {
+				Frame frame = p.pageNoToFrame.get(pageID);
+				if (frame == null) {
+					return;
+				}
+				if ((pending = frame.pendingIO()) == null) {
+					p.pageNoToFrame.remove(pageID);
+					discard(p, frame);
+					p.pool.remove(frame);
+					return;
+				}
+			}
+
+			await(pending);
+		}
+	}
+
+	private void dropFrames(int unitID) {
+		if (readAhead != null) {
+			readAhead.dropUnit(unitID);
+		}
+		for (Partition p : partitions) {
+			CountDownLatch pending;
+
+			// the unit of frames in transit is not known yet
+			while (true) {
+				synchronized (p) {
+					if ((pending = pendingIO(p)) == null) {
+						dropFrames(p, unitID);
+						break;
+					}
+				}
+				await(pending);
+			}
+		}
+	}
+
+	private void dropFrames(Partition p, int unitID) {
+		ArrayList<Frame> toDrop = new ArrayList<Frame>();
+
+		// determine frames that belong to this unit
+		for (Frame frame : p.pool) {
+			if (frame.getUnitID() == unitID) {
+				p.pageNoToFrame.remove(frame.getPageID());
+				discard(p, frame);
+				toDrop.add(frame);
+			}
+		}
+
+		// drop frames
+		for (Frame frame : toDrop) {
+			p.pool.remove(frame);
+		}
+	}
+
 	public int getFixCount() {
-		return (fixCnt - unfixCnt);
+		int fixCnt = 0;
+		for (Partition p : partitions) {
+			fixCnt += p.fixCnt - p.unfixCnt;
+		}
+		return fixCnt;
 	}
 
 	public int getHitCount() {
+		int hitCnt = 0;
+		for (Partition p : partitions) {
+			hitCnt += p.hitCnt;
+		}
 		return hitCnt;
 	}
 
-	public synchronized int getMissCount() {
+	public int getMissCount() {
+		int faultCnt = 0;
+		for (Partition p : partitions) {
+			faultCnt += p.faultCnt;
+		}
 		return faultCnt;
 	}
 
-	public synchronized void resetCounters() {
-		hitCnt = 0;
-		faultCnt = 0;
-		fixCnt = 0;
-		unfixCnt = 0;
+	public void resetCounters() {
+		for (Partition p : partitions) {
+			synchronized (p) {
+				p.hitCnt = 0;
+				p.faultCnt = 0;
+				p.readAheadCnt = 0;
+				p.fixCnt = 0;
+				p.unfixCnt = 0;
+			}
+		}
 	}
 
 	public int getBufferSize() {
@@ -1189,15 +2063,26 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		return blockSpace.getId();
 	}
 
-	public synchronized void printStatus(PrintStream out) {
+	public void printStatus(PrintStream out) {
 		out.format("Status of buffer : %s", getContainerNo());
 		out.println();
 
-		List<Frame> frames = new ArrayList<Frame>(pool);
+		for (Partition p : partitions) {
+			synchronized (p) {
+				if (partitions.length > 1) {
+					out.println(p);
+				}
+				printStatus(p, out);
+			}
+		}
+	}
+
+	private void printStatus(Partition p, PrintStream out) {
+		List<Frame> frames = new ArrayList<Frame>(p.pool);
 		Collections.sort(frames, PAGEID_COMPARATOR);
 		for (Frame frame : frames) {
 			PageID pID = frame.getPageID();
-			boolean mapped = pageNoToFrame.containsKey(pID);
+			boolean mapped = p.pageNoToFrame.containsKey(pID);
 			int fID = frame.hashCode();
 			long LSN = frame.getLSN();
 			boolean dirty = frame.isModified();
@@ -1215,10 +2100,16 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 	@Override
 	public void shutdown(boolean force) throws BufferException {
 		ListBuffer.remove(this);
+		if (readAhead != null) {
+			readAhead.terminate();
+		}
+		if (cleaner != null) {
+			cleaner.terminate();
+		}
 		flush();
 
 		synchronized (this) {
-			if (fixCnt - unfixCnt > 0) {
+			if (getFixCount() > 0) {
 				if (force) {
 					log.warn(String
 							.format("Closing container '%s' because some pages are still fixed in the buffer.",
@@ -1249,7 +2140,7 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		}
 	}
 
-	private synchronized void syncData() throws BufferException {
+	private void syncData() throws BufferException {
 		try {
 			blockSpace.syncData();
 		} catch (StoreException e) {
@@ -1264,7 +2155,7 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 
 	@Override
 	public boolean isFixed(Handle handle) {
-		return ((Frame) handle).isFixed();
+		return ((handle instanceof Frame) && ((Frame) handle).isFixed());
 	}
 
 	@Override
@@ -1273,8 +2164,16 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		out.append("#" + getContainerNo());
 		out.append(", " + getBufferSize() + " pages");
 		out.append(" with " + getPageSize() + "B");
+		out.append(", " + getClass().getSimpleName());
 		out.append(", buffer hit ratio " + getHitCount());
 		out.append(", fault ratio " + getMissCount());
+		if (partitions.length > 1) {
+			out.append(", " + partitions.length + " partitions");
+		}
+		if (readAhead != null) {
+			out.append(", " + readAhead);
+		}
+		out.append("\n");
 		ByteArrayOutputStream os = new ByteArrayOutputStream();
 		PrintStream pw = new PrintStream(os);
 		printStatus(pw);
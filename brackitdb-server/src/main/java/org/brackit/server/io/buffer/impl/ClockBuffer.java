@@ -0,0 +1,176 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.io.buffer.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.brackit.server.io.buffer.BufferException;
+import org.brackit.server.io.file.BlockSpace;
+import org.brackit.server.io.manager.BufferMgr;
+import org.brackit.server.tx.log.Log;
+import org.brackit.xquery.util.Cfg;
+
+/**
+ * Buffer with CLOCK (second chance) replacement. A hit only sets the
+ * reference bit of a frame, so that fixing a resident page never relinks any
+ * list. Prefetched frames enter the clock without reference bit and are
+ * therefore replaced first unless they are fixed in the meantime.
+ */
+public final class ClockBuffer extends AbstractBuffer {
+
+	final class ClockPartition extends Partition {
+		final class ClockFrame extends Frame {
+			/**
+			 * Position in the clock or -1 if the frame is not resident
+			 */
+			int slot = -1;
+
+			boolean refBit;
+
+			ClockFrame(int pageSize) {
+				super(pageSize);
+			}
+
+			@Override
+			void drop() {
+				if (slot >= 0) {
+					remove(this);
+				}
+			}
+
+			@Override
+			void prefetched() {
+				if (slot < 0) {
+					add(this);
+				}
+				refBit = false;
+			}
+
+			@Override
+			void referenced() {
+				if (slot < 0) {
+					add(this);
+				}
+				refBit = true;
+			}
+
+			@Override
+			public String toString() {
+				return super.toString() + (refBit ? "R" : "")
+						+ ((slot < 0) ? "FREE" : "");
+			}
+		}
+
+		final ArrayList<ClockFrame> clock;
+
+		int hand;
+
+		ClockPartition(int no, int size) {
+			super(no, size);
+			clock = new ArrayList<ClockFrame>(size);
+		}
+
+		void add(ClockFrame frame) {
+			frame.slot = clock.size();
+			clock.add(frame);
+		}
+
+		void remove(ClockFrame frame) {
+			// fill the gap with the last frame of the clock
+			ClockFrame last = clock.remove(clock.size() - 1);
+			if (last != frame) {
+				clock.set(frame.slot, last);
+				last.slot = frame.slot;
+			}
+			frame.slot = -1;
+			frame.refBit = false;
+		}
+
+		@Override
+		protected Frame grow(int pageSize) {
+			return new ClockFrame(pageSize);
+		}
+
+		@Override
+		protected Frame shrink() {
+			// two rounds suffice to clear all reference bits
+			for (int i = 2 * clock.size(); (i > 0) && (!clock.isEmpty()); i--) {
+				if (hand >= clock.size()) {
+					hand = 0;
+				}
+				ClockFrame frame = clock.get(hand);
+				if (!frame.isReplaceable()) {
+					hand++;
+				} else if (frame.refBit) {
+					frame.refBit = false;
+					hand++;
+				} else {
+					// hand now points to the frame moved into the gap
+					remove(frame);
+					return frame;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		protected void victims(List<Frame> victims, int max) {
+			int size = clock.size();
+			// unreferenced frames are chosen in the first round
+			for (int i = 0; (i < size) && (victims.size() < max); i++) {
+				ClockFrame frame = clock.get((hand + i) % size);
+				if ((frame.fix == 0) && (!frame.refBit)) {
+					victims.add(frame);
+				}
+			}
+			for (int i = 0; (i < size) && (victims.size() < max); i++) {
+				ClockFrame frame = clock.get((hand + i) % size);
+				if ((frame.fix == 0) && (frame.refBit)) {
+					victims.add(frame);
+				}
+			}
+		}
+	}
+
+	public ClockBuffer(BlockSpace blockSpace, int bufferSize,
+			Log transactionLog, BufferMgr bufferMgr) throws BufferException {
+		this(blockSpace, bufferSize, Cfg.asInt(PARTITIONS, 1), transactionLog,
+				bufferMgr);
+	}
+
+	public ClockBuffer(BlockSpace blockSpace, int bufferSize, int partitions,
+			Log transactionLog, BufferMgr bufferMgr) throws BufferException {
+		super(blockSpace, bufferSize, partitions, transactionLog, bufferMgr);
+	}
+
+	@Override
+	protected Partition createPartition(int no, int size) {
+		return new ClockPartition(no, size);
+	}
+}
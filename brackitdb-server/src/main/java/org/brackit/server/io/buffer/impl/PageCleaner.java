@@ -0,0 +1,83 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.io.buffer.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.brackit.server.io.buffer.BufferException;
+import org.brackit.xquery.util.log.Logger;
+
+/**
+ * Background writer which keeps the replacement end of a buffer clean, so
+ * that fixers rarely have to write back a dirty victim themselves.
+ */
+class PageCleaner extends Thread {
+	private static final Logger log = Logger.getLogger(PageCleaner.class);
+
+	private volatile boolean active = false;
+
+	private final AbstractBuffer buffer;
+
+	private final long interval;
+
+	public PageCleaner(AbstractBuffer buffer, int interval) {
+		setName("PageCleaner" + buffer.getContainerNo());
+
+		this.buffer = buffer;
+		this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+		this.active = true;
+
+		setDaemon(true);
+	}
+
+	@Override
+	public void run() {
+		while (active) {
+			try {
+				buffer.clean();
+			} catch (BufferException e) {
+				log.error("Error cleaning buffer pages.", e);
+			}
+			LockSupport.parkNanos(this, interval);
+		}
+	}
+
+	public void wakeup() {
+		LockSupport.unpark(this);
+	}
+
+	public void terminate() {
+		active = false;
+		wakeup();
+		try {
+			join();
+		} catch (InterruptedException e) {
+		}
+	}
+}
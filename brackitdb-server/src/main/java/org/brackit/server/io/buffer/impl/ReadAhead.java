@@ -0,0 +1,215 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.io.buffer.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.brackit.server.io.buffer.BufferException;
+import org.brackit.xquery.util.log.Logger;
+
+/**
+ * Asynchronous read-ahead for sequential scans. Fixes are tracked per unit,
+ * and as long as the blocks of a unit are requested in ascending order, the
+ * next window of blocks is loaded by a small pool of I/O threads. The window
+ * doubles with every issued read-ahead and is halved on random access.
+ */
+class ReadAhead {
+	private static final Logger log = Logger.getLogger(ReadAhead.class);
+
+	/**
+	 * Number of sequential accesses before the first read-ahead is issued
+	 */
+	private static final int TRIGGER = 2;
+
+	private static final int MIN_WINDOW = 4;
+
+	private static final long POLL_INTERVAL = 100;
+
+	private static final class Stream {
+		int last = -1;
+
+		int next;
+
+		int seqCnt;
+
+		int window = MIN_WINDOW;
+	}
+
+	private static final class Request {
+		final int blockNo;
+
+		final int count;
+
+		Request(int blockNo, int count) {
+			this.blockNo = blockNo;
+			this.count = count;
+		}
+	}
+
+	private final class Worker extends Thread {
+		Worker(int no) {
+			setName("ReadAhead" + buffer.getContainerNo() + "-" + no);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (active) {
+				Request request;
+				try {
+					// workers must not be interrupted, because an interrupt
+					// during a channel read closes the underlying file
+					request = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					continue;
+				}
+				if (request == null) {
+					continue;
+				}
+				try {
+					buffer.readAhead(request.blockNo, request.count);
+				} catch (BufferException e) {
+					log.error(String.format(
+							"Error reading ahead %s blocks from block %s.",
+							request.count, request.blockNo), e);
+				}
+			}
+		}
+	}
+
+	private volatile boolean active = false;
+
+	private final AbstractBuffer buffer;
+
+	private final int maxWindow;
+
+	private final ConcurrentHashMap<Integer, Stream> streams;
+
+	private final LinkedBlockingQueue<Request> queue;
+
+	private final Worker[] workers;
+
+	private volatile int issuedCnt;
+
+	private volatile int droppedCnt;
+
+	public ReadAhead(AbstractBuffer buffer, int threads, int maxWindow) {
+		this.buffer = buffer;
+		this.maxWindow = Math.max(MIN_WINDOW, maxWindow);
+		this.streams = new ConcurrentHashMap<Integer, Stream>();
+		// read-ahead is only a hint: requests beyond this bound are dropped
+		this.queue = new LinkedBlockingQueue<Request>(4 * threads);
+		this.workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(i);
+		}
+	}
+
+	public void start() {
+		active = true;
+		for (Worker worker : workers) {
+			worker.start();
+		}
+	}
+
+	/**
+	 * Records a fix of the given block of a unit and issues an asynchronous
+	 * read of the next window if the access pattern is sequential.
+	 */
+	public void access(int unitID, int blockNo) {
+		Stream s = streams.get(unitID);
+		if (s == null) {
+			Stream tmp = new Stream();
+			s = streams.putIfAbsent(unitID, tmp);
+			if (s == null) {
+				s = tmp;
+			}
+		}
+
+		int start = 0;
+		int count = 0;
+
+		synchronized (s) {
+			if (blockNo == s.last) {
+				return;
+			}
+			// blocks of other units may be interleaved
+			// within an already fetched window
+			if ((blockNo == s.last + 1)
+					|| ((blockNo > s.last) && (blockNo < s.next))) {
+				s.seqCnt++;
+				if (s.next <= blockNo) {
+					s.next = blockNo + 1;
+				}
+				if ((s.seqCnt >= TRIGGER)
+						&& (s.next - blockNo <= s.window / 2)) {
+					start = s.next;
+					count = s.window;
+					s.next += count;
+					s.window = Math.min(2 * s.window, maxWindow);
+				}
+			} else {
+				s.seqCnt = 0;
+				s.next = blockNo + 1;
+				s.window = Math.max(MIN_WINDOW, s.window / 2);
+			}
+			s.last = blockNo;
+		}
+
+		if (count > 0) {
+			if (queue.offer(new Request(start, count))) {
+				issuedCnt++;
+			} else {
+				droppedCnt++;
+			}
+		}
+	}
+
+	public void dropUnit(int unitID) {
+		streams.remove(unitID);
+	}
+
+	public void terminate() {
+		active = false;
+		for (Worker worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+			}
+		}
+		queue.clear();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("read-ahead: %s streams, %s issued, %s dropped",
+				streams.size(), issuedCnt, droppedCnt);
+	}
+}
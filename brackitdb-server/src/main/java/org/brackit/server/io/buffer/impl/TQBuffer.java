@@ -27,10 +27,13 @@
  */
 package org.brackit.server.io.buffer.impl;
 
+import java.util.List;
+
 import org.brackit.server.io.buffer.BufferException;
 import org.brackit.server.io.file.BlockSpace;
 import org.brackit.server.io.manager.BufferMgr;
 import org.brackit.server.tx.log.Log;
+import org.brackit.xquery.util.Cfg;
 
 /**
  * @author Sebastian Baechle
@@ -38,353 +41,390 @@ import org.brackit.server.tx.log.Log;
 public final class TQBuffer extends AbstractBuffer {
 	private static final boolean DEBUG = false;
 
+	/**
+	 * Name of the configuration property for the percentage of each partition
+	 * which is reserved for the FIFO queue A1
+	 */
+	public static final String A1_SHARE = "org.brackit.server.io.buffer.2q.a1";
+
 	enum State {
 		FREE, AM, A1, PREFETCHED
 	}
 
-	private class TQP extends Frame {
-		State state = State.FREE;
-		TQP toLRU;
-		TQP toMRU;
-
-		volatile int fix = 0;
-
-		TQP(int pageSize) {
-			super(pageSize);
-		}
-
-		@Override
-		int fixCount() {
-			return fix;
-		}
+	private final class TQPartition extends Partition {
+		private final class TQP extends Frame {
+			State state = State.FREE;
+			TQP toLRU;
+			TQP toMRU;
 
-		@Override
-		void drop() {
-			if (state == State.PREFETCHED) {
-				removeFromP();
-			} else if (state == State.A1) {
-				removeFromA1();
-			} else if (state == State.AM) {
-				removeFromAM();
+			TQP(int pageSize) {
+				super(pageSize);
 			}
-		}
-
-		@Override
-		void prefetched() {
-			addAsMRUToP();
-		}
 
-		@Override
-		void fix() {
-			if (state == State.FREE) {
-				// add page to FIFO queue A1
-				addAsMRUToA1();
-			} else if (state == State.PREFETCHED) {
-				// promote from prefetch list
-				// to FIFO queue A1
-				removeFromP();
-				addAsMRUToA1();
-			} else if (state == State.A1) {
-				// promote page from FIFO
-				// queue A1 to LRU chain AM
-				removeFromA1();
-				addAsMRUToAM();
-			} else if (state == State.AM) {
-				// simply move page to MRU
-				// of LRU chain AM
-				moveToAMMRU();
-			} else {
-				throw new IllegalStateException("State: " + state);
+			@Override
+			void drop() {
+				if (state == State.PREFETCHED) {
+					removeFromP();
+				} else if (state == State.A1) {
+					removeFromA1();
+				} else if (state == State.AM) {
+					removeFromAM();
+				}
 			}
-			fix++;
-		}
 
-		@Override
-		boolean isFixed() {
-			return fix > 0;
-		}
-
-		@Override
-		void unfix() {
-			if (fix-- == 0) {
-				throw new RuntimeException("handle already unfixed");
+			@Override
+			void prefetched() {
+				addAsMRUToP();
 			}
-		}
 
-		void removeFromA1() {
-			if (DEBUG) {
-				if (state != State.A1)
+			@Override
+			void referenced() {
+				if (state == State.FREE) {
+					// add page to FIFO queue A1
+					addAsMRUToA1();
+				} else if (state == State.PREFETCHED) {
+					// promote from prefetch list
+					// to FIFO queue A1
+					removeFromP();
+					addAsMRUToA1();
+				} else if (state == State.A1) {
+					// promote page from FIFO
+					// queue A1 to LRU chain AM
+					removeFromA1();
+					addAsMRUToAM();
+				} else if (state == State.AM) {
+					// simply move page to MRU
+					// of LRU chain AM
+					moveToAMMRU();
+				} else {
 					throw new IllegalStateException("State: " + state);
-				if ((toMRU != null) && (toMRU.state != State.A1))
-					throw new IllegalStateException("State: " + toMRU.state);
-				if ((toLRU != null) && (toLRU.state != State.A1))
-					throw new IllegalStateException("State: " + toLRU.state);
+				}
 			}
 
-			if (toLRU == null)
-				a1LRU = toMRU;
-			else
-				toLRU.toMRU = toMRU;
+			void removeFromA1() {
+				if (DEBUG) {
+					if (state != State.A1)
+						throw new IllegalStateException("State: " + state);
+					if ((toMRU != null) && (toMRU.state != State.A1))
+						throw new IllegalStateException("State: " + toMRU.state);
+					if ((toLRU != null) && (toLRU.state != State.A1))
+						throw new IllegalStateException("State: " + toLRU.state);
+				}
 
-			if (toMRU == null)
-				a1MRU = toLRU;
-			else
-				toMRU.toLRU = toLRU;
+				if (toLRU == null)
+					a1LRU = toMRU;
+				else
+					toLRU.toMRU = toMRU;
 
-			a1Length--;
-			toMRU = null;
-			toLRU = null;
-			state = State.FREE;
-		}
+				if (toMRU == null)
+					a1MRU = toLRU;
+				else
+					toMRU.toLRU = toLRU;
 
-		void addAsMRUToAM() {
-			if (DEBUG) {
-				if (state != State.FREE)
-					throw new IllegalStateException("State: " + state);
-				if (toLRU != null)
-					throw new IllegalStateException("toLRU: " + toLRU.state);
-				if (toMRU != null)
-					throw new IllegalStateException("toLRU: " + toMRU.state);
-			}
-
-			if (amLRU == null) {
-				amLRU = this;
-				amMRU = this;
-				toLRU = null;
-				toMRU = null;
-			} else {
-				amMRU.toMRU = this;
-				toLRU = amMRU;
+				a1Length--;
 				toMRU = null;
-				amMRU = this;
-			}
-			state = State.AM;
-			if (DEBUG) {
-				if ((toMRU != null) && (toMRU.state != State.AM))
-					throw new IllegalStateException("State: " + toMRU.state);
-				if ((toLRU != null) && (toLRU.state != State.AM))
-					throw new IllegalStateException("State: " + toLRU.state);
-				if ((amLRU != null) && (amLRU.state != State.AM))
-					throw new IllegalStateException("State: " + amLRU.state);
-				if (amMRU != this)
-					throw new IllegalStateException();
+				toLRU = null;
+				state = State.FREE;
 			}
-		}
 
-		void addAsMRUToA1() {
-			if (DEBUG) {
-				if (state != State.FREE)
-					throw new IllegalStateException("State: " + state);
-				if (toLRU != null)
-					throw new IllegalStateException("toLRU: " + toLRU.state);
-				if (toMRU != null)
-					throw new IllegalStateException("toLRU: " + toMRU.state);
-			}
+			void addAsMRUToAM() {
+				if (DEBUG) {
+					if (state != State.FREE)
+						throw new IllegalStateException("State: " + state);
+					if (toLRU != null)
+						throw new IllegalStateException("toLRU: " + toLRU.state);
+					if (toMRU != null)
+						throw new IllegalStateException("toLRU: " + toMRU.state);
+				}
 
-			if (a1LRU == null) {
-				a1LRU = this;
-				a1MRU = this;
-				toLRU = null;
-				toMRU = null;
-			} else {
-				a1MRU.toMRU = this;
-				toLRU = a1MRU;
-				a1MRU = this;
-				toMRU = null;
-			}
-			a1Length++;
-			state = State.A1;
-
-			if (DEBUG) {
-				if ((toMRU != null) && (toMRU.state != State.A1))
-					throw new IllegalStateException("State: " + toMRU.state);
-				if ((toLRU != null) && (toLRU.state != State.A1))
-					throw new IllegalStateException("State: " + toLRU.state);
-				if ((a1LRU != null) && (a1LRU.state != State.A1))
-					throw new IllegalStateException("State: " + a1LRU.state);
-				if (a1MRU != this)
-					throw new IllegalStateException();
+				if (amLRU == null) {
+					amLRU = this;
+					amMRU = this;
+					toLRU = null;
+					toMRU = null;
+				} else {
+					amMRU.toMRU = this;
+					toLRU = amMRU;
+					toMRU = null;
+					amMRU = this;
+				}
+				state = State.AM;
+				if (DEBUG) {
+					if ((toMRU != null) && (toMRU.state != State.AM))
+						throw new IllegalStateException("State: " + toMRU.state);
+					if ((toLRU != null) && (toLRU.state != State.AM))
+						throw new IllegalStateException("State: " + toLRU.state);
+					if ((amLRU != null) && (amLRU.state != State.AM))
+						throw new IllegalStateException("State: " + amLRU.state);
+					if (amMRU != this)
+						throw new IllegalStateException();
+				}
 			}
-		}
 
-		void addAsMRUToP() {
-			if (DEBUG) {
-				if (state != State.FREE)
-					throw new IllegalStateException("State: " + state);
-				if (toLRU != null)
-					throw new IllegalStateException("toLRU: " + toLRU.state);
-				if (toMRU != null)
-					throw new IllegalStateException("toLRU: " + toMRU.state);
-			}
+			void addAsMRUToA1() {
+				if (DEBUG) {
+					if (state != State.FREE)
+						throw new IllegalStateException("State: " + state);
+					if (toLRU != null)
+						throw new IllegalStateException("toLRU: " + toLRU.state);
+					if (toMRU != null)
+						throw new IllegalStateException("toLRU: " + toMRU.state);
+				}
 
-			if (pMRU == null) {
-				pMRU = this;
-				toLRU = null;
-				toMRU = null;
-			} else {
-				pMRU.toMRU = this;
-				toLRU = pMRU;
-				toMRU = null;
-				pMRU = this;
-			}
-			state = State.PREFETCHED;
-			if (DEBUG) {
-				if ((toMRU != null) && (toMRU.state != State.PREFETCHED))
-					throw new IllegalStateException("State: " + toMRU.state);
-				if ((toLRU != null) && (toLRU.state != State.PREFETCHED))
-					throw new IllegalStateException("State: " + toLRU.state);
-				if (pMRU != this)
-					throw new IllegalStateException();
+				if (a1LRU == null) {
+					a1LRU = this;
+					a1MRU = this;
+					toLRU = null;
+					toMRU = null;
+				} else {
+					a1MRU.toMRU = this;
+					toLRU = a1MRU;
+					a1MRU = this;
+					toMRU = null;
+				}
+				a1Length++;
+				state = State.A1;
+
+				if (DEBUG) {
+					if ((toMRU != null) && (toMRU.state != State.A1))
+						throw new IllegalStateException("State: " + toMRU.state);
+					if ((toLRU != null) && (toLRU.state != State.A1))
+						throw new IllegalStateException("State: " + toLRU.state);
+					if ((a1LRU != null) && (a1LRU.state != State.A1))
+						throw new IllegalStateException("State: " + a1LRU.state);
+					if (a1MRU != this)
+						throw new IllegalStateException();
+				}
 			}
-		}
 
-		void removeFromP() {
-			if (DEBUG) {
-				if (state != State.PREFETCHED)
-					throw new IllegalStateException("State: " + state);
-				if ((toMRU != null) && (toMRU.state != State.PREFETCHED))
-					throw new IllegalStateException("State: " + toMRU.state);
-				if ((toLRU != null) && (toLRU.state != State.PREFETCHED))
-					throw new IllegalStateException("State: " + toLRU.state);
+			void addAsMRUToP() {
+				if (DEBUG) {
+					if (state != State.FREE)
+						throw new IllegalStateException("State: " + state);
+					if (toLRU != null)
+						throw new IllegalStateException("toLRU: " + toLRU.state);
+					if (toMRU != null)
+						throw new IllegalStateException("toLRU: " + toMRU.state);
+				}
+
+				if (pMRU == null) {
+					pMRU = this;
+					pLRU = this;
+					toLRU = null;
+					toMRU = null;
+				} else {
+					pMRU.toMRU = this;
+					toLRU = pMRU;
+					toMRU = null;
+					pMRU = this;
+				}
+				state = State.PREFETCHED;
+				if (DEBUG) {
+					if ((toMRU != null) && (toMRU.state != State.PREFETCHED))
+						throw new IllegalStateException("State: " + toMRU.state);
+					if ((toLRU != null) && (toLRU.state != State.PREFETCHED))
+						throw new IllegalStateException("State: " + toLRU.state);
+					if (pMRU != this)
+						throw new IllegalStateException();
+				}
 			}
 
-			if (toLRU != null)
-				toLRU.toMRU = toMRU;
+			void removeFromP() {
+				if (DEBUG) {
+					if (state != State.PREFETCHED)
+						throw new IllegalStateException("State: " + state);
+					if ((toMRU != null) && (toMRU.state != State.PREFETCHED))
+						throw new IllegalStateException("State: " + toMRU.state);
+					if ((toLRU != null) && (toLRU.state != State.PREFETCHED))
+						throw new IllegalStateException("State: " + toLRU.state);
+				}
 
-			if (toMRU == null)
-				pMRU = toLRU;
-			else
-				toMRU.toLRU = toLRU;
+				if (toLRU == null)
+					pLRU = toMRU;
+				else
+					toLRU.toMRU = toMRU;
 
-			toMRU = null;
-			toLRU = null;
-			state = State.FREE;
-		}
+				if (toMRU == null)
+					pMRU = toLRU;
+				else
+					toMRU.toLRU = toLRU;
 
-		void removeFromAM() {
-			if (DEBUG) {
-				if (state != State.AM)
-					throw new IllegalStateException("State: " + state);
-				if ((toMRU != null) && (toMRU.state != State.AM))
-					throw new IllegalStateException("State: " + toMRU.state);
-				if ((toLRU != null) && (toLRU.state != State.AM))
-					throw new IllegalStateException("State: " + toLRU.state);
+				toMRU = null;
+				toLRU = null;
+				state = State.FREE;
 			}
 
-			if (toLRU == null)
-				amLRU = toMRU;
-			else
-				toLRU.toMRU = toMRU;
+			void removeFromAM() {
+				if (DEBUG) {
+					if (state != State.AM)
+						throw new IllegalStateException("State: " + state);
+					if ((toMRU != null) && (toMRU.state != State.AM))
+						throw new IllegalStateException("State: " + toMRU.state);
+					if ((toLRU != null) && (toLRU.state != State.AM))
+						throw new IllegalStateException("State: " + toLRU.state);
+				}
 
-			if (toMRU == null)
-				amMRU = toLRU;
-			else
-				toMRU.toLRU = toLRU;
+				if (toLRU == null)
+					amLRU = toMRU;
+				else
+					toLRU.toMRU = toMRU;
 
-			toMRU = null;
-			toLRU = null;
-			state = State.FREE;
-		}
+				if (toMRU == null)
+					amMRU = toLRU;
+				else
+					toMRU.toLRU = toLRU;
 
-		void moveToAMMRU() {
-			if (DEBUG) {
-				if (state != State.AM)
-					throw new IllegalStateException("State: " + state);
-				if ((toMRU != null) && (toMRU.state != State.AM))
-					throw new IllegalStateException("State: " + toMRU.state);
-				if ((toLRU != null) && (toLRU.state != State.AM))
-					throw new IllegalStateException("State: " + toLRU.state);
+				toMRU = null;
+				toLRU = null;
+				state = State.FREE;
 			}
 
-			if (amMRU == this) {
-				return;
-			}
-			TQP n = toMRU;
+			void moveToAMMRU() {
+				if (DEBUG) {
+					if (state != State.AM)
+						throw new IllegalStateException("State: " + state);
+					if ((toMRU != null) && (toMRU.state != State.AM))
+						throw new IllegalStateException("State: " + toMRU.state);
+					if ((toLRU != null) && (toLRU.state != State.AM))
+						throw new IllegalStateException("State: " + toLRU.state);
+				}
 
-			if (toLRU != null) {
-				toLRU.toMRU = n;
-				if (n != null) {
-					n.toLRU = toLRU;
+				if (amMRU == this) {
+					return;
+				}
+				TQP n = toMRU;
+
+				if (toLRU != null) {
+					toLRU.toMRU = n;
+					if (n != null) {
+						n.toLRU = toLRU;
+					}
+				} else {
+					amLRU = toMRU;
+					toMRU.toLRU = null;
 				}
-			} else {
-				amLRU = toMRU;
-				toMRU.toLRU = null;
-			}
 
-			toMRU = null;
-			amMRU.toMRU = this;
-			toLRU = amMRU;
-			amMRU = this;
-			if (DEBUG) {
-				if ((toMRU != null) && (toMRU.state != State.AM))
-					throw new IllegalStateException("State: " + toMRU.state);
-				if ((toLRU != null) && (toLRU.state != State.AM))
-					throw new IllegalStateException("State: " + toLRU.state);
+				toMRU = null;
+				amMRU.toMRU = this;
+				toLRU = amMRU;
+				amMRU = this;
+				if (DEBUG) {
+					if ((toMRU != null) && (toMRU.state != State.AM))
+						throw new IllegalStateException("State: " + toMRU.state);
+					if ((toLRU != null) && (toLRU.state != State.AM))
+						throw new IllegalStateException("State: " + toLRU.state);
+				}
 			}
-		}
 
-		@Override
-		public String toString() {
-			return ((state != null) ? super.toString() + state : super
-					.toString());
+			@Override
+			public String toString() {
+				return ((state != null) ? super.toString() + state : super
+						.toString());
+			}
 		}
-	}
 
-	final int threshold;
+		final int threshold;
 
-	// prefetched
-	TQP pMRU;
+		// prefetched
+		TQP pLRU;
+		TQP pMRU;
 
-	// AM
-	TQP amLRU;
-	TQP amMRU;
+		// AM
+		TQP amLRU;
+		TQP amMRU;
 
-	// A1
-	TQP a1LRU;
-	TQP a1MRU;
-	int a1Length;
+		// A1
+		TQP a1LRU;
+		TQP a1MRU;
+		int a1Length;
 
-	public TQBuffer(BlockSpace blockSpace, int bufferSize, Log transactionLog,
-			BufferMgr bufferMgr) throws BufferException {
-		super(blockSpace, bufferSize, transactionLog, bufferMgr);
-		threshold = Math.max(1, bufferSize / 10);
-	}
-
-	@Override
-	protected Frame grow(int pageSize) {
-		TQP p = new TQP(pageSize);
-		return p;
-	}
+		TQPartition(int no, int size) {
+			super(no, size);
+			threshold = Math.max(1, (size * Cfg.asInt(A1_SHARE, 10)) / 100);
+		}
 
-	@Override
-	protected Frame shrink() {
-		if (pMRU != null) {
-			TQP p = pMRU;
-			p.removeFromP();
+		@Override
+		protected Frame grow(int pageSize) {
+			TQP p = new TQP(pageSize);
 			return p;
 		}
-		if (a1Length > threshold) {
+
+		@Override
+		protected Frame shrink() {
+			// prefetched pages are replaced in FIFO order
+			for (TQP p = pLRU; p != null; p = p.toMRU) {
+				if (p.isReplaceable()) {
+					p.removeFromP();
+					return p;
+				}
+			}
+			if (a1Length > threshold) {
+				for (TQP p = a1LRU; p != null; p = p.toMRU) {
+					if (p.isReplaceable()) {
+						p.removeFromA1();
+						return p;
+					}
+				}
+			}
+			for (TQP p = amLRU; p != null; p = p.toMRU) {
+				if (p.isReplaceable()) {
+					p.removeFromAM();
+					return p;
+				}
+			}
+			// ultima ratio: drain FIFO
 			for (TQP p = a1LRU; p != null; p = p.toMRU) {
-				if (p.fix == 0) {
+				if (p.isReplaceable()) {
 					p.removeFromA1();
 					return p;
 				}
 			}
+
+			return null;
 		}
-		for (TQP p = amLRU; p != null; p = p.toMRU) {
-			if (p.fix == 0) {
-				p.removeFromAM();
-				return p;
+
+		@Override
+		protected void victims(List<Frame> victims, int max) {
+			for (TQP p = pLRU; (p != null) && (victims.size() < max); p = p.toMRU) {
+				if (p.fix == 0) {
+					victims.add(p);
+				}
 			}
-		}
-		// ultima ratio: drain FIFO
-		for (TQP p = a1LRU; p != null; p = p.toMRU) {
-			if (p.fix == 0) {
-				p.removeFromA1();
-				return p;
+			TQP a1 = a1LRU;
+			for (int excess = a1Length - threshold; (a1 != null)
+					&& (excess > 0) && (victims.size() < max); a1 = a1.toMRU) {
+				if (a1.fix == 0) {
+					victims.add(a1);
+					excess--;
+				}
+			}
+			for (TQP p = amLRU; (p != null) && (victims.size() < max); p = p.toMRU) {
+				if (p.fix == 0) {
+					victims.add(p);
+				}
+			}
+			// ultima ratio: drain FIFO
+			for (; (a1 != null) && (victims.size() < max); a1 = a1.toMRU) {
+				if (a1.fix == 0) {
+					victims.add(a1);
+				}
 			}
 		}
+	}
 
-		return null;
+	public TQBuffer(BlockSpace blockSpace, int bufferSize, Log transactionLog,
+			BufferMgr bufferMgr) throws BufferException {
+		this(blockSpace, bufferSize, Cfg.asInt(PARTITIONS, 1), transactionLog,
+				bufferMgr);
+	}
+
+	public TQBuffer(BlockSpace blockSpace, int bufferSize, int partitions,
+			Log transactionLog, BufferMgr bufferMgr) throws BufferException {
+		super(blockSpace, bufferSize, partitions, transactionLog, bufferMgr);
+	}
+
+	@Override
+	protected Partition createPartition(int no, int size) {
+		return new TQPartition(no, size);
 	}
-}
\ No newline at end of file
+}
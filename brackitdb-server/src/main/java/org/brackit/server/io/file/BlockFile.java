@@ -42,8 +42,25 @@ public interface BlockFile {
 
 	void read(int blockNo, byte[] buffer, int numBlocks) throws FileException;
 
+	/**
+	 * Scatter read of <code>numBlocks</code> consecutive blocks, where each
+	 * block ends up in its own array. This spares the caller a staging array
+	 * for the whole run, but it is not a zero-copy transfer: channel I/O on
+	 * heap arrays still moves the data through a temporary direct buffer.
+	 */
+	void read(int blockNo, byte[][] blocks, int numBlocks)
+			throws FileException;
+
 	void write(int blockNo, byte[] buffer, int numBlocks) throws FileException;
 
+	/**
+	 * Gather write of <code>numBlocks</code> consecutive blocks, where each
+	 * block is taken from its own array. As with the scatter read, the data
+	 * is still copied through a temporary direct buffer.
+	 */
+	void write(int blockNo, byte[][] blocks, int numBlocks)
+			throws FileException;
+
 	void sync() throws FileException;
 
 	int getBlockCnt() throws FileException;
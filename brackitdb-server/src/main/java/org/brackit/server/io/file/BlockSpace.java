@@ -83,8 +83,24 @@ public interface BlockSpace {
 
 	int read(int lba, byte[] buffer, int numBlocks) throws StoreException;
 
+	/**
+	 * Reads a run of blocks like {@link #read(int, byte[], int)}, but places
+	 * each block in the corresponding array of <code>buffers</code> instead
+	 * of a single contiguous array.
+	 * 
+	 * @return the number of blocks actually read
+	 */
+	int read(int lba, byte[][] buffers, int numBlocks) throws StoreException;
+
 	void write(int lba, byte[] buffer, int numBlocks) throws StoreException;
 
+	/**
+	 * Writes a run of blocks like {@link #write(int, byte[], int)}, but takes
+	 * each block from the corresponding array of <code>buffers</code>
+	 * instead of a single contiguous array.
+	 */
+	void write(int lba, byte[][] buffers, int numBlocks) throws StoreException;
+
 	/**
 	 * Returns the length of the block header in bytes
 	 * 
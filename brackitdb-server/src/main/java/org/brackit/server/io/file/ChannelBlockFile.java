@@ -0,0 +1,180 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.io.file;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * BlockFile on top of a {@link FileChannel}. Single-array reads and writes
+ * are positional and do not share a file pointer, so that any number of
+ * threads may access different blocks concurrently. Scatter reads and gather
+ * writes have to set the channel position and are therefore serialized
+ * among themselves, but not with positional accesses.
+ * <p>
+ * Note that a thread which is interrupted during an I/O operation closes the
+ * channel.
+ */
+public class ChannelBlockFile implements BlockFile {
+
+	private final String fileName;
+
+	private final int blockSize;
+
+	private final Object vectorLock = new Object();
+
+	private RandomAccessFile file;
+
+	private FileChannel channel;
+
+	public ChannelBlockFile(String fileName, int blockSize) {
+		this.fileName = fileName;
+		this.blockSize = blockSize;
+	}
+
+	@Override
+	public void open() throws FileException {
+		try {
+			file = new RandomAccessFile(fileName, Constants.FILE_MODE_UNSY);
+			channel = file.getChannel();
+		} catch (FileNotFoundException e) {
+			throw new FileException(e);
+		}
+	}
+
+	@Override
+	public void close() throws FileException {
+		try {
+			sync();
+			file.close();
+		} catch (IOException e) {
+			throw new FileException(e);
+		}
+	}
+
+	@Override
+	public void read(int blockNo, byte[] block, int numBlocks)
+			throws FileException {
+		ByteBuffer dst = ByteBuffer.wrap(block, 0, numBlocks * blockSize);
+		long blockPos = position(blockNo);
+		try {
+			while (dst.hasRemaining()) {
+				if (channel.read(dst, blockPos + dst.position()) < 0) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			throw new FileException(e);
+		}
+	}
+
+	@Override
+	public void read(int blockNo, byte[][] blocks, int numBlocks)
+			throws FileException {
+		ByteBuffer[] dsts = wrap(blocks, numBlocks);
+		long remaining = (long) numBlocks * (long) blockSize;
+		try {
+			synchronized (vectorLock) {
+				channel.position(position(blockNo));
+				while (remaining > 0) {
+					long read = channel.read(dsts);
+					if (read < 0) {
+						break;
+					}
+					remaining -= read;
+				}
+			}
+		} catch (IOException e) {
+			throw new FileException(e);
+		}
+	}
+
+	@Override
+	public void write(int blockNo, byte[] block, int numBlocks)
+			throws FileException {
+		ByteBuffer src = ByteBuffer.wrap(block, 0, numBlocks * blockSize);
+		long blockPos = position(blockNo);
+		try {
+			while (src.hasRemaining()) {
+				channel.write(src, blockPos + src.position());
+			}
+		} catch (IOException e) {
+			throw new FileException(e);
+		}
+	}
+
+	@Override
+	public void write(int blockNo, byte[][] blocks, int numBlocks)
+			throws FileException {
+		ByteBuffer[] srcs = wrap(blocks, numBlocks);
+		long remaining = (long) numBlocks * (long) blockSize;
+		try {
+			synchronized (vectorLock) {
+				channel.position(position(blockNo));
+				while (remaining > 0) {
+					remaining -= channel.write(srcs);
+				}
+			}
+		} catch (IOException e) {
+			throw new FileException(e);
+		}
+	}
+
+	@Override
+	public void sync() throws FileException {
+		try {
+			channel.force(true);
+		} catch (IOException e) {
+			throw new FileException(e);
+		}
+	}
+
+	@Override
+	public int getBlockCnt() throws FileException {
+		try {
+			return (int) (channel.size() / blockSize);
+		} catch (IOException e) {
+			throw new FileException(e);
+		}
+	}
+
+	private long position(int blockNo) {
+		return (long) blockNo * (long) blockSize;
+	}
+
+	private ByteBuffer[] wrap(byte[][] blocks, int numBlocks) {
+		ByteBuffer[] buffers = new ByteBuffer[numBlocks];
+		for (int i = 0; i < numBlocks; i++) {
+			buffers[i] = ByteBuffer.wrap(blocks[i], 0, blockSize);
+		}
+		return buffers;
+	}
+}
@@ -361,7 +361,7 @@ public class DefaultBlockSpace implements BlockSpace, InfoContributor {
 				meta.delete();
 			}
 
-			dataFile = new RAFBlockFile(dataFileName, blkSize);
+			dataFile = new ChannelBlockFile(dataFileName, blkSize);
 			dataFile.open();
 			for (int i = 0; i < iniSize; i++) {
 				dataFile.write(i, iniBlock, 1);
@@ -415,7 +415,7 @@ public class DefaultBlockSpace implements BlockSpace, InfoContributor {
 			for (int i = 0; i < iniBlock.length; i++) {
 				iniBlock[i] = (byte) 0;
 			}
-			dataFile = new RAFBlockFile(dataFileName, blkSize);
+			dataFile = new ChannelBlockFile(dataFileName, blkSize);
 			dataFile.open();
 
 			// read freeSpaceInfo from meta file
@@ -457,18 +457,9 @@ public class DefaultBlockSpace implements BlockSpace, InfoContributor {
 		return readImpl(lba, buffer, numBlocks);
 	}
 
-	private synchronized int readImpl(int lba, byte[] buffer, int numBlocks)
+	private int readImpl(int lba, byte[] buffer, int numBlocks)
 			throws StoreException {
-		if (lba < 0 || lba >= freeSpaceInfo.logicalSize()) {
-			throw new StoreException("invalid lba");
-		}
-		if (!freeSpaceInfo.get(lba)) {
-			throw new StoreException("reading unused block: " + lba);
-		}
-		int readBlocks = 1;
-		while ((readBlocks < numBlocks)
-				&& (freeSpaceInfo.get(lba + readBlocks)))
-			readBlocks++;
+		int readBlocks = checkRead(lba, numBlocks);
 		try {
 			dataFile.read(lba, buffer, readBlocks);
 			// if (block[0] != BLOCK_IN_USE) {
@@ -482,16 +473,51 @@ public class DefaultBlockSpace implements BlockSpace, InfoContributor {
 	}
 
 	@Override
-	public void write(int lba, byte[] buffer, int numBlocks)
+	public int read(int lba, byte[][] buffers, int numBlocks)
 			throws StoreException {
-		writeImpl(lba, buffer, numBlocks);
+		return readImpl(lba, buffers, numBlocks);
+	}
+
+	private int readImpl(int lba, byte[][] buffers, int numBlocks)
+			throws StoreException {
+		int readBlocks = checkRead(lba, numBlocks);
+		try {
+			dataFile.read(lba, buffers, readBlocks);
+			return readBlocks;
+		} catch (FileException e) {
+			throw new StoreException(e);
+		}
 	}
 
-	private synchronized void writeImpl(int lba, byte[] block, int numBlocks)
+	/**
+	 * Checks the requested blocks and returns the length of the used prefix.
+	 * Only the check is synchronized, the data file is accessed with
+	 * positional I/O afterwards.
+	 */
+	private synchronized int checkRead(int lba, int numBlocks)
 			throws StoreException {
 		if (lba < 0 || lba >= freeSpaceInfo.logicalSize()) {
 			throw new StoreException("invalid lba");
 		}
+		if (!freeSpaceInfo.get(lba)) {
+			throw new StoreException("reading unused block: " + lba);
+		}
+		int readBlocks = 1;
+		while ((readBlocks < numBlocks)
+				&& (freeSpaceInfo.get(lba + readBlocks)))
+			readBlocks++;
+		return readBlocks;
+	}
+
+	@Override
+	public void write(int lba, byte[] buffer, int numBlocks)
+			throws StoreException {
+		writeImpl(lba, buffer, numBlocks);
+	}
+
+	private void writeImpl(int lba, byte[] block, int numBlocks)
+			throws StoreException {
+		checkWrite(lba);
 		try {
 			dataFile.write(lba, block, numBlocks);
 		} catch (FileException e) {
@@ -499,6 +525,23 @@ public class DefaultBlockSpace implements BlockSpace, InfoContributor {
 		}
 	}
 
+	@Override
+	public void write(int lba, byte[][] buffers, int numBlocks)
+			throws StoreException {
+		checkWrite(lba);
+		try {
+			dataFile.write(lba, buffers, numBlocks);
+		} catch (FileException e) {
+			throw new StoreException(e);
+		}
+	}
+
+	private synchronized void checkWrite(int lba) throws StoreException {
+		if (lba < 0 || lba >= freeSpaceInfo.logicalSize()) {
+			throw new StoreException("invalid lba");
+		}
+	}
+
 	@Override
 	public synchronized void sync() throws StoreException {
 		
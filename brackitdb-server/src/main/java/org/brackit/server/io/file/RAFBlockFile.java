@@ -30,6 +30,7 @@ package org.brackit.server.io.file;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 /**
  * 
@@ -80,6 +81,28 @@ public class RAFBlockFile implements BlockFile {
 		}
 	}
 
+	@Override
+	public void read(int blockNo, byte[][] blocks, int numBlocks)
+			throws FileException {
+		ByteBuffer[] dsts = new ByteBuffer[numBlocks];
+		for (int i = 0; i < numBlocks; i++) {
+			dsts[i] = ByteBuffer.wrap(blocks[i], 0, blockSize);
+		}
+		try {
+			seekToBlock(blockNo);
+			long remaining = (long) numBlocks * (long) blockSize;
+			while (remaining > 0) {
+				long read = file.getChannel().read(dsts);
+				if (read < 0) {
+					break;
+				}
+				remaining -= read;
+			}
+		} catch (IOException e) {
+			throw new FileException(e);
+		}
+	}
+
 	@Override
 	public void write(int blockNo, byte[] block, int numBlocks)
 			throws FileException {
@@ -91,6 +114,24 @@ public class RAFBlockFile implements BlockFile {
 		}
 	}
 
+	@Override
+	public void write(int blockNo, byte[][] blocks, int numBlocks)
+			throws FileException {
+		ByteBuffer[] srcs = new ByteBuffer[numBlocks];
+		for (int i = 0; i < numBlocks; i++) {
+			srcs[i] = ByteBuffer.wrap(blocks[i], 0, blockSize);
+		}
+		try {
+			seekToBlock(blockNo);
+			long remaining = (long) numBlocks * (long) blockSize;
+			while (remaining > 0) {
+				remaining -= file.getChannel().write(srcs);
+			}
+		} catch (IOException e) {
+			throw new FileException(e);
+		}
+	}
+
 	@Override
 	public void sync() throws FileException {
 		try {
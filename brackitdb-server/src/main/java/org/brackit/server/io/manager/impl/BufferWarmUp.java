@@ -0,0 +1,180 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.io.manager.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.brackit.server.io.buffer.Buffer;
+import org.brackit.server.io.buffer.BufferException;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.xquery.util.log.Logger;
+
+/**
+ * Background loader which brings the pages that were resident at the last
+ * shutdown of a container back into its buffer. The page list is processed
+ * from the hottest to the coldest page in batches, which are sorted to read
+ * runs of consecutive blocks.
+ */
+class BufferWarmUp extends Thread {
+	private static final Logger log = Logger.getLogger(BufferWarmUp.class);
+
+	private static final String HOT_SET_FILE = "hot.set";
+
+	private static final int BATCH_SIZE = 1024;
+
+	private volatile boolean active = false;
+
+	private final Buffer buffer;
+
+	private final int[] blockNos;
+
+	private volatile int processed;
+
+	public BufferWarmUp(Buffer buffer, int[] blockNos) {
+		setName("BufferWarmUp" + buffer.getContainerNo());
+
+		this.buffer = buffer;
+		this.blockNos = blockNos;
+		this.active = true;
+
+		setDaemon(true);
+	}
+
+	@Override
+	public void run() {
+		long start = System.currentTimeMillis();
+
+		for (int from = 0; (active) && (from < blockNos.length); from += BATCH_SIZE) {
+			int to = Math.min(from + BATCH_SIZE, blockNos.length);
+			int[] batch = Arrays.copyOfRange(blockNos, from, to);
+			Arrays.sort(batch);
+
+			for (int i = 0; (active) && (i < batch.length);) {
+				int runStart = i++;
+				while ((i < batch.length) && (batch[i] == batch[i - 1] + 1)) {
+					i++;
+				}
+				try {
+					buffer.preload(new PageID(buffer.getContainerNo(),
+							batch[runStart]), i - runStart);
+				} catch (BufferException e) {
+					log.error(String.format(
+							"Error preloading %s pages of container %s.", i
+									- runStart, buffer.getContainerNo()), e);
+					active = false;
+				}
+				processed = from + i;
+			}
+		}
+
+		log.info(String.format(
+				"Warm-up of container %s loaded %s of %s pages in %s ms.",
+				buffer.getContainerNo(), processed, blockNos.length, System
+						.currentTimeMillis()
+						- start));
+	}
+
+	public void terminate() {
+		active = false;
+		try {
+			join();
+		} catch (InterruptedException e) {
+		}
+	}
+
+	public boolean isDone() {
+		return (!active) || (processed == blockNos.length);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("warm-up %s/%s pages%s", processed,
+				blockNos.length, (isDone()) ? " (done)" : "");
+	}
+
+	/**
+	 * Writes the hot pages of the buffer to the given container directory.
+	 */
+	public static void save(Buffer buffer, File dir) throws BufferException {
+		List<PageID> hotPages = buffer.getHotPages();
+		int count = Math.min(hotPages.size(), buffer.getBufferSize());
+
+		try {
+			File file = new File(dir, HOT_SET_FILE);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.writeInt(count);
+				for (int i = 0; i < count; i++) {
+					out.writeInt(hotPages.get(i).getBlockNo());
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			throw new BufferException(e);
+		}
+	}
+
+	/**
+	 * Reads the hot pages of the given container directory. Returns
+	 * <code>null</code> if there are none.
+	 */
+	public static int[] load(File dir, int maxCount) throws BufferException {
+		File file = new File(dir, HOT_SET_FILE);
+		if (!file.exists()) {
+			return null;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			try {
+				int count = Math.min(in.readInt(), maxCount);
+				int[] blockNos = new int[count];
+				for (int i = 0; i < count; i++) {
+					blockNos[i] = in.readInt();
+				}
+				return blockNos;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new BufferException(e);
+		}
+	}
+}
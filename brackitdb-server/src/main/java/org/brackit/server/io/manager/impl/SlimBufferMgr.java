@@ -35,6 +35,8 @@ import java.util.Collection;
 import org.brackit.server.io.buffer.Buffer;
 import org.brackit.server.io.buffer.BufferException;
 import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.io.buffer.impl.ARCBuffer;
+import org.brackit.server.io.buffer.impl.ClockBuffer;
 import org.brackit.server.io.buffer.impl.TQBuffer;
 import org.brackit.server.io.file.BlockSpace;
 import org.brackit.server.io.file.DefaultBlockSpace;
@@ -61,17 +63,44 @@ public class SlimBufferMgr implements BufferMgr, InfoContributor {
 
 	private static final String STORAGE_ROOT = "org.brackit.server.io.root";
 
+	/**
+	 * Name of the configuration property for the replacement policy of the
+	 * buffers ("2q", "arc" or "clock"). The policy of a single container can
+	 * be overridden by appending "." and the container ID.
+	 */
+	public static final String REPLACEMENT = "org.brackit.server.io.buffer.replacement";
+
+	/**
+	 * Name of the configuration property to save the hot pages of each buffer
+	 * at shutdown and to preload them in the background at start
+	 */
+	public static final String WARM_UP = "org.brackit.server.io.buffer.warmup";
+
 	/**
 	 * Maps a containerID to a specific buffer manager
 	 */
 	private Buffer[] bufferMapping;
 
+	/**
+	 * Maps a containerID to the directory of the container
+	 */
+	private File[] containerDirs;
+
+	/**
+	 * Maps a containerID to a running warm-up
+	 */
+	private BufferWarmUp[] warmUps;
+
+	private final boolean warmUp = Cfg.asBool(WARM_UP, true);
+
 	private Log transactionLog;
 
 	private final String storeDir = Cfg.asString(STORAGE_ROOT, "container");
 
 	public SlimBufferMgr(Log transactionLog) {
 		this.bufferMapping = new Buffer[256];
+		this.containerDirs = new File[256];
+		this.warmUps = new BufferWarmUp[256];
 		this.transactionLog = transactionLog;
 		ListBuffers.add(this);
 	}
@@ -96,9 +125,9 @@ public class SlimBufferMgr implements BufferMgr, InfoContributor {
 			double extRatio = (double) extendContainerSize
 					/ (double) initialContainerSize;
 			blockSpace.create(pageSize, initialContainerSize, extRatio);
-			Buffer buffer = new TQBuffer(blockSpace, bufferSize,
-					transactionLog, this);
+			Buffer buffer = newBuffer(blockSpace, bufferSize, containerID);
 			bufferMapping[containerID] = buffer;
+			containerDirs[containerID] = dir;
 
 			Container cnt = new Container(dir, containerID, bufferSize,
 					pageSize, initialContainerSize, extendContainerSize);
@@ -115,6 +144,23 @@ public class SlimBufferMgr implements BufferMgr, InfoContributor {
 		}
 	}
 
+	private Buffer newBuffer(BlockSpace blockSpace, int bufferSize,
+			int containerID) throws BufferException {
+		String policy = Cfg.asString(REPLACEMENT + "." + containerID, Cfg
+				.asString(REPLACEMENT, "2q"));
+
+		if (policy.equalsIgnoreCase("2q")) {
+			return new TQBuffer(blockSpace, bufferSize, transactionLog, this);
+		} else if (policy.equalsIgnoreCase("arc")) {
+			return new ARCBuffer(blockSpace, bufferSize, transactionLog, this);
+		} else if (policy.equalsIgnoreCase("clock")) {
+			return new ClockBuffer(blockSpace, bufferSize, transactionLog, this);
+		}
+		throw new BufferException(
+				"Unknown replacement policy '%s' for container %s.", policy,
+				containerID);
+	}
+
 	@Override
 	public Buffer getBuffer(PageID pageID) throws BufferException {
 		// TODO fix container selection
@@ -164,6 +210,7 @@ public class SlimBufferMgr implements BufferMgr, InfoContributor {
 		} else {
 			bufferMapping[containerID] = null;
 			shutdownBuffer(containerID, buffer, force);
+			containerDirs[containerID] = null;
 		}
 	}
 
@@ -175,6 +222,7 @@ public class SlimBufferMgr implements BufferMgr, InfoContributor {
 			if (buffer != null) {
 				bufferMapping[containerID] = null;
 				shutdownBuffer(containerID, buffer, true);
+				containerDirs[containerID] = null;
 			}
 		}
 	}
@@ -184,6 +232,23 @@ public class SlimBufferMgr implements BufferMgr, InfoContributor {
 		log.info(String.format("Initiated shutdown of container '%s'.",
 				containerID));
 
+		BufferWarmUp running = warmUps[containerID];
+		if (running != null) {
+			running.terminate();
+			warmUps[containerID] = null;
+		}
+
+		File dir = containerDirs[containerID];
+		if ((warmUp) && (dir != null)) {
+			try {
+				BufferWarmUp.save(buffer, dir);
+			} catch (BufferException e) {
+				log.error(String.format(
+						"Could not save hot pages of container '%s'.",
+						containerID), e);
+			}
+		}
+
 		buffer.shutdown(force);
 
 		log.info(String.format("Container '%s' shut down.", containerID));
@@ -198,16 +263,36 @@ public class SlimBufferMgr implements BufferMgr, InfoContributor {
 		}
 
 		BlockSpace blockSpace = new DefaultBlockSpace(containerDir, containerID);
-		Buffer buffer = new TQBuffer(blockSpace, bufferSize, transactionLog,
-				this);
+		Buffer buffer = newBuffer(blockSpace, bufferSize, containerID);
 
 		bufferMapping[containerID] = buffer;
+		containerDirs[containerID] = new File(containerDir);
+
+		if (warmUp) {
+			startWarmUp(containerID, buffer);
+		}
 
 		log.info(String.format(
 				"Buffer for container '%s' successfully initialized",
 				containerDir));
 	}
 
+	private void startWarmUp(int containerID, Buffer buffer) {
+		try {
+			int[] blockNos = BufferWarmUp.load(containerDirs[containerID],
+					buffer.getBufferSize());
+			if ((blockNos != null) && (blockNos.length > 0)) {
+				BufferWarmUp loader = new BufferWarmUp(buffer, blockNos);
+				warmUps[containerID] = loader;
+				loader.start();
+			}
+		} catch (BufferException e) {
+			log.error(String.format(
+					"Could not read hot pages of container '%s'.",
+					containerID), e);
+		}
+	}
+
 	@Override
 	public synchronized long checkMinRedoLSN() {
 		long minRedoLSN = Long.MAX_VALUE;
@@ -246,6 +331,9 @@ public class SlimBufferMgr implements BufferMgr, InfoContributor {
 				out.append(" with " + buffer.getPageSize() + "B");
 				out.append(", buffer hit ratio " + buffer.getHitCount());
 				out.append(", fault ratio " + buffer.getMissCount());
+				if (warmUps[containerID] != null) {
+					out.append(", " + warmUps[containerID]);
+				}
 				out.append("\n");
 			}
 		}
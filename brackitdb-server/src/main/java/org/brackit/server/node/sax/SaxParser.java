@@ -32,6 +32,7 @@ import java.util.Stack;
 import org.brackit.xquery.atomic.QNm;
 import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.node.txnode.TXNode;
+import org.brackit.server.tx.thread.ThreadCB;
 import org.brackit.xquery.QueryContext;
 import org.brackit.xquery.xdm.DocumentException;
 import org.brackit.xquery.xdm.Kind;
@@ -61,6 +62,9 @@ public class SaxParser {
 
 	public void parse(QueryContext ctx, ContentHandler contentHandler)
 			throws DocumentException {
+		// serialization reads the whole subtree once
+		ThreadCB cb = ThreadCB.get();
+		cb.beginBulkRead();
 		try {
 			Stack<Node<?>> elementStack = new Stack<Node<?>>();
 			AttributesImpl attributes = null;
@@ -165,6 +169,8 @@ public class SaxParser {
 		} catch (Exception e) {
 			log.error(e);
 			throw new DocumentException(e);
+		} finally {
+			cb.endBulkRead();
 		}
 	}
 
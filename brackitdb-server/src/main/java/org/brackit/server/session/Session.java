@@ -28,6 +28,7 @@
 package org.brackit.server.session;
 
 import org.brackit.xquery.util.log.Logger;
+import org.brackit.server.tx.CommitMode;
 import org.brackit.server.tx.IsolationLevel;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxException;
@@ -52,6 +53,8 @@ public final class Session {
 
 	private IsolationLevel isolationLevel = IsolationLevel.SERIALIZABLE;
 
+	private CommitMode commitMode = CommitMode.SYNC;
+
 	private int lockDepth = 20;
 
 	private Tx tx = null;
@@ -123,6 +126,14 @@ public final class Session {
 		this.isolationLevel = isolationLevel;
 	}
 
+	public synchronized CommitMode getCommitMode() {
+		return commitMode;
+	}
+
+	public synchronized void setCommitMode(CommitMode commitMode) {
+		this.commitMode = commitMode;
+	}
+
 	public synchronized int getLockDepth() {
 		return lockDepth;
 	}
@@ -168,6 +179,7 @@ public final class Session {
 
 			tx = taMgr.begin(isolationLevel, this, readOnly);
 			tx.setLockDepth(lockDepth);
+			tx.setCommitMode(commitMode);
 
 			if (log.isDebugEnabled()) {
 				log.debug(String.format("Started TX %s of session %s.", tx
@@ -82,14 +82,16 @@ public class WorkerThread extends Thread {
 			job = scheduler.popJob();
 
 			if (job != null) {
-				Thread supervisor = job.getSupervisor();
-
-				if (supervisor != null)
-					ThreadCB.get().supervisor = supervisor;
-
-				runJob(job);
-
-				ThreadCB.get().supervisor = null;
+				// each job runs with its own control block
+				ThreadCB cb = ThreadCB.create();
+				cb.supervisor = job.getSupervisor();
+				ThreadCB previous = ThreadCB.bind(cb);
+
+				try {
+					runJob(job);
+				} finally {
+					ThreadCB.bind(previous);
+				}
 			} else {
 				alive = false;
 			}
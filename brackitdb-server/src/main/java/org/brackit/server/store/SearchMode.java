@@ -238,7 +238,7 @@ public enum SearchMode {
 
 		@Override
 		public synchronized int nextInt(int n) {
-			return ThreadCB.get().random.nextInt(n);
+			return ThreadCB.get().random().nextInt(n);
 		}
 	},
 
@@ -36,6 +36,9 @@ import org.brackit.server.store.blob.BlobStoreAccessException;
 import org.brackit.server.store.page.BasePage;
 import org.brackit.server.store.page.BufferedPage;
 import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxException;
+import org.brackit.server.tx.mvcc.Snapshot;
+import org.brackit.server.tx.mvcc.VersionStore;
 
 /**
  * Provides basic access primitves for large records exceedings (page) size
@@ -88,6 +91,8 @@ public class SimpleBlobPage extends BasePage implements BufferedPage {
 				if (nextPageID != null) {
 					Handle nextOverflowHandle = buffer.fixPage(tx, nextPageID);
 					nextOverflowHandle.latchS();
+					nextOverflowHandle = readVersion(tx, buffer,
+							nextOverflowHandle);
 
 					return new SimpleBlobPage(buffer, nextOverflowHandle);
 				}
@@ -95,6 +100,7 @@ public class SimpleBlobPage extends BasePage implements BufferedPage {
 				if (nextPageID == null) {
 					if (appendNew) {
 						Handle nextOverflowHandle = buffer.allocatePage(tx, getUnitID());
+						allocated(tx, nextOverflowHandle);
 						nextOverflowHandle.setAssignedTo(tx);
 						SimpleBlobPage next = new SimpleBlobPage(buffer,
 								nextOverflowHandle);
@@ -105,6 +111,7 @@ public class SimpleBlobPage extends BasePage implements BufferedPage {
 				} else {
 					Handle nextOverflowHandle = buffer.fixPage(tx, nextPageID);
 					nextOverflowHandle.latchX();
+					beforeUpdate(tx, nextOverflowHandle);
 					nextOverflowHandle.setAssignedTo(tx);
 					return new SimpleBlobPage(buffer, nextOverflowHandle);
 				}
@@ -117,6 +124,60 @@ public class SimpleBlobPage extends BasePage implements BufferedPage {
 		}
 	}
 
+	/**
+	 * Replaces a shared latched page with the version a snapshot transaction
+	 * has to see. Dropped blobs are versioned like any other update, so a
+	 * snapshot can still read them after their pages were reused.
+	 */
+	static Handle readVersion(Tx tx, Buffer buffer, Handle handle)
+			throws BlobStoreAccessException, BufferException {
+		Snapshot snapshot = tx.getSnapshot();
+
+		if (snapshot == null) {
+			return handle;
+		}
+
+		Handle version;
+
+		try {
+			version = snapshot.getVersion(handle.getPageID());
+		} catch (TxException e) {
+			handle.unlatch();
+			buffer.unfixPage(handle);
+			throw new BlobStoreAccessException(e,
+					"Could not access version of page %s.", handle.getPageID());
+		}
+
+		if (version == null) {
+			return handle;
+		}
+
+		handle.unlatch();
+		buffer.unfixPage(handle);
+		version.latchS();
+		return version;
+	}
+
+	/**
+	 * Must be called after a page was latched exclusively for an update or
+	 * deletion.
+	 */
+	static void beforeUpdate(Tx tx, Handle handle) {
+		VersionStore versions = tx.getVersionStore();
+
+		if (versions != null) {
+			versions.beforeUpdate(tx, handle);
+		}
+	}
+
+	static void allocated(Tx tx, Handle handle) {
+		VersionStore versions = tx.getVersionStore();
+
+		if (versions != null) {
+			versions.allocated(tx, handle);
+		}
+	}
+
 	byte[] getChunk() {
 		int usedSpace = getUsedSpace();
 		byte[] content = new byte[usedSpace];
@@ -66,6 +66,7 @@ public class SimpleBlobStore implements BlobStore {
 			}
 			
 			Handle nextOverflowHandle = buffer.allocatePage(tx, unitID);
+			SimpleBlobPage.allocated(tx, nextOverflowHandle);
 			nextOverflowHandle.setAssignedTo(tx);
 			SimpleBlobPage page = new SimpleBlobPage(buffer, nextOverflowHandle);
 
@@ -86,6 +87,7 @@ public class SimpleBlobStore implements BlobStore {
 			Buffer buffer = bufferMgr.getBuffer(pageID);
 			Handle nextOverflowHandle = buffer.fixPage(tx, pageID);
 			nextOverflowHandle.latchX();
+			SimpleBlobPage.beforeUpdate(tx, nextOverflowHandle);
 			SimpleBlobPage page = new SimpleBlobPage(buffer, nextOverflowHandle);
 
 			page.deleteTail(tx);
@@ -120,6 +122,7 @@ public class SimpleBlobStore implements BlobStore {
 			Handle nextOverflowHandle = buffer.fixPage(tx, pageID);
 			nextOverflowHandle.setAssignedTo(tx);
 			nextOverflowHandle.latchX();
+			SimpleBlobPage.beforeUpdate(tx, nextOverflowHandle);
 
 			page = new SimpleBlobPage(buffer, nextOverflowHandle);
 
@@ -173,6 +176,8 @@ public class SimpleBlobStore implements BlobStore {
 			Buffer buffer = bufferMgr.getBuffer(pageID);
 			Handle overflowHandle = buffer.fixPage(tx, pageID);
 			overflowHandle.latchS();
+			overflowHandle = SimpleBlobPage.readVersion(tx, buffer,
+					overflowHandle);
 			SimpleBlobPage page = new SimpleBlobPage(buffer, overflowHandle);
 			return new SimpleBlobInputStream(page, tx);
 		} catch (BufferException e) {
@@ -44,6 +44,8 @@ import org.brackit.server.tx.Tx;
 public interface Index {
 	public static final String PAGE_VERSION = "org.brackit.server.store.index.pageVersion";
 
+	public static final String OPTIMISTIC_DESCENT = "org.brackit.server.store.index.optimisticDescent";
+
 	/**
 	 * Reads the <code>value</code> of the entry with the given <code>key</code>
 	 * of index <code>rootPageID</code>. In a non-unique index only the first
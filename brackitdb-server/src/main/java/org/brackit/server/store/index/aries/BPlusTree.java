@@ -28,6 +28,7 @@
 package org.brackit.server.store.index.aries;
 
 import org.brackit.xquery.util.log.Logger;
+import org.brackit.server.io.buffer.Handle;
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.io.manager.BufferMgr;
 import org.brackit.server.store.Field;
@@ -58,10 +59,14 @@ public class BPlusTree extends PageContextFactory {
 
 	protected static final RewindException REWIND_EXCEPTION = new RewindException();
 
+	private static final int OPTIMISTIC_RETRIES = 3;
+
 	protected final IndexLockService lockService;
 
 	protected int rootSplits = 0;
 
+	protected int optimisticRestarts = 0;
+
 	/**
 	 * Exception used to signal the need to rewind pointer chasing because of
 	 * concurrent modification actions in the tree.
@@ -116,8 +121,25 @@ public class BPlusTree extends PageContextFactory {
 			boolean forInsert) throws IndexAccessException {
 		while (true) {
 			try {
-				PageContext leaf = descend(tx, rootPageID, null, rootPageID,
-						searchMode, key, forUpdate);
+				PageContext leaf = null;
+
+				// snapshot reads must not validate a replaced leaf handle
+				if ((OPTIMISTIC_DESCENT) && (tx.getSnapshot() == null)) {
+					for (int i = 0; (leaf == null)
+							&& (i < OPTIMISTIC_RETRIES); i++) {
+						leaf = descendOptimistic(tx, rootPageID, searchMode,
+								key, forUpdate);
+
+						if (leaf == null) {
+							optimisticRestarts++;
+						}
+					}
+				}
+
+				if (leaf == null) {
+					leaf = descend(tx, rootPageID, null, rootPageID,
+							searchMode, key, forUpdate);
+				}
 				return scan(tx, rootPageID, leaf, searchMode, key, value,
 						forUpdate, forInsert);
 			} catch (RewindException e) {
@@ -310,6 +332,91 @@ public class BPlusTree extends PageContextFactory {
 		}
 	}
 
+	/**
+	 * Descends to the leaf without latching any tree page. The tree pages are
+	 * only fixed and read optimistically. Each step is validated against the
+	 * version stamp of the page taken before it was read. Only the leaf is
+	 * latched. Returns <code>null</code> if a concurrent modification was
+	 * detected or if a page is involved in a structure modification. In the
+	 * latter case the pessimistic descent has to wait for the tree latch.
+	 */
+	private PageContext descendOptimistic(Tx tx, PageID rootPageID,
+			SearchMode searchMode, byte[] key, boolean forUpdate) {
+		Handle handle = null;
+		int version;
+
+		try {
+			handle = fixPage(tx, rootPageID);
+			version = handle.readVersion();
+
+			while (version != -1) {
+				PageContext page = createOptimistic(tx, handle);
+
+				if (!page.isSafe()) {
+					return null;
+				}
+
+				int pageType = page.getPageType();
+
+				if (pageType == PageType.INDEX_LEAF) {
+					Handle leafHandle = handle;
+					handle = null;
+					page = latchPage(tx, leafHandle, forUpdate, forUpdate);
+
+					if ((!leafHandle.validate(version)) || (!page.isSafe())
+							|| (page.getPageType() != PageType.INDEX_LEAF)) {
+						// leaf was modified or converted in between
+						page.cleanup();
+						return null;
+					}
+
+					if (log.isTraceEnabled()) {
+						log.trace(String.format(
+								"Reached leaf page %s optimistically.", page));
+					}
+
+					if (forUpdate) {
+						page.upX();
+					}
+					return page;
+				} else if (pageType != PageType.INDEX_TREE) {
+					return null;
+				}
+
+				PageID childPageID = page.determineNextChildPageID(searchMode,
+						key);
+
+				if (!handle.validate(version)) {
+					return null;
+				}
+
+				// validate the parent again after the child is fixed
+				// and stamped to ensure that we followed a valid pointer
+				Handle child = fixPage(tx, childPageID);
+				int childVersion = child.readVersion();
+				boolean valid = handle.validate(version);
+				unfixPage(handle);
+				handle = child;
+				version = childVersion;
+
+				if (!valid) {
+					return null;
+				}
+			}
+			return null;
+		} catch (IndexOperationException e) {
+			// page was deleted or we followed a corrupt pointer
+			return null;
+		} catch (RuntimeException e) {
+			// we read an inconsistent page
+			return null;
+		} finally {
+			if (handle != null) {
+				unfixPage(handle);
+			}
+		}
+	}
+
 	private PageContext descendToChild(Tx tx, PageID rootPageID,
 			PageContext page, PageID childPageID, SearchMode searchMode,
 			byte[] key, boolean forUpdate) throws IndexAccessException,
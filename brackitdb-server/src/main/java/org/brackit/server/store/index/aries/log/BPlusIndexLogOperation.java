@@ -70,4 +70,9 @@ public abstract class BPlusIndexLogOperation extends LogOperation {
 		bb.put(pageID.getBytes());
 		bb.put(rootPageID.getBytes());
 	}
+
+	@Override
+	public PageID getRedoPageID() {
+		return pageID;
+	}
 }
@@ -47,6 +47,7 @@ import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxException;
 import org.brackit.server.tx.log.LogOperation;
 import org.brackit.server.tx.log.SizeConstants;
+import org.brackit.server.tx.mvcc.VersionStore;
 
 /**
  * 
@@ -1203,10 +1204,15 @@ public class DirectKeyValuePageContext extends SimpleBlobStore implements
 
 	public void latchX() {
 		page.latchX();
+		versionPage();
 	}
 
 	public boolean latchXC() {
-		return page.latchXC();
+		if (!page.latchXC()) {
+			return false;
+		}
+		versionPage();
+		return true;
 	}
 
 	public void latchS() {
@@ -1235,5 +1241,18 @@ public class DirectKeyValuePageContext extends SimpleBlobStore implements
 
 	public void upX() {
 		page.upX();
+		versionPage();
+	}
+
+	/**
+	 * Keeps the before-image of an exclusively latched page for snapshot
+	 * readers.
+	 */
+	private void versionPage() {
+		VersionStore versions = transaction.getVersionStore();
+
+		if (versions != null) {
+			versions.beforeUpdate(transaction, page.getHandle());
+		}
 	}
 }
\ No newline at end of file
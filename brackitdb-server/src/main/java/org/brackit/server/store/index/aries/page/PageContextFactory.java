@@ -40,6 +40,9 @@ import org.brackit.server.store.page.keyvalue.CachingKeyValuePageImpl;
 import org.brackit.server.store.page.keyvalue.KeyValuePage;
 import org.brackit.server.store.page.keyvalue.SlottedKeyValuePage;
 import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxException;
+import org.brackit.server.tx.mvcc.Snapshot;
+import org.brackit.server.tx.mvcc.VersionStore;
 import org.brackit.server.tx.thread.Latch;
 import org.brackit.xquery.util.Cfg;
 
@@ -53,6 +56,13 @@ public class PageContextFactory {
 
 	public static int type = Cfg.asInt(Index.PAGE_VERSION, 1);
 
+	/**
+	 * Optimistic reads are not possible for caching page implementations,
+	 * because they would fill the shared cache from inconsistent data.
+	 */
+	public static final boolean OPTIMISTIC_DESCENT = (type == 1)
+			&& Cfg.asBool(Index.OPTIMISTIC_DESCENT, true);
+
 	protected final BufferMgr bufferMgr;
 
 	public PageContextFactory(BufferMgr bufferMgr) {
@@ -67,6 +77,10 @@ public class PageContextFactory {
 		Handle handle = null;
 		PageContext page = null;
 
+		if (tx.isReadOnly()) {
+			throw new IndexOperationException("%s is read-only.", tx);
+		}
+
 		try {
 			buffer = (containerNo != -1) ? bufferMgr.getBuffer(containerNo)
 					: bufferMgr.getBuffer(rootPageID);
@@ -77,6 +91,7 @@ public class PageContextFactory {
 			}
 			
 			handle = buffer.allocatePage(tx, unitID);
+			allocated(tx, handle);
 
 			page = create(tx, buffer, handle, Latch.MODE_X);
 
@@ -133,54 +148,165 @@ public class PageContextFactory {
 	public PageContext getPage(Tx transaction, PageID pageID,
 			boolean forUpdate, boolean updateLatch)
 			throws IndexOperationException {
-		Buffer buffer = null;
-		Handle handle = null;
 		PageContext page = null;
 
 		if (pageID != null) {
-			try {
-				buffer = bufferMgr.getBuffer(pageID);
-				handle = buffer.fixPage(transaction, pageID);
-
-				if (forUpdate) {
-					if (updateLatch) {
-						handle.latchU();
-					} else {
-						handle.latchX();
-					}
+			page = latchPage(transaction, fixPage(transaction, pageID),
+					forUpdate, updateLatch);
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("Fetched page " + page);
+		}
+
+		return page;
+	}
+
+	/**
+	 * Fixes a page in the buffer without latching it. The page content may
+	 * only be read optimistically, i.e., a reader must take a version stamp
+	 * with {@link Handle#readVersion()} before and validate it with
+	 * {@link Handle#validate(int)} after reading.
+	 */
+	protected Handle fixPage(Tx transaction, PageID pageID)
+			throws IndexOperationException {
+		try {
+			Buffer buffer = bufferMgr.getBuffer(pageID);
+			return buffer.fixPage(transaction, pageID);
+		} catch (BufferException e) {
+			throw new IndexOperationException(e,
+					"Could not fix requested page %s.", pageID);
+		}
+	}
+
+	/**
+	 * Unfixes a page that was fixed with {@link #fixPage(Tx, PageID)} and not
+	 * latched afterwards.
+	 */
+	protected void unfixPage(Handle handle) {
+		try {
+			bufferMgr.getBuffer(handle.getPageID()).unfixPage(handle);
+		} catch (BufferException e) {
+			log.error("Unfix of page failed.", e);
+		}
+	}
+
+	/**
+	 * Creates a page context for optimistic reads of a page that was fixed
+	 * with {@link #fixPage(Tx, PageID)}.
+	 */
+	protected PageContext createOptimistic(Tx transaction, Handle handle)
+			throws IndexOperationException {
+		try {
+			return create(transaction, bufferMgr.getBuffer(handle
+					.getPageID()), handle);
+		} catch (BufferException e) {
+			throw new IndexOperationException(e,
+					"Could not access page %s.", handle.getPageID());
+		}
+	}
+
+	/**
+	 * Latches a page that was fixed with {@link #fixPage(Tx, PageID)} and
+	 * returns an initialized page context for it. If this fails, the page is
+	 * unfixed again.
+	 */
+	protected PageContext latchPage(Tx transaction, Handle handle,
+			boolean forUpdate, boolean updateLatch)
+			throws IndexOperationException {
+		PageID pageID = handle.getPageID();
+		Snapshot snapshot = transaction.getSnapshot();
+		Buffer buffer = null;
+		PageContext page = null;
+
+		if ((forUpdate) && (transaction.isReadOnly())) {
+			unfixPage(handle);
+			throw new IndexOperationException("%s is read-only.",
+					transaction);
+		}
+
+		try {
+			buffer = bufferMgr.getBuffer(pageID);
+
+			if (forUpdate) {
+				if (updateLatch) {
+					handle.latchU();
 				} else {
-					handle.latchS();
-				}
+					handle.latchX();
+					VersionStore versions = transaction.getVersionStore();
 
-				page = create(transaction, buffer, handle,
-						(forUpdate) ? (updateLatch) ? Latch.MODE_U
-								: Latch.MODE_X : Latch.MODE_S);
-			} catch (BufferException e) {
-				throw new IndexOperationException(e,
-						"Could not fix requested page %s.", pageID);
-			} catch (IndexOperationException e) {
-				handle.unlatch();
+					if (versions != null) {
+						versions.beforeUpdate(transaction, handle);
+					}
+				}
+			} else {
+				handle.latchS();
 
-				try {
-					buffer.unfixPage(handle);
-				} catch (BufferException e1) {
-					log.error("Unfix of page failed.", e1);
+				if (snapshot != null) {
+					handle = readVersion(snapshot, buffer, handle);
 				}
-				throw e;
 			}
 
-			if (log.isTraceEnabled()) {
-				log.trace(page.dump("requested page page"));
+			page = create(transaction, buffer, handle,
+					(forUpdate) ? (updateLatch) ? Latch.MODE_U
+							: Latch.MODE_X : Latch.MODE_S);
+		} catch (BufferException e) {
+			throw new IndexOperationException(e,
+					"Could not access requested page %s.", pageID);
+		} catch (IndexOperationException e) {
+			handle.unlatch();
+
+			try {
+				if (buffer.isFixed(handle)) {
+					buffer.unfixPage(handle);
+				}
+			} catch (BufferException e1) {
+				log.error("Unfix of page failed.", e1);
 			}
+			throw e;
 		}
 
-		if (log.isDebugEnabled()) {
-			log.debug("Fetched page " + page);
+		if (log.isTraceEnabled()) {
+			log.trace(page.dump("requested page page"));
 		}
 
 		return page;
 	}
 
+	/**
+	 * Replaces a shared latched page with the version a snapshot transaction
+	 * has to see, if the current page contains changes that are not visible
+	 * to it.
+	 */
+	private Handle readVersion(Snapshot snapshot, Buffer buffer, Handle handle)
+			throws IndexOperationException, BufferException {
+		Handle version;
+
+		try {
+			version = snapshot.getVersion(handle.getPageID());
+		} catch (TxException e) {
+			throw new IndexOperationException(e,
+					"Could not access version of page %s.", handle.getPageID());
+		}
+
+		if (version == null) {
+			return handle;
+		}
+
+		handle.unlatch();
+		buffer.unfixPage(handle);
+		version.latchS();
+		return version;
+	}
+
+	private void allocated(Tx tx, Handle handle) {
+		VersionStore versions = tx.getVersionStore();
+
+		if (versions != null) {
+			versions.allocated(tx, handle);
+		}
+	}
+
 	public PageContext create(Tx transaction, Buffer buffer, Handle handle)
 			throws IndexOperationException {
 		switch (type) {
@@ -33,6 +33,7 @@ import java.util.EnumMap;
 import java.util.List;
 
 import org.brackit.server.io.buffer.BufferException;
+import org.brackit.server.io.buffer.Handle;
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.io.buffer.Buffer.PageReleaser;
 import org.brackit.server.io.manager.BufferMgr;
@@ -46,6 +47,7 @@ import org.brackit.server.store.blob.impl.SimpleBlobStore;
 import org.brackit.server.store.index.IndexAccessException;
 import org.brackit.server.store.index.bracket.ScanResult.Status;
 import org.brackit.server.store.index.bracket.bulkinsert.BulkInsertContext;
+import org.brackit.server.store.index.bracket.page.AbstractBPContext;
 import org.brackit.server.store.index.bracket.page.BPContext;
 import org.brackit.server.store.index.bracket.page.BracketContext;
 import org.brackit.server.store.index.bracket.page.Branch;
@@ -79,6 +81,7 @@ public final class BracketTree extends PageContextFactory {
 	public static final boolean COLLECT_STATS = false;
 	private static final int NEIGHBOR_LEAFS_TO_SCAN = 2;
 	private static final float OCCUPANCY_RATE_DEFAULT = 0.5f;
+	private static final int OPTIMISTIC_RETRIES = 3;
 
 	private final BlobStore blobStore;
 	private final EnumMap<NavigationMode, LeafScanner> scannerMap = new EnumMap<NavigationMode, LeafScanner>(
@@ -969,9 +972,90 @@ public final class BracketTree extends PageContextFactory {
 
 	protected Leaf descend(Tx tx, PageID rootPageID, SearchMode searchMode,
 			byte[] key, boolean forUpdate) throws IndexAccessException {
+		if ((OPTIMISTIC_DESCENT) && (tx.getSnapshot() == null)) {
+			for (int i = 0; i < OPTIMISTIC_RETRIES; i++) {
+				Leaf leaf = descendOptimistic(tx, rootPageID, searchMode, key,
+						forUpdate);
+
+				if (leaf != null) {
+					return leaf;
+				}
+			}
+		}
+
 		return (Leaf) descend(tx, rootPageID, searchMode, key, 0, forUpdate);
 	}
 
+	/**
+	 * Descends to the leaf without latching any branch page. The branch pages
+	 * are only fixed and read optimistically. Each step is validated against
+	 * the version stamp of the page taken before it was read. Only the leaf is
+	 * latched. Returns <code>null</code> if a concurrent modification was
+	 * detected and the descent must be restarted.
+	 */
+	private Leaf descendOptimistic(Tx tx, PageID rootPageID,
+			SearchMode searchMode, byte[] key, boolean forUpdate)
+			throws IndexAccessException {
+		Handle handle = null;
+		int version;
+
+		try {
+			handle = fixPage(tx, rootPageID);
+			version = handle.readVersion();
+
+			while (version != -1) {
+				if (AbstractBPContext.isLeaf(handle.page)) {
+					Handle leafHandle = handle;
+					handle = null;
+					BPContext page = latchPage(tx, leafHandle, forUpdate,
+							forUpdate);
+
+					if ((!leafHandle.validate(version)) || (!page.isLeaf())) {
+						// leaf was modified or converted in between
+						page.cleanup();
+						return null;
+					}
+
+					if (forUpdate) {
+						page.upX();
+					}
+					return (Leaf) page;
+				}
+
+				Branch branch = createOptimisticBranch(tx, handle);
+				PageID childPageID = branch.searchNextPageID(searchMode, key);
+
+				if (!handle.validate(version)) {
+					return null;
+				}
+
+				// validate the parent again after the child is fixed
+				// and stamped to ensure that we followed a valid pointer
+				Handle child = fixPage(tx, childPageID);
+				int childVersion = child.readVersion();
+				boolean valid = handle.validate(version);
+				unfixPage(handle);
+				handle = child;
+				version = childVersion;
+
+				if (!valid) {
+					return null;
+				}
+			}
+			return null;
+		} catch (IndexOperationException e) {
+			// page was deleted or we followed a corrupt pointer
+			return null;
+		} catch (RuntimeException e) {
+			// we read an inconsistent page
+			return null;
+		} finally {
+			if (handle != null) {
+				unfixPage(handle);
+			}
+		}
+	}
+
 	private BPContext descend(Tx tx, PageID rootPageID, SearchMode searchMode,
 			byte[] key, int targetHeight, boolean forUpdate)
 			throws IndexAccessException {
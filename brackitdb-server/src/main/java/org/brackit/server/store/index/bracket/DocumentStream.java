@@ -104,4 +104,9 @@ public class DocumentStream extends StreamIterator {
 			}
 		}
 	}
+
+	@Override
+	protected boolean isBulkRead() {
+		return true;
+	}
 }
@@ -27,6 +27,7 @@
  */
 package org.brackit.server.store.index.bracket;
 
+import org.brackit.server.io.buffer.BufferException;
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.node.DocID;
 import org.brackit.server.node.XTCdeweyID;
@@ -202,6 +203,18 @@ public final class InsertController {
 				page = null;
 			}
 		}
+
+		if (!doLog) {
+			// pages of new units may have been allocated without logging:
+			// force the allocations before the pages can be updated with
+			// logging
+			try {
+				tx.getBufferManager().getBuffer(rootPageID)
+						.syncBulkAllocations(tx);
+			} catch (BufferException e) {
+				throw new IndexAccessException(e);
+			}
+		}
 	}
 
 	public XTCdeweyID getStartInsertKey() {
@@ -36,6 +36,7 @@ import org.brackit.server.store.index.bracket.filter.BracketFilter;
 import org.brackit.server.store.index.bracket.page.Leaf;
 import org.brackit.server.store.page.bracket.DeweyIDBuffer;
 import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.thread.ThreadCB;
 import org.brackit.xquery.xdm.DocumentException;
 import org.brackit.xquery.xdm.Stream;
 
@@ -149,6 +150,11 @@ public abstract class StreamIterator implements Stream<BracketNode> {
 	 */
 	public boolean moveNext() throws DocumentException {
 
+		ThreadCB cb = (isBulkRead()) ? ThreadCB.get() : null;
+		if (cb != null) {
+			cb.beginBulkRead();
+		}
+
 		try {
 
 			// while current node is not accepted by the filter: go to next node
@@ -188,9 +194,21 @@ public abstract class StreamIterator implements Stream<BracketNode> {
 		} catch (IndexAccessException e) {
 			page = null;
 			throw new DocumentException("Error navigating to next node.", e);
+		} finally {
+			if (cb != null) {
+				cb.endBulkRead();
+			}
 		}
 	}
 
+	/**
+	 * Indicates whether this iterator scans large parts of a document, so
+	 * that the leaf pages should not displace the buffer working set.
+	 */
+	protected boolean isBulkRead() {
+		return false;
+	}
+
 	protected abstract void first() throws IndexOperationException,
 			IndexAccessException;
 
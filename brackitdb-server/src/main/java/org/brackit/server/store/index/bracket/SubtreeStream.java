@@ -106,4 +106,9 @@ public final class SubtreeStream extends StreamIterator {
 			page = null;
 		}
 	}
+
+	@Override
+	protected boolean isBulkRead() {
+		return true;
+	}
 }
@@ -106,4 +106,9 @@ public final class SubtreeStreamSkipAttr extends StreamIterator {
 			page = null;
 		}
 	}
+
+	@Override
+	protected boolean isBulkRead() {
+		return true;
+	}
 }
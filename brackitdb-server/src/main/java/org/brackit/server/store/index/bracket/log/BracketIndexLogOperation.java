@@ -81,4 +81,9 @@ public abstract class BracketIndexLogOperation extends LogOperation {
 		bb.put(pageID.getBytes());
 		bb.put(rootPageID.getBytes());
 	}
+
+	@Override
+	public PageID getRedoPageID() {
+		return pageID;
+	}
 }
@@ -48,6 +48,7 @@ import org.brackit.server.store.page.keyvalue.SlottedKeyValuePage;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxException;
 import org.brackit.server.tx.log.LogOperation;
+import org.brackit.server.tx.mvcc.VersionStore;
 import org.brackit.xquery.util.log.Logger;
 
 /**
@@ -427,6 +428,7 @@ public abstract class AbstractBPContext extends SimpleBlobStore implements
 	@Override
 	public void latchX() {
 		page.latchX();
+		versionPage();
 	}
 
 	@Override
@@ -442,6 +444,7 @@ public abstract class AbstractBPContext extends SimpleBlobStore implements
 	@Override
 	public void upX() {
 		page.upX();
+		versionPage();
 	}
 
 	@Override
@@ -466,7 +469,23 @@ public abstract class AbstractBPContext extends SimpleBlobStore implements
 
 	@Override
 	public boolean latchXC() {
-		return page.latchXC();
+		if (!page.latchXC()) {
+			return false;
+		}
+		versionPage();
+		return true;
+	}
+
+	/**
+	 * Keeps the before-image of an exclusively latched page for snapshot
+	 * readers.
+	 */
+	private void versionPage() {
+		VersionStore versions = tx.getVersionStore();
+
+		if (versions != null) {
+			versions.beforeUpdate(tx, page.getHandle());
+		}
 	}
 
 	@Override
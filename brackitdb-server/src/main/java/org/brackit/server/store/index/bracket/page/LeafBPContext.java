@@ -70,6 +70,8 @@ import org.brackit.server.store.page.bracket.navigation.NavigationStatus;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxException;
 import org.brackit.server.tx.log.LogOperation;
+import org.brackit.server.tx.mvcc.VersionHandle;
+import org.brackit.server.tx.thread.ThreadCB;
 import org.brackit.xquery.xdm.DocumentException;
 
 /**
@@ -1471,7 +1473,12 @@ public final class LeafBPContext extends AbstractBPContext implements Leaf {
 
 		try {
 			buffer = page.getBuffer();
-			handle = buffer.fixPage(tx, pageID);
+			handle = page.getHandle();
+
+			if (!(handle instanceof VersionHandle)) {
+				handle = buffer.fixPage(tx, pageID, ThreadCB.get()
+						.isBulkRead());
+			}
 			handle.latchS();
 
 			LeafBPContext other = new LeafBPContext(bufferMgr, tx,
@@ -40,7 +40,11 @@ import org.brackit.server.store.page.keyvalue.CachingKeyValuePageImpl;
 import org.brackit.server.store.page.keyvalue.KeyValuePage;
 import org.brackit.server.store.page.keyvalue.SlottedKeyValuePage;
 import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxException;
+import org.brackit.server.tx.mvcc.Snapshot;
+import org.brackit.server.tx.mvcc.VersionStore;
 import org.brackit.server.tx.thread.Latch;
+import org.brackit.server.tx.thread.ThreadCB;
 import org.brackit.xquery.util.Cfg;
 
 /**
@@ -54,6 +58,13 @@ public class PageContextFactory {
 
 	public static int BRANCH_TYPE = Cfg.asInt(Index.PAGE_VERSION, 1);
 
+	/**
+	 * Optimistic reads are not possible for caching page implementations,
+	 * because they would fill the shared cache from inconsistent data.
+	 */
+	public static final boolean OPTIMISTIC_DESCENT = (BRANCH_TYPE == 1)
+			&& Cfg.asBool(Index.OPTIMISTIC_DESCENT, true);
+
 	protected final BufferMgr bufferMgr;
 
 	public PageContextFactory(BufferMgr bufferMgr) {
@@ -67,6 +78,8 @@ public class PageContextFactory {
 		Handle handle = null;
 		Branch page = null;
 
+		checkUpdate(tx);
+
 		try {
 			buffer = (containerNo != -1) ? bufferMgr.getBuffer(containerNo)
 					: bufferMgr.getBuffer(rootPageID);
@@ -76,7 +89,9 @@ public class PageContextFactory {
 				unitID = buffer.createUnit(tx);
 			}
 
-			handle = buffer.allocatePage(tx, unitID);
+			handle = (logged) ? buffer.allocatePage(tx, unitID) : buffer
+					.allocateBulkPage(tx, unitID);
+			allocated(tx, handle);
 
 			page = createBranch(tx, buffer, handle, Latch.MODE_X);
 
@@ -145,6 +160,8 @@ public class PageContextFactory {
 		Handle handle = null;
 		Leaf page = null;
 
+		checkUpdate(tx);
+
 		try {
 			buffer = (containerNo != -1) ? bufferMgr.getBuffer(containerNo)
 					: bufferMgr.getBuffer(rootPageID);
@@ -154,7 +171,9 @@ public class PageContextFactory {
 				unitID = buffer.createUnit(tx);
 			}
 
-			handle = buffer.allocatePage(tx, unitID);
+			handle = (logged) ? buffer.allocatePage(tx, unitID) : buffer
+					.allocateBulkPage(tx, unitID);
+			allocated(tx, handle);
 
 			page = createLeaf(tx, buffer, handle, Latch.MODE_X);
 
@@ -219,22 +238,91 @@ public class PageContextFactory {
 	 */
 	public final BPContext getPage(Tx tx, PageID pageID, boolean forUpdate,
 			boolean updateLatch) throws IndexOperationException {
+		return latchPage(tx, fixPage(tx, pageID), forUpdate, updateLatch);
+	}
+
+	/**
+	 * Fixes a page in the buffer without latching it. The page content may
+	 * only be read optimistically, i.e., a reader must take a version stamp
+	 * with {@link Handle#readVersion()} before and validate it with
+	 * {@link Handle#validate(int)} after reading.
+	 */
+	protected final Handle fixPage(Tx tx, PageID pageID)
+			throws IndexOperationException {
+		try {
+			Buffer buffer = bufferMgr.getBuffer(pageID);
+			return buffer.fixPage(tx, pageID, ThreadCB.get().isBulkRead());
+		} catch (BufferException e) {
+			throw new IndexOperationException(e,
+					"Could not fix requested page %s.", pageID);
+		}
+	}
+
+	/**
+	 * Unfixes a page that was fixed with {@link #fixPage(Tx, PageID)} and not
+	 * latched afterwards.
+	 */
+	protected final void unfixPage(Handle handle) {
+		try {
+			bufferMgr.getBuffer(handle.getPageID()).unfixPage(handle);
+		} catch (BufferException e) {
+			log.error("Unfix of page failed.", e);
+		}
+	}
+
+	/**
+	 * Creates a branch context for optimistic reads of a page that was fixed
+	 * with {@link #fixPage(Tx, PageID)}.
+	 */
+	protected final Branch createOptimisticBranch(Tx tx, Handle handle)
+			throws IndexOperationException {
+		try {
+			return createBranch(tx, bufferMgr.getBuffer(handle.getPageID()),
+					handle);
+		} catch (BufferException e) {
+			throw new IndexOperationException(e,
+					"Could not access page %s.", handle.getPageID());
+		}
+	}
+
+	/**
+	 * Latches a page that was fixed with {@link #fixPage(Tx, PageID)} and
+	 * returns an initialized page context for it. If this fails, the page is
+	 * unfixed again.
+	 */
+	protected final BPContext latchPage(Tx tx, Handle handle,
+			boolean forUpdate, boolean updateLatch)
+			throws IndexOperationException {
+		PageID pageID = handle.getPageID();
+		Snapshot snapshot = tx.getSnapshot();
 		Buffer buffer = null;
-		Handle handle = null;
 		BPContext page = null;
 
+		if ((forUpdate) && (tx.isReadOnly())) {
+			unfixPage(handle);
+			throw new IndexOperationException("%s is read-only.", tx);
+		}
+
 		try {
 			buffer = bufferMgr.getBuffer(pageID);
-			handle = buffer.fixPage(tx, pageID);
 
 			if (forUpdate) {
 				if (updateLatch) {
 					handle.latchU();
 				} else {
 					handle.latchX();
+					VersionStore versions = tx.getVersionStore();
+
+					if (versions != null) {
+						versions.beforeUpdate(tx, handle);
+					}
 				}
 			} else {
 				handle.latchS();
+
+				if (snapshot != null) {
+					handle = readVersion(snapshot, buffer, handle);
+				}
 			}
 
 			if (AbstractBPContext.isLeaf(handle.page)) {
@@ -248,12 +336,14 @@ public class PageContextFactory {
 			}
 		} catch (BufferException e) {
 			throw new IndexOperationException(e,
-					"Could not fix requested page %s.", pageID);
+					"Could not access requested page %s.", pageID);
 		} catch (IndexOperationException e) {
 			handle.unlatch();
 
 			try {
-				buffer.unfixPage(handle);
+				if (buffer.isFixed(handle)) {
+					buffer.unfixPage(handle);
+				}
 			} catch (BufferException e1) {
 				log.error("Unfix of page failed.", e1);
 			}
@@ -270,4 +360,44 @@ public class PageContextFactory {
 
 		return page;
 	}
+
+	/**
+	 * Replaces a shared latched page with the version a snapshot transaction
+	 * has to see, if the current page contains changes that are not visible
+	 * to it.
+	 */
+	private Handle readVersion(Snapshot snapshot, Buffer buffer, Handle handle)
+			throws IndexOperationException, BufferException {
+		Handle version;
+
+		try {
+			version = snapshot.getVersion(handle.getPageID());
+		} catch (TxException e) {
+			throw new IndexOperationException(e,
+					"Could not access version of page %s.", handle.getPageID());
+		}
+
+		if (version == null) {
+			return handle;
+		}
+
+		handle.unlatch();
+		buffer.unfixPage(handle);
+		version.latchS();
+		return version;
+	}
+
+	private void checkUpdate(Tx tx) throws IndexOperationException {
+		if (tx.isReadOnly()) {
+			throw new IndexOperationException("%s is read-only.", tx);
+		}
+	}
+
+	private void allocated(Tx tx, Handle handle) {
+		VersionStore versions = tx.getVersionStore();
+
+		if (versions != null) {
+			versions.allocated(tx, handle);
+		}
+	}
 }
@@ -36,7 +36,7 @@ import org.brackit.server.tx.locking.LockClass;
 public enum IsolationLevel {
 	NONE(0, false, false, false), UNCOMMITTED(1, false, false, true), COMMITTED(
 			2, true, false, true), REPEATABLE(3, false, true, true), SERIALIZABLE(
-			4, false, true, true);
+			4, false, true, true), SNAPSHOT(5, false, false, true);
 
 	static {
 		mapping = IsolationLevel.values();
@@ -62,7 +62,8 @@ public enum IsolationLevel {
 
 	public LockClass lockClass(boolean write) {
 		if (!write) {
-			return (longReadLocks) ? LockClass.COMMIT_DURATION
+			// snapshots keep the locks on unversioned structures stable
+			return ((longReadLocks) || (this == SNAPSHOT)) ? LockClass.COMMIT_DURATION
 					: LockClass.SHORT_DURATION;
 		} else {
 			return (longReadLocks) ? LockClass.COMMIT_DURATION
@@ -86,6 +87,23 @@ public enum IsolationLevel {
 		return longWriteLocks;
 	}
 
+	/**
+	 * Snapshot transactions are read-only. They read document, index and blob
+	 * pages in the versions of their snapshot and do not acquire node locks.
+	 * Metadata items are not versioned. They are read with shared locks held
+	 * until commit.
+	 * <p>
+	 * The snapshot is consistent, but not necessarily current: a transaction
+	 * that committed before the snapshot began is not visible to it, if it
+	 * modified a page after another transaction that was still running or is
+	 * invisible for the same reason. It becomes visible to snapshots that
+	 * begin after all these transactions finished. A long running writer can
+	 * therefore hide an unbounded number of later commits from new snapshots.
+	 */
+	public boolean isSnapshot() {
+		return (this == SNAPSHOT);
+	}
+
 	public int getID() {
 		return id;
 	}
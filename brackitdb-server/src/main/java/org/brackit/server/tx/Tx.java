@@ -34,6 +34,8 @@ import org.brackit.server.metadata.cache.CachedObjectUser;
 import org.brackit.server.session.Session;
 import org.brackit.server.tx.locking.LockControlBlock;
 import org.brackit.server.tx.log.LogOperation;
+import org.brackit.server.tx.mvcc.Snapshot;
+import org.brackit.server.tx.mvcc.VersionStore;
 
 /**
  * 
@@ -53,6 +55,10 @@ public interface Tx extends CachedObjectUser {
 
 	public int getLockDepth();
 
+	public void setCommitMode(CommitMode commitMode);
+
+	public CommitMode getCommitMode();
+
 	public String toShortString();
 
 	public String toString();
@@ -115,4 +121,16 @@ public interface Tx extends CachedObjectUser {
 	public void addDeletedPage(PageReleaser pr);
 
 	public boolean releaseDeletedPages() throws TxException;
+
+	/**
+	 * Returns the snapshot of a transaction running with isolation level
+	 * {@link IsolationLevel#SNAPSHOT} and <code>null</code> otherwise.
+	 */
+	public Snapshot getSnapshot();
+
+	/**
+	 * Returns the store for page before-images or <code>null</code> if
+	 * snapshot isolation is disabled.
+	 */
+	public VersionStore getVersionStore();
 }
\ No newline at end of file
@@ -45,10 +45,17 @@ public interface TxMgr {
 	public static final String LOG_DEADLOCKS = "org.brackit.server.tx.txMgr.logDeadlocks";
 	public static final String LOCK_WAIT_TIMEOUT = "org.brackit.server.tx.txMgr.lockWaitTimeout";
 	public static final String DEADLOCK_LOG_DIR = "org.brackit.server.tx.txMgr.deadlockLogDir";
+	public static final String CHECKPOINT_INTERVAL = "org.brackit.server.tx.txMgr.checkpointInterval";
+	public static final String CHECKPOINT_LOG_VOLUME = "org.brackit.server.tx.txMgr.checkpointLogVolume";
+	public static final String REDO_THREADS = "org.brackit.server.tx.txMgr.redoThreads";
+	public static final String REDO_PREFETCH = "org.brackit.server.tx.txMgr.redoPrefetch";
+	public static final String SNAPSHOT_ISOLATION = "org.brackit.server.tx.txMgr.snapshotIsolation";
 
 	public static final int DEFAULT_MAX_TX = 50;
 	public static final int DEFAULT_MAX_LOCKS = 200000;
 	public static final int DEFAULT_LOCK_WAIT_TIMEOUT = 20000;
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 300000;
+	public static final int DEFAULT_CHECKPOINT_LOG_VOLUME = 65536;
 
 	public Log getLog();
 
@@ -68,6 +68,10 @@ public class XTClock implements Comparable<XTClock> {
 		return state;
 	}
 
+	public final int getCount() {
+		return count;
+	}
+
 	@Override
 	public final String toString() {
 		return String.format("[NAME=%s,TA=%s,MODE=%s,STATE=%S,COUNT=%s]", name,
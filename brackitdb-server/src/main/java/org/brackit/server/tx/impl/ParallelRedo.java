@@ -0,0 +1,185 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.brackit.xquery.util.log.Logger;
+import org.brackit.server.ServerException;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.tx.log.Loggable;
+
+/**
+ * Redo workers for restart recovery. Log records are partitioned by the page
+ * they touch, so all records of a page are redone by the same worker in LSN
+ * order. Records which cannot be assigned to a single page must be redone by
+ * the caller after {@link #drain() draining} all workers.
+ */
+class ParallelRedo {
+	private static final Logger log = Logger.getLogger(ParallelRedo.class);
+
+	private static final Task STOP = new Task(null, null);
+
+	private final Worker[] workers;
+
+	private volatile Throwable failure;
+
+	private static final class Task {
+		final TX tx;
+
+		final Loggable loggable;
+
+		Task(TX tx, Loggable loggable) {
+			this.tx = tx;
+			this.loggable = loggable;
+		}
+	}
+
+	private class Worker extends Thread {
+		private final Object mutex = new Object();
+
+		private final BlockingQueue<Task> queue;
+
+		private int outstanding;
+
+		Worker(int no, int queueSize) {
+			setName("RedoWorker" + no);
+			this.queue = new ArrayBlockingQueue<Task>(queueSize);
+			setDaemon(true);
+		}
+
+		void dispatch(Task task) throws InterruptedException {
+			synchronized (mutex) {
+				outstanding++;
+			}
+			queue.put(task);
+		}
+
+		void drain() throws InterruptedException {
+			synchronized (mutex) {
+				while (outstanding > 0) {
+					mutex.wait();
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Task task;
+
+				try {
+					task = queue.take();
+				} catch (InterruptedException e) {
+					continue;
+				}
+
+				if (task == STOP) {
+					return;
+				}
+
+				try {
+					if (failure == null) {
+						Loggable loggable = task.loggable;
+						loggable.getLogOperation().redo(task.tx,
+								loggable.getLSN());
+					}
+				} catch (Throwable e) {
+					log.error(String.format("Redo of %s failed.",
+							task.loggable.getLSN()), e);
+					failure = e;
+				} finally {
+					synchronized (mutex) {
+						if (--outstanding == 0) {
+							mutex.notifyAll();
+						}
+					}
+				}
+			}
+		}
+	}
+
+	ParallelRedo(int threads, int queueSize) {
+		workers = new Worker[threads];
+
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(i, queueSize);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Hands the redo of the given log record to the worker responsible for
+	 * the given page.
+	 */
+	void redo(TX tx, Loggable loggable, PageID pageID) throws ServerException {
+		checkFailure();
+		Worker worker = workers[(pageID.hashCode() & Integer.MAX_VALUE)
+				% workers.length];
+
+		try {
+			worker.dispatch(new Task(tx, loggable));
+		} catch (InterruptedException e) {
+			throw new ServerException(e);
+		}
+	}
+
+	/**
+	 * Waits until all dispatched log records are redone.
+	 */
+	void drain() throws ServerException {
+		try {
+			for (Worker worker : workers) {
+				worker.drain();
+			}
+		} catch (InterruptedException e) {
+			throw new ServerException(e);
+		}
+
+		checkFailure();
+	}
+
+	void shutdown() {
+		for (Worker worker : workers) {
+			try {
+				worker.dispatch(STOP);
+				worker.join();
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+	private void checkFailure() throws ServerException {
+		Throwable e = failure;
+
+		if (e != null) {
+			throw new ServerException(e, "Parallel redo failed.");
+		}
+	}
+}
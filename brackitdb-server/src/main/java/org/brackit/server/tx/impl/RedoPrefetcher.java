@@ -0,0 +1,281 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.brackit.xquery.util.log.Logger;
+import org.brackit.server.io.buffer.Buffer;
+import org.brackit.server.io.buffer.BufferException;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.io.manager.BufferMgr;
+import org.brackit.server.tx.log.LogException;
+import org.brackit.server.tx.log.LogOperation;
+import org.brackit.server.tx.log.LogReader;
+import org.brackit.server.tx.log.Loggable;
+import org.brackit.server.tx.log.impl.CheckpointLogOperation;
+
+/**
+ * Log reader for the redo pass which looks ahead in the log. The pages of
+ * upcoming redo records are collected, sorted and loaded in runs by a
+ * background thread before the redo reaches them.
+ * <p>
+ * With the dirty page table of a checkpoint, records whose page was dirtied
+ * again only after the update are recognized without reading the page at
+ * all. The table of each checkpoint record passed by the look-ahead replaces
+ * the previous one, so that the log is read only once.
+ */
+class RedoPrefetcher extends Thread implements LogReader {
+	private static final Logger log = Logger.getLogger(RedoPrefetcher.class);
+
+	private static final int BATCH_SIZE = 256;
+
+	private static final List<PageID> STOP = new ArrayList<PageID>(0);
+
+	private volatile boolean active = false;
+
+	private final LogReader reader;
+
+	private final BufferMgr bufferMgr;
+
+	private final int window;
+
+	private Map<PageID, Long> dirtyPages;
+
+	private long coverLSN;
+
+	private final ArrayDeque<Loggable> ahead;
+
+	private final BlockingQueue<List<PageID>> batches;
+
+	private List<PageID> pending;
+
+	private boolean eof;
+
+	private int skipped;
+
+	private int prefetched;
+
+	/**
+	 * @param dirtyPages
+	 *            dirty page table known before the first checkpoint record is
+	 *            read or <code>null</code>
+	 * @param coverLSN
+	 *            the dirty page table is complete for all updates with a
+	 *            lower LSN
+	 */
+	public RedoPrefetcher(LogReader reader, BufferMgr bufferMgr, int window,
+			Map<PageID, Long> dirtyPages, long coverLSN) {
+		setName("RedoPrefetcher");
+
+		this.reader = reader;
+		this.bufferMgr = bufferMgr;
+		this.window = window;
+		this.dirtyPages = dirtyPages;
+		this.coverLSN = (dirtyPages != null) ? coverLSN : -1;
+		this.ahead = new ArrayDeque<Loggable>(window);
+		this.batches = new ArrayBlockingQueue<List<PageID>>(64);
+		this.pending = new ArrayList<PageID>(BATCH_SIZE);
+		this.active = true;
+
+		setDaemon(true);
+	}
+
+	/**
+	 * Checks if the page of a redo record was already written after the
+	 * update according to the dirty page table of the latest checkpoint read
+	 * so far. The table of a later checkpoint is valid for earlier records as
+	 * well. Only
+	 * a recovery LSN beyond the update proves this. A page missing in the
+	 * table is redone as usual, i.e., the page LSN decides.
+	 */
+	public boolean isObsolete(Loggable loggable) {
+		long lsn = loggable.getLSN();
+
+		if (lsn >= coverLSN) {
+			return false;
+		}
+
+		LogOperation logOp = loggable.getLogOperation();
+		PageID pageID = (logOp != null) ? logOp.getRedoPageID() : null;
+
+		if (pageID == null) {
+			return false;
+		}
+
+		Long redoLSN = dirtyPages.get(pageID);
+		return ((redoLSN != null) && (lsn < redoLSN));
+	}
+
+	public void skipped() {
+		skipped++;
+	}
+
+	@Override
+	public Loggable next() throws LogException {
+		while ((!eof) && (ahead.size() < window)) {
+			Loggable loggable = reader.next();
+
+			if (loggable == null) {
+				eof = true;
+				submit();
+				break;
+			}
+
+			if (loggable.getType() == Loggable.TYPE_CHECKPOINT) {
+				checkpoint((CheckpointLogOperation) loggable
+						.getLogOperation());
+			}
+
+			ahead.add(loggable);
+			collect(loggable);
+		}
+
+		return ahead.poll();
+	}
+
+	private void checkpoint(CheckpointLogOperation checkpoint) {
+		dirtyPages = checkpoint.getDirtyPageTable();
+		coverLSN = checkpoint.getCoverLSN();
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Using dirty page table of checkpoint "
+					+ "with cover LSN %s: %s pages.", coverLSN, dirtyPages
+					.size()));
+		}
+	}
+
+	private void collect(Loggable loggable) {
+		switch (loggable.getType()) {
+		case Loggable.TYPE_UPDATE:
+		case Loggable.TYPE_CLR:
+		case Loggable.TYPE_UPDATE_SPECIAL:
+			PageID pageID = loggable.getLogOperation().getRedoPageID();
+
+			if ((pageID != null) && (!isObsolete(loggable))) {
+				pending.add(pageID);
+
+				if (pending.size() == BATCH_SIZE) {
+					submit();
+				}
+			}
+		}
+	}
+
+	private void submit() {
+		if (!pending.isEmpty()) {
+			// prefetching is only a hint: drop the batch if we are too far
+			// ahead of the loader
+			batches.offer(pending);
+			pending = new ArrayList<PageID>(BATCH_SIZE);
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			List<PageID> batch;
+
+			try {
+				batch = batches.poll(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				continue;
+			}
+
+			if ((batch == STOP) || (!active)) {
+				return;
+			}
+
+			if (batch != null) {
+				load(batch);
+			}
+		}
+	}
+
+	private void load(List<PageID> batch) {
+		Collections.sort(batch);
+
+		for (int i = 0; (active) && (i < batch.size());) {
+			PageID start = batch.get(i);
+			PageID last = start;
+			int length = 1;
+
+			for (i++; i < batch.size(); i++) {
+				PageID next = batch.get(i);
+
+				if (next.equals(last)) {
+					continue;
+				}
+				if ((next.getContainerNo() != start.getContainerNo())
+						|| (next.getBlockNo() != last.getBlockNo() + 1)) {
+					break;
+				}
+				last = next;
+				length++;
+			}
+
+			try {
+				Buffer buffer = bufferMgr.getBuffer(start);
+				buffer.preload(start, length);
+				prefetched += length;
+			} catch (BufferException e) {
+				if (log.isDebugEnabled()) {
+					log.debug(String.format("Prefetching %s pages from %s "
+							+ "failed.", length, start), e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		active = false;
+		batches.clear();
+		batches.offer(STOP);
+
+		try {
+			join();
+		} catch (InterruptedException e) {
+		}
+
+		reader.close();
+
+		if (log.isInfoEnabled()) {
+			log.info(String.format("Redo prefetched %s pages and skipped %s "
+					+ "records of pages written after the update.",
+					prefetched, skipped));
+		}
+	}
+}
@@ -40,6 +40,7 @@ import org.brackit.server.io.buffer.BufferException;
 import org.brackit.server.io.manager.BufferMgr;
 import org.brackit.server.metadata.cache.CachedObjectHook;
 import org.brackit.server.session.Session;
+import org.brackit.server.tx.CommitMode;
 import org.brackit.server.tx.IsolationLevel;
 import org.brackit.server.tx.PostCommitHook;
 import org.brackit.server.tx.PreCommitHook;
@@ -56,6 +57,8 @@ import org.brackit.server.tx.log.Log;
 import org.brackit.server.tx.log.LogException;
 import org.brackit.server.tx.log.LogOperation;
 import org.brackit.server.tx.log.Loggable;
+import org.brackit.server.tx.mvcc.Snapshot;
+import org.brackit.server.tx.mvcc.VersionStore;
 import org.brackit.server.util.IntList;
 
 public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
@@ -77,8 +80,12 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 
 	protected final LockControlBlock lcb;
 
+	protected final Snapshot snapshot;
+
 	protected int lockDepth = 20;
 
+	protected volatile CommitMode commitMode = CommitMode.SYNC;
+
 	protected long minUndoLSN = -1;
 
 	protected long prevLSN = -1;
@@ -136,7 +143,9 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 		this.readOnly = readOnly;
 		this.session = session;
 		this.startTime = System.currentTimeMillis();
-		this.lcb = new LockControlBlock(this, timeout);
+		this.lcb = new LockControlBlock(this, timeout, taMgr.patrol);
+		this.snapshot = (isolationLevel.isSnapshot()) ? taMgr.versions
+				.openSnapshot() : null;
 		this.preHooks = new ArrayList<PreCommitHook>(4);
 		this.postHooks = new ArrayList<PostCommitHook>(4);
 		this.preHookMap = new HashMap<String, PreCommitHook>(4);
@@ -230,9 +239,19 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 
 			if (!readOnly) {
 				long commitLsn = logEOT(true);
-				taMgr.getLog().flush(commitLsn);
+
+				// nothing to force if the transaction did not write anything
+				if (commitLsn != -1) {
+					if (commitMode == CommitMode.ASYNC) {
+						taMgr.getLog().flushDeferred(commitLsn);
+					} else {
+						taMgr.getLog().flush(commitLsn);
+					}
+				}
 			}
 
+			releaseVersions();
+
 			for (LockServiceClient lockServiceClient : lcb
 					.getLockServiceClients()) {
 				lockServiceClient.freeResources();
@@ -298,6 +317,8 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 			}
 		}
 
+		releaseVersions();
+
 		for (LockServiceClient lockServiceClient : lcb.getLockServiceClients()) {
 			lockServiceClient.freeResources();
 		}
@@ -312,6 +333,14 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 		}
 	}
 
+	private void releaseVersions() {
+		if (snapshot != null) {
+			snapshot.close();
+		} else if ((taMgr.versions != null) && (!readOnly)) {
+			taMgr.versions.finish(this);
+		}
+	}
+
 	public TxID getID() {
 		return this.txID;
 	}
@@ -324,6 +353,14 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 		return this.isolationLevel;
 	}
 
+	public Snapshot getSnapshot() {
+		return this.snapshot;
+	}
+
+	public VersionStore getVersionStore() {
+		return taMgr.versions;
+	}
+
 	public Session getSession() {
 		return this.session;
 	}
@@ -336,6 +373,14 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 		this.lockDepth = lockDepth;
 	}
 
+	public CommitMode getCommitMode() {
+		return this.commitMode;
+	}
+
+	public void setCommitMode(CommitMode commitMode) {
+		this.commitMode = commitMode;
+	}
+
 	public int getLockingScheme() {
 		return 0;
 	}
@@ -547,6 +592,11 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 	}
 
 	public void addFlushHook(int containerNo) {
+		if (readOnly) {
+			// read-only transactions leave no dirty pages behind
+			return;
+		}
+
 		if (flushHook == null) {
 			flushHook = new FlushBufferHook();
 			preHooks.add(flushHook);
@@ -629,7 +679,10 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 		redoHooks.add(hook);
 	}
 
-	@Override
+	boolean hasPostRedoHooks() {
+		return ((redoHooks != null) && (!redoHooks.isEmpty()));
+	}
+
 	public void executePostRedoHooks() throws ServerException {
 		
 		if (redoHooks != null) {
@@ -28,12 +28,15 @@
 package org.brackit.server.tx.impl;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.ServerException;
 import org.brackit.server.io.buffer.Buffer;
 import org.brackit.server.io.buffer.BufferException;
+import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.io.manager.BufferMgr;
 import org.brackit.server.session.Session;
 import org.brackit.server.tx.IsolationLevel;
@@ -43,8 +46,11 @@ import org.brackit.server.tx.TxMgr;
 import org.brackit.server.tx.log.Log;
 import org.brackit.server.tx.log.LogException;
 import org.brackit.server.tx.log.LogOperation;
+import org.brackit.server.tx.log.LogReader;
 import org.brackit.server.tx.log.Loggable;
+import org.brackit.server.tx.log.impl.CheckpointLogOperation;
 import org.brackit.server.tx.log.impl.EOTLogOperation;
+import org.brackit.server.tx.mvcc.VersionStore;
 import org.brackit.xquery.util.Cfg;
 
 /**
@@ -56,22 +62,42 @@ public class TaMgrImpl implements TxMgr {
 	private static final Logger log = Logger.getLogger(TaMgrImpl.class
 			.getName());
 
+	private static final TxID CHECKPOINT_TX = new TxID(0);
+
 	protected final Log txLog;
 
 	protected final BufferMgr bufferMgr;
 
 	protected final TxPatrol patrol;
 
+	protected final Checkpointer checkpointer;
+
 	protected final TxTable txTable;
 
 	protected final int maxTransactions;
 
 	protected final AtomicLong TSNSequence;
 
+	/**
+	 * Page before-images for snapshot transactions; <code>null</code> if
+	 * snapshot isolation is disabled.
+	 */
+	protected final VersionStore versions;
+
 	protected int timeout = 10000;
 
 	protected long maxTransactionRuntime = 90000;
 
+	private volatile boolean online;
+
+	private volatile long lastCheckpointTime = System.currentTimeMillis();
+
+	private volatile long lastCheckpointLSN;
+
+	private long lastCheckpointRecordLSN = -1;
+
+	private long truncationBound = -1;
+
 	public TaMgrImpl(Log transactionLog, BufferMgr bufferMgr) {
 		log.info("Initializing transaction manager.");
 
@@ -79,6 +105,8 @@ public class TaMgrImpl implements TxMgr {
 		this.bufferMgr = bufferMgr;
 		this.txTable = new TxTable(this);
 		this.TSNSequence = new AtomicLong(0);
+		this.versions = (Cfg.asBool(TxMgr.SNAPSHOT_ISOLATION, false)) ? new VersionStore()
+				: null;
 
 		maxTransactions = Cfg.asInt(TxMgr.MAX_TX, 100);
 		timeout = Cfg.asInt(TxMgr.LOCK_WAIT_TIMEOUT, 20000);
@@ -87,6 +115,11 @@ public class TaMgrImpl implements TxMgr {
 		this.patrol = new TxPatrol(this, Cfg.asInt(
 				TxMgr.DEADLOCK_DETECTION_INTERVAL, 300));
 		this.patrol.start();
+		this.checkpointer = new Checkpointer(this, Cfg.asLong(
+				TxMgr.CHECKPOINT_INTERVAL, TxMgr.DEFAULT_CHECKPOINT_INTERVAL),
+				Cfg.asLong(TxMgr.CHECKPOINT_LOG_VOLUME,
+						TxMgr.DEFAULT_CHECKPOINT_LOG_VOLUME) * 1024);
+		this.checkpointer.start();
 
 		log.info("Transaction manager initialized.");
 	}
@@ -103,10 +136,22 @@ public class TaMgrImpl implements TxMgr {
 		return txLog;
 	}
 
-	public void recover() throws ServerException {
+	public synchronized void recover() throws ServerException {
 		restart();
 	}
 
+	boolean isOnline() {
+		return online;
+	}
+
+	long getLastCheckpointTime() {
+		return lastCheckpointTime;
+	}
+
+	long getLastCheckpointLSN() {
+		return lastCheckpointLSN;
+	}
+
 	private void restart() throws ServerException {
 		txTable.clear();
 
@@ -118,81 +163,118 @@ public class TaMgrImpl implements TxMgr {
 		 * Analysis/Redo pass.
 		 */
 		long currentEndOfLog = txLog.getNextLSN();
+		int redoThreads = Cfg.asInt(TxMgr.REDO_THREADS, 1);
+		ParallelRedo parallelRedo = (redoThreads > 1) ? new ParallelRedo(
+				redoThreads, 1024) : null;
+		int prefetchWindow = Cfg.asInt(TxMgr.REDO_PREFETCH, 1024);
+		RedoPrefetcher prefetcher = null;
+		LogReader reader = txLog.openReader();
+
+		if (prefetchWindow > 0) {
+			// picks up the dirty page tables of checkpoint records on the fly
+			prefetcher = new RedoPrefetcher(reader, bufferMgr, prefetchWindow,
+					null, -1);
+			prefetcher.start();
+			reader = prefetcher;
+		}
 
-		for (Loggable loggable = txLog.first(); (loggable != null)
-				&& (loggable.getLSN() < currentEndOfLog); loggable = txLog
-				.next(loggable)) {
-			if (log.isDebugEnabled()) {
-				log.debug(String.format("Read loggable %s of %s type %s.",
-						loggable.getLSN(), loggable.getTxID(), loggable
-								.getType()));
-			}
-
-			TX tx = txTable.get(loggable.getTxID());
-
-			if (tx == null) {
-				tx = new TX(this, loggable.getTxID(),
-						IsolationLevel.SERIALIZABLE, false, null, timeout);
-
+		try {
+			for (Loggable loggable = reader.next(); (loggable != null)
+					&& (loggable.getLSN() < currentEndOfLog); loggable = reader
+					.next()) {
 				if (log.isDebugEnabled()) {
-					log.debug(String.format(
-							"Resurrecting transaction %s for redo.", tx));
+					log.debug(String.format("Read loggable %s of %s type %s.",
+							loggable.getLSN(), loggable.getTxID(), loggable
+									.getType()));
 				}
 
-				txTable.put(loggable.getTxID(), tx);
-			}
-
-			LogOperation logOp = loggable.getLogOperation();
-
-			switch (loggable.getType()) {
-			case Loggable.TYPE_EOT:
-				if (log.isDebugEnabled()) {
-					log.debug(String.format("Finishing %s.", tx));
-				}
-				
-				// if successful EOT -> execute redo hooks
-				if (logOp.getType() == EOTLogOperation.COMMIT) {
-					tx.executePostRedoHooks();
+				if (loggable.getType() == Loggable.TYPE_CHECKPOINT) {
+					if (log.isDebugEnabled()) {
+						log.debug(String.format("Skipping checkpoint %s: %s.",
+								loggable.getLSN(), loggable.getLogOperation()));
+					}
+					continue;
 				}
 
-				txTable.remove(loggable.getTxID());
-				break;
-			case Loggable.TYPE_UPDATE:
-				tx.setPrevLSN(loggable.getLSN());
+				TX tx = txTable.get(loggable.getTxID());
 
-				if (log.isDebugEnabled()) {
-					log.debug(String.format(
-							"Performing Redo of UPDATE %s by TX %s: %s",
-							loggable.getLSN(), tx.getID(), logOp));
-				}
+				if (tx == null) {
+					tx = new TX(this, loggable.getTxID(),
+							IsolationLevel.SERIALIZABLE, false, null, timeout);
 
-				logOp.redo(tx, loggable.getLSN());
-				break;
-			case Loggable.TYPE_CLR:
-				tx.setPrevLSN(loggable.getUndoNextLSN());
+					if (log.isDebugEnabled()) {
+						log.debug(String.format(
+								"Resurrecting transaction %s for redo.", tx));
+					}
 
-				if (log.isDebugEnabled()) {
-					log.debug(String.format("Performing Redo of CLR %s: %s",
-							loggable.getLSN(), logOp));
+					txTable.put(loggable.getTxID(), tx);
 				}
 
-				logOp.redo(tx, loggable.getLSN());
-				break;
-			case Loggable.TYPE_UPDATE_SPECIAL:
-				tx.setPrevLSN(loggable.getLSN());
+				LogOperation logOp = loggable.getLogOperation();
 
-				if (log.isDebugEnabled()) {
-					log.debug(String.format("Performing Redo of UPDATE SPECIAL %s: %s",
-							loggable.getLSN(), logOp));
+				switch (loggable.getType()) {
+				case Loggable.TYPE_EOT:
+					if (log.isDebugEnabled()) {
+						log.debug(String.format("Finishing %s.", tx));
+					}
+				
+					// if successful EOT -> execute redo hooks
+					if (logOp.getType() == EOTLogOperation.COMMIT) {
+						if ((parallelRedo != null) && (tx.hasPostRedoHooks())) {
+							parallelRedo.drain();
+						}
+						tx.executePostRedoHooks();
+					}
+
+					txTable.remove(loggable.getTxID());
+					break;
+				case Loggable.TYPE_UPDATE:
+					tx.setPrevLSN(loggable.getLSN());
+
+					if (log.isDebugEnabled()) {
+						log.debug(String.format(
+								"Performing Redo of UPDATE %s by TX %s: %s",
+								loggable.getLSN(), tx.getID(), logOp));
+					}
+
+					redo(parallelRedo, prefetcher, tx, loggable);
+					break;
+				case Loggable.TYPE_CLR:
+					tx.setPrevLSN(loggable.getUndoNextLSN());
+
+					if (log.isDebugEnabled()) {
+						log.debug(String.format("Performing Redo of CLR %s: %s",
+								loggable.getLSN(), logOp));
+					}
+
+					redo(parallelRedo, prefetcher, tx, loggable);
+					break;
+				case Loggable.TYPE_UPDATE_SPECIAL:
+					tx.setPrevLSN(loggable.getLSN());
+
+					if (log.isDebugEnabled()) {
+						log.debug(String.format("Performing Redo of UPDATE SPECIAL %s: %s",
+								loggable.getLSN(), logOp));
+					}
+
+					redo(parallelRedo, prefetcher, tx, loggable);
+					break;
+				case Loggable.TYPE_DUMMY:
+					tx.setPrevLSN(loggable.getUndoNextLSN());
+					break;
+				default:
+					tx.setPrevLSN(loggable.getPrevLSN());
 				}
+			}
 
-				logOp.redo(tx, loggable.getLSN());
-				break;
-			case Loggable.TYPE_DUMMY:
-				tx.setPrevLSN(loggable.getUndoNextLSN());
-				break;
-			default:
-				tx.setPrevLSN(loggable.getPrevLSN());
+			if (parallelRedo != null) {
+				parallelRedo.drain();
+			}
+		} finally {
+			reader.close();
+
+			if (parallelRedo != null) {
+				parallelRedo.shutdown();
 			}
 		}
 
@@ -266,7 +348,34 @@ public class TaMgrImpl implements TxMgr {
 			}
 		}
 
-		checkpoint();
+		checkpoint(true);
+		online = true;
+	}
+
+	/**
+	 * Redoes the given log record unless the dirty page table shows that its
+	 * page was written after the update. With parallel redo, records confined
+	 * to a single page go to the worker of this page; all others are redone
+	 * here after all previous records are done.
+	 */
+	private void redo(ParallelRedo parallelRedo, RedoPrefetcher prefetcher,
+			TX tx, Loggable loggable) throws ServerException {
+		if ((prefetcher != null) && (prefetcher.isObsolete(loggable))) {
+			prefetcher.skipped();
+			return;
+		}
+
+		LogOperation logOp = loggable.getLogOperation();
+		PageID pageID = (parallelRedo != null) ? logOp.getRedoPageID() : null;
+
+		if (pageID != null) {
+			parallelRedo.redo(tx, loggable, pageID);
+		} else {
+			if (parallelRedo != null) {
+				parallelRedo.drain();
+			}
+			logOp.redo(tx, loggable.getLSN());
+		}
 	}
 
 	public TX begin() throws TxException {
@@ -275,6 +384,13 @@ public class TaMgrImpl implements TxMgr {
 
 	public TX begin(IsolationLevel isolationLevel, Session session,
 			boolean readOnly) throws TxException {
+		if (isolationLevel.isSnapshot()) {
+			if (versions == null) {
+				throw new TxException("Snapshot isolation is disabled.");
+			}
+			readOnly = true;
+		}
+
 		long nextTSN = TSNSequence.incrementAndGet();
 		TxID txID = new TxID(nextTSN);
 		TX tx = new TX(this, txID, isolationLevel, readOnly, session, timeout);
@@ -309,26 +425,54 @@ public class TaMgrImpl implements TxMgr {
 			patrol.terminate();
 		}
 
-		checkpoint();
+		if (this.checkpointer != null) {
+			online = false;
+			checkpointer.terminate();
+		}
+
+		checkpoint(true);
 
 		log.info("Transaction manager shut down.");
 	}
 
-	/**
-	 * The checkpoint is done by a simple log truncation. After the truncation,
-	 * the log will still contain all entries required to a) redo all changes to
-	 * current dirty pages, and b) undo all changes of the currently running
-	 * transactions.
-	 */
 	@Override
 	public void checkpoint() throws TxException {
+		checkpoint(false);
+	}
+
+	/**
+	 * A fuzzy checkpoint neither blocks transactions nor forces dirty pages.
+	 * It syncs the container files, logs the dirty page table and the active
+	 * transaction table and truncates the log afterwards. After the truncation, the log will still
+	 * contain all entries required to a) redo all changes to current dirty
+	 * pages, and b) undo all changes of the currently running transactions.
+	 * An update may already own an LSN while its page and its transaction do
+	 * not show it yet. Unless the system is quiesced, the log is therefore
+	 * truncated at most to the point where the previous checkpoint began.
+	 */
+	private synchronized void checkpoint(boolean quiesced) throws TxException {
+		long beginLSN = txLog.getNextLSN();
 		long minUndoLSN = Long.MAX_VALUE;
 		long minRedoLSN = Long.MAX_VALUE;
+		Map<PageID, Long> dirtyPageTable = new HashMap<PageID, Long>();
+		Map<TxID, long[]> activeTxTable = new HashMap<TxID, long[]>();
 
-		minRedoLSN = bufferMgr.checkMinRedoLSN();
+		for (Buffer buffer : bufferMgr.getBuffers()) {
+			buffer.getDirtyPages(dirtyPageTable);
+		}
+
+		for (long redoLSN : dirtyPageTable.values()) {
+			minRedoLSN = Math.min(redoLSN, minRedoLSN);
+		}
 
 		for (TX transaction : getTransactions()) {
-			minUndoLSN = Math.min(transaction.checkMinUndoLSN(), minUndoLSN);
+			long undoLSN = transaction.checkMinUndoLSN();
+
+			if (undoLSN != -1) {
+				activeTxTable.put(transaction.getID(), new long[] {
+						transaction.checkPrevLSN(), undoLSN });
+				minUndoLSN = Math.min(undoLSN, minUndoLSN);
+			}
 		}
 
 		if (log.isDebugEnabled()) {
@@ -340,24 +484,53 @@ public class TaMgrImpl implements TxMgr {
 
 		long minLSN = Math.min(minUndoLSN, minRedoLSN);
 
+		// the tables are complete for all updates before coverLSN
+		long coverLSN = (quiesced) ? beginLSN : truncationBound;
+
+		if (!quiesced) {
+			minLSN = Math.min(minLSN, truncationBound);
+		}
+
 		if (log.isInfoEnabled()) {
 			log.info(String.format(
 					"Creating a checkpoint and trunk log to LSN %s", minLSN));
 		}
 
+		// pages missing in the dirty page table must be stable before the
+		// checkpoint record tells redo to skip them
 		try {
 			bufferMgr.syncAll();
 		} catch (BufferException e) {
 			log.error("Error syncing buffers for checkpoint", e);
-			throw new TxException(e, "Error truncating log to LSN %s.", minLSN);
+			throw new TxException(e, "Error syncing buffers for checkpoint.");
 		}
 
 		try {
-			txLog.truncateTo(minLSN);
+			Loggable checkpoint = txLog.getLoggableHelper().createCheckpoint(
+					CHECKPOINT_TX,
+					lastCheckpointRecordLSN,
+					new CheckpointLogOperation(coverLSN, dirtyPageTable,
+							activeTxTable));
+			lastCheckpointRecordLSN = txLog.append(checkpoint);
+			txLog.flush(lastCheckpointRecordLSN);
 		} catch (LogException e) {
-			log.error(String.format("Error truncating log "
-					+ "to LSN %s for checkpoint"), e);
-			throw new TxException(e, "Error truncating log to LSN %s.", minLSN);
+			log.error("Error writing checkpoint record", e);
+			throw new TxException(e, "Error writing checkpoint record.");
 		}
+
+		if (minLSN >= 0) {
+			try {
+				txLog.truncateTo(minLSN);
+			} catch (LogException e) {
+				log.error(String.format("Error truncating log "
+						+ "to LSN %s for checkpoint", minLSN), e);
+				throw new TxException(e, "Error truncating log to LSN %s.",
+						minLSN);
+			}
+		}
+
+		truncationBound = beginLSN;
+		lastCheckpointLSN = txLog.getNextLSN();
+		lastCheckpointTime = System.currentTimeMillis();
 	}
 }
\ No newline at end of file
@@ -28,6 +28,8 @@
 package org.brackit.server.tx.impl;
 
 import java.util.LinkedList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.brackit.server.tx.TxException;
 import org.brackit.server.tx.TxState;
@@ -36,6 +38,9 @@ import org.brackit.server.tx.TxState;
  * Services for intra-transaction concurrency. Implements join/leave and
  * abort/commit voting mechanism for a kind of a vm-wide 2PC.
  * 
+ * Waiting threads are parked on a {@link Condition} instead of the object
+ * monitor so that they do not pin the carrier of a virtual thread.
+ * 
  * @author Sebastian Baechle
  * 
  */
@@ -44,101 +49,125 @@ class TxControlBlock {
 		NONE, COMMIT, ROLLBACK
 	};
 
+	private final ReentrantLock mutex;
+
+	private final Condition changed;
+
 	private Vote vote;
 
-	private TxState state;
+	private volatile TxState state;
 
 	private LinkedList<Thread> assignedThreads;
 
 	TxControlBlock() {
+		this.mutex = new ReentrantLock();
+		this.changed = mutex.newCondition();
 		this.state = TxState.RUNNING;
 		this.vote = Vote.NONE;
 		this.assignedThreads = new LinkedList<Thread>();
 	}
 
-	synchronized void setState(TxState state) {
+	void setState(TxState state) {
 		this.state = state;
 	}
 
-	public synchronized TxState getState() {
+	public TxState getState() {
 		return this.state;
 	}
 
-	synchronized void waitEOT() {
-		while (state.isActive()) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				// ignore
+	void waitEOT() {
+		mutex.lock();
+		try {
+			while (state.isActive()) {
+				changed.awaitUninterruptibly();
 			}
+		} finally {
+			mutex.unlock();
 		}
 	}
 
-	synchronized void signalEOT(boolean success) {
-		state = (success) ? TxState.COMMITTED : TxState.ROLLEDBACK;
-		notifyAll();
+	void signalEOT(boolean success) {
+		mutex.lock();
+		try {
+			state = (success) ? TxState.COMMITTED : TxState.ROLLEDBACK;
+			changed.signalAll();
+		} finally {
+			mutex.unlock();
+		}
 	}
 
-	synchronized boolean voteCommit() {
-		boolean firstVote = (vote == Vote.NONE);
+	boolean voteCommit() {
+		mutex.lock();
+		try {
+			boolean firstVote = (vote == Vote.NONE);
 
-		vote = (vote != Vote.ROLLBACK) ? Vote.COMMIT : Vote.ROLLBACK;
+			vote = (vote != Vote.ROLLBACK) ? Vote.COMMIT : Vote.ROLLBACK;
 
-		Thread me = Thread.currentThread();
-		assignedThreads.remove(me);
+			Thread me = Thread.currentThread();
+			assignedThreads.remove(me);
 
-		while (assignedThreads.size() > 0) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				// ignore
+			while (assignedThreads.size() > 0) {
+				changed.awaitUninterruptibly();
 			}
-		}
-		notifyAll();
+			changed.signalAll();
 
-		return firstVote && (vote == Vote.COMMIT);
+			return firstVote && (vote == Vote.COMMIT);
+		} finally {
+			mutex.unlock();
+		}
 	}
 
-	synchronized boolean voteRollback() {
-		boolean firstVote = ((vote == Vote.NONE) || (vote == Vote.COMMIT));
-		vote = Vote.ROLLBACK;
+	boolean voteRollback() {
+		mutex.lock();
+		try {
+			boolean firstVote = ((vote == Vote.NONE) || (vote == Vote.COMMIT));
+			vote = Vote.ROLLBACK;
 
-		Thread me = Thread.currentThread();
-		assignedThreads.remove(me);
+			Thread me = Thread.currentThread();
+			assignedThreads.remove(me);
 
-		while (assignedThreads.size() > 0) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				// ignore
+			while (assignedThreads.size() > 0) {
+				changed.awaitUninterruptibly();
 			}
-		}
-		notifyAll();
+			changed.signalAll();
 
-		return firstVote;
+			return firstVote;
+		} finally {
+			mutex.unlock();
+		}
 	}
 
-	public synchronized boolean join() {
-		Thread me = Thread.currentThread();
-
-		if (!assignedThreads.contains(me)) {
-			if ((vote != Vote.NONE) || (state != TxState.RUNNING)) {
-				// new joins are only allowed when tx is still in normal
-				// processing
-				return false;
+	public boolean join() {
+		mutex.lock();
+		try {
+			Thread me = Thread.currentThread();
+
+			if (!assignedThreads.contains(me)) {
+				if ((vote != Vote.NONE) || (state != TxState.RUNNING)) {
+					// new joins are only allowed when tx is still in normal
+					// processing
+					return false;
+				}
+				assignedThreads.add(me);
 			}
-			assignedThreads.add(me);
-		}
 
-		return true;
+			return true;
+		} finally {
+			mutex.unlock();
+		}
 	}
 
-	public synchronized void leave() throws TxException {
-		Thread me = Thread.currentThread();
+	public void leave() throws TxException {
+		mutex.lock();
+		try {
+			Thread me = Thread.currentThread();
 
-		if (!assignedThreads.remove(me)) {
-			throw new TxException("Did not join %s.", toString());
+			if (!assignedThreads.remove(me)) {
+				throw new TxException("Did not join %s.", toString());
+			}
+			changed.signalAll();
+		} finally {
+			mutex.unlock();
 		}
-		notifyAll();
 	}
-}
\ No newline at end of file
+}
@@ -27,11 +27,21 @@
  */
 package org.brackit.server.tx.impl;
 
+import java.util.ArrayDeque;
+
 import org.brackit.xquery.util.log.Logger;
+import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxMgr;
 import org.brackit.server.tx.locking.DeadlockDetector;
+import org.brackit.server.tx.locking.LockWaitListener;
 
-class TxPatrol extends Thread {
+/**
+ * Detects deadlocks as soon as a transaction starts waiting for a lock by
+ * searching the wait-for edges of the new waiter. A full sweep over the
+ * wait-for graph of all transactions is only performed periodically as a
+ * fallback.
+ */
+class TxPatrol extends Thread implements LockWaitListener {
 	private static final Logger log = Logger.getLogger(TxPatrol.class);
 
 	private volatile boolean active = false;
@@ -42,36 +52,68 @@ class TxPatrol extends Thread {
 
 	private final DeadlockDetector deadlockDetector;
 
+	private final ArrayDeque<Tx> waiters;
+
 	public TxPatrol(TxMgr taMgr, int deadlockDetectionInterval) {
 		setName("TxPatrol");
 
 		this.deadlockDetectionInterval = deadlockDetectionInterval;
 		this.taMgr = taMgr;
 		this.deadlockDetector = new DeadlockDetector(taMgr, true);
+		this.waiters = new ArrayDeque<Tx>();
 		this.active = true;
 
 		setDaemon(true);
 	}
 
+	@Override
+	public synchronized void waiting(Tx tx) {
+		if (!waiters.contains(tx)) {
+			waiters.add(tx);
+			notify();
+		}
+	}
+
 	@Override
 	public void run() {
 		// Do not run directly at startup
-		takeANap();
+		long nextSweep = System.currentTimeMillis() + deadlockDetectionInterval;
 
 		while (active) {
-			deadlockDetector.detectDeadlocks();
-			takeANap();
+			Tx waiter = takeANap(nextSweep);
+
+			if (!active) {
+				break;
+			}
+
+			if (waiter != null) {
+				deadlockDetector.detectDeadlocks(waiter);
+			}
+
+			if (System.currentTimeMillis() >= nextSweep) {
+				deadlockDetector.detectDeadlocks();
+				nextSweep = System.currentTimeMillis()
+						+ deadlockDetectionInterval;
+			}
 		}
 	}
 
-	public void terminate() {
+	public synchronized void terminate() {
 		active = false;
+		notify();
 	}
 
-	private void takeANap() {
-		try {
-			sleep(deadlockDetectionInterval);
-		} catch (Exception e) {
+	private synchronized Tx takeANap(long until) {
+		long now = System.currentTimeMillis();
+
+		while ((active) && (waiters.isEmpty()) && (now < until)) {
+			try {
+				wait(until - now);
+			} catch (InterruptedException e) {
+			}
+			now = System.currentTimeMillis();
 		}
+
+		return waiters.poll();
 	}
 }
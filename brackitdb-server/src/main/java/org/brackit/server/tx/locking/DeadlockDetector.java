@@ -85,6 +85,20 @@ public class DeadlockDetector {
 		skipSet.clear();
 	}
 
+	/**
+	 * Searches for deadlocks only along the wait-for edges of the given
+	 * transaction, which has just started to wait for a lock. Any deadlock
+	 * formed by this wait must include the waiter.
+	 */
+	public void detectDeadlocks(Tx waiter) {
+		if (waiter.getState() != TxState.ABORTED) {
+			exploreWaitPath(trackedWaitPath, waiter, skipSet);
+		}
+
+		trackedWaitPath.clear();
+		skipSet.clear();
+	}
+
 	private boolean exploreWaitPath(LinkedHashSet<Tx> waitPath, Tx transaction,
 			Set<Tx> skipSet) {
 		// add current transaction to tracking
@@ -0,0 +1,135 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.locking;
+
+import java.util.Arrays;
+
+/**
+ * Private cache of the commit-duration lock modes a transaction holds in a
+ * single lock service. The cache is keyed by lock name, i.e., for tree locks
+ * by the DeweyID prefix of the locked node, and allows to answer requests
+ * that are already covered by a held lock without touching the shared lock
+ * table.
+ * 
+ * Entries are only added for granted commit-duration requests, which are
+ * never released or weakened before the end of the transaction. A cached
+ * mode may therefore be weaker than the actually held mode, but never
+ * stronger. The cache is not synchronized. It must be protected by the latch
+ * of the owning lock service client.
+ * 
+ * To keep lookups free of allocation, entries are stored with open
+ * addressing in two parallel arrays.
+ */
+public final class LockCache<T> {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private LockName[] names;
+
+	private Object[] modes;
+
+	private int size;
+
+	public LockCache() {
+		this.names = new LockName[INITIAL_CAPACITY];
+		this.modes = new Object[INITIAL_CAPACITY];
+	}
+
+	@SuppressWarnings("unchecked")
+	public T get(LockName name) {
+		int mask = names.length - 1;
+
+		for (int i = hash(name) & mask;; i = (i + 1) & mask) {
+			LockName n = names[i];
+
+			if (n == null) {
+				return null;
+			}
+			if (n.equals(name)) {
+				return (T) modes[i];
+			}
+		}
+	}
+
+	public void put(LockName name, T mode) {
+		int mask = names.length - 1;
+		int i = hash(name) & mask;
+
+		for (LockName n = names[i]; n != null; n = names[i]) {
+			if (n.equals(name)) {
+				modes[i] = mode;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+
+		names[i] = name;
+		modes[i] = mode;
+
+		if (++size > (names.length >> 1) + (names.length >> 2)) {
+			resize();
+		}
+	}
+
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(names, null);
+			Arrays.fill(modes, null);
+			size = 0;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void resize() {
+		LockName[] oldNames = names;
+		Object[] oldModes = modes;
+		int mask = (oldNames.length << 1) - 1;
+		names = new LockName[oldNames.length << 1];
+		modes = new Object[oldNames.length << 1];
+
+		for (int j = 0; j < oldNames.length; j++) {
+			LockName n = oldNames[j];
+
+			if (n != null) {
+				int i = hash(n) & mask;
+				while (names[i] != null) {
+					i = (i + 1) & mask;
+				}
+				names[i] = n;
+				modes[i] = oldModes[j];
+			}
+		}
+	}
+
+	private static int hash(LockName name) {
+		int h = name.hashCode();
+		return h ^ (h >>> 16);
+	}
+}
@@ -52,15 +52,38 @@ public class LockControlBlock {
 
 	private LockServiceClient[] clients;
 
+	private LockCache<?>[] caches;
+
 	private final Tx tx;
 
+	private final LockWaitListener listener;
+
 	private volatile long timeout;
 
 	public LockControlBlock(Tx tx, long timeout) {
+		this(tx, timeout, null);
+	}
+
+	public LockControlBlock(Tx tx, long timeout, LockWaitListener listener) {
 		this.tx = tx;
+		this.listener = listener;
 		this.timeout = timeout;
 		this.clients = new LockServiceClient[0];
 		this.services = new LockService[0];
+		this.caches = new LockCache<?>[0];
+	}
+
+	/**
+	 * Returns the private lock cache of this transaction for the given lock
+	 * service or <code>null</code> if the transaction has no client for it.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> LockCache<T> getCache(LockService ls) {
+		for (int i = 0; i < caches.length; i++) {
+			if (services[i] == ls)
+				return (LockCache<T>) caches[i];
+		}
+		return null;
 	}
 
 	public synchronized LockServiceClient get(LockService ls) {
@@ -82,9 +105,11 @@ public class LockControlBlock {
 
 		services = Arrays.copyOf(services, length + 1);
 		clients = Arrays.copyOf(clients, length + 1);
+		caches = Arrays.copyOf(caches, length + 1);
 
 		services[length] = ls;
 		clients[length] = client;
+		caches[length] = new LockCache<Object>();
 	}
 
 	public synchronized LockServiceClient[] getLockServiceClients() {
@@ -159,6 +184,12 @@ public class LockControlBlock {
 		}
 	}
 
+	public void waiting() {
+		if (listener != null) {
+			listener.waiting(tx);
+		}
+	}
+
 	public long getTimeout() {
 		return timeout;
 	}
@@ -32,15 +32,15 @@ import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.locking.external.LockServiceStats;
 import org.brackit.server.tx.locking.external.LockTypeStats;
 import org.brackit.server.tx.locking.services.LockService;
+import org.brackit.server.tx.thread.AtomicLatch;
 import org.brackit.server.tx.thread.Latch;
-import org.brackit.server.tx.thread.SyncLatch;
 
 /**
  * 
  * @author Sebastian Baechle
  * 
  */
-public final class LockServiceClientCB extends SyncLatch implements Latch {
+public final class LockServiceClientCB extends AtomicLatch implements Latch {
 	private static final Logger log = Logger
 			.getLogger(LockServiceClientCB.class);
 
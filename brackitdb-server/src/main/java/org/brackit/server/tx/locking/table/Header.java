@@ -32,15 +32,15 @@ import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.locking.LockName;
 import org.brackit.server.tx.locking.LockState;
 import org.brackit.server.tx.locking.protocol.LockMode;
+import org.brackit.server.tx.thread.AtomicLatch;
 import org.brackit.server.tx.thread.Latch;
-import org.brackit.server.tx.thread.SyncLatch;
 
 /**
  * 
  * @author Sebastian Baechle
  * 
  */
-public class Header<T extends LockMode<T>> extends SyncLatch implements Latch {
+public class Header<T extends LockMode<T>> extends AtomicLatch implements Latch {
 	private static final Logger log = Logger.getLogger(Header.class);
 
 	final LockName name;
@@ -30,6 +30,7 @@ package org.brackit.server.tx.locking.table;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.tx.Tx;
@@ -431,27 +432,51 @@ public class LockTableClient<T extends LockMode<T>> implements
 	private boolean lockWait(Header<T> header, Request<T> request) {
 		long blockTime = 0;
 
+		// register before the latches are released: grants and deadlock
+		// victim wakeups happen under these latches and unpark the waiter
+		request.waiter = Thread.currentThread();
+
 		try {
-			synchronized (request) {
-				blockedAt.add(request);
-				header.unlatch();
-				lscb.unlatch();
+			blockedAt.add(request);
+			header.unlatch();
+			lscb.unlatch();
+
+			// trigger deadlock detection for the new wait-for edges
+			tx.getLockCB().waiting();
+
+			if (log.isTraceEnabled()) {
+				log.trace(String.format("%s is waiting for %s at %s.", tx
+						.toShortString(), blockedAt, this));
+			}
+
+			long timeout = tx.getLockCB().getTimeout();
+			long waitBegin = System.currentTimeMillis();
+			long deadline = System.nanoTime() + (timeout * 1000000L);
 
-				if (log.isTraceEnabled()) {
-					log.trace(String.format("%s is waiting for %s at %s.", tx
-							.toShortString(), blockedAt, this));
+			while ((request.getState() != LockState.GRANTED)
+					&& (tx.getState() != TxState.ABORTED)) {
+				if (timeout > 0) {
+					long left = deadline - System.nanoTime();
+
+					if (left <= 0) {
+						break;
+					}
+
+					LockSupport.parkNanos(request, left);
+				} else {
+					LockSupport.park(request);
 				}
 
-				long waitBegin = System.currentTimeMillis();
-				try {
-					request.wait(tx.getLockCB().getTimeout());
-				} catch (InterruptedException e) { /* ignore */
+				if (Thread.interrupted()) {
+					break;
 				}
-				long waitEnd = System.currentTimeMillis();
-				blockTime = (waitEnd - waitBegin);
-				lscb.addBlockTime(blockTime);
 			}
+
+			long waitEnd = System.currentTimeMillis();
+			blockTime = (waitEnd - waitBegin);
+			lscb.addBlockTime(blockTime);
 		} finally {
+			request.waiter = null;
 			lscb.latchX();
 			header.latchX();
 			blockedAt.remove(request);
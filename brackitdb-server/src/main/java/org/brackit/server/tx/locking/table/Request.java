@@ -27,6 +27,8 @@
  */
 package org.brackit.server.tx.locking.table;
 
+import java.util.concurrent.locks.LockSupport;
+
 import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.locking.LockClass;
@@ -63,6 +65,8 @@ public final class Request<T extends LockMode<T>> {
 
 	// latching the header
 
+	volatile Thread waiter; // parked thread waiting for this request
+
 	public Request(Header<T> header, Tx tx, LockClass lockClass) {
 		this.header = header;
 		this.tx = tx;
@@ -295,7 +299,11 @@ public final class Request<T extends LockMode<T>> {
 				count);
 	}
 
-	public synchronized void wakeup() {
-		notifyAll();
+	public void wakeup() {
+		Thread thread = waiter;
+
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
 	}
 }
\ No newline at end of file
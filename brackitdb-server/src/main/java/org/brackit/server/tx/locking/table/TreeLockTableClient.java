@@ -32,6 +32,7 @@ import java.util.Arrays;
 import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxStats;
+import org.brackit.server.tx.locking.LockCache;
 import org.brackit.server.tx.locking.LockClass;
 import org.brackit.server.tx.locking.LockName;
 import org.brackit.server.tx.locking.LockState;
@@ -49,6 +50,9 @@ public class TreeLockTableClient<T extends TreeLockMode<T>> extends
 
 	protected Request<T>[] lastPath;
 
+	// Protected by lscb from concurrent access
+	protected LockCache<T> cache;
+
 	protected volatile double escalationGain;
 
 	protected volatile int maxEscalationCount;
@@ -115,6 +119,16 @@ public class TreeLockTableClient<T extends TreeLockMode<T>> extends
 				level--;
 			}
 
+			// requests of shorter duration must maintain the counters
+			// of the path, because they are released explicitly
+			if (lockClass == LockClass.COMMIT_DURATION) {
+				T cachedMode = lookup(factory, level, mode);
+
+				if (cachedMode != null) {
+					return cachedMode;
+				}
+			}
+
 			return requestPath(factory, level, lockClass, mode, conditional);
 		} finally {
 			lscb.unlatch();
@@ -133,6 +147,69 @@ public class TreeLockTableClient<T extends TreeLockMode<T>> extends
 		}
 	}
 
+	@Override
+	public void freeResources() {
+		lscb.latchX();
+
+		try {
+			if (cache != null) {
+				cache.clear();
+			}
+		} finally {
+			lscb.unlatch();
+		}
+
+		super.freeResources();
+	}
+
+	/**
+	 * Checks the private lock cache of the transaction whether the requested
+	 * commit-duration mode is already covered by commit-duration locks held
+	 * along the path.
+	 * Returns the implicitly granted mode in this case and <code>null</code>
+	 * if the request must go to the lock table. Because a covering lock is
+	 * never released before the end of the transaction, we can skip the
+	 * usual counter maintenance of the path.
+	 */
+	private T lookup(TreeLockNameFactory factory, int targetLevel, T targetMode) {
+		if (cache == null) {
+			cache = tx.getLockCB().getCache(lscb.getLockService());
+
+			if (cache == null) {
+				return null;
+			}
+		}
+
+		for (int level = 0; level <= targetLevel; level++) {
+			T heldMode = cache.get(factory.getLockName(level));
+
+			if (heldMode == null) {
+				return null;
+			}
+
+			int distanceToTargetLevel = targetLevel - level;
+			T mode = targetMode.requiredAncestorMode(distanceToTargetLevel);
+
+			if (heldMode.convert(mode) != heldMode) {
+				return null;
+			}
+
+			if (heldMode.implies(targetMode, distanceToTargetLevel)) {
+				lscb.useRequest();
+				return heldMode.implicitMode(distanceToTargetLevel);
+			}
+		}
+
+		return null;
+	}
+
+	private void remember(LockName lockName, Request<T> request) {
+		if ((cache != null)
+				&& (request.getLockClass() == LockClass.COMMIT_DURATION)) {
+			cache.put(lockName, request.getMode());
+		}
+	}
+
 	/**
 	 * Releases the locks along the given path from leaf to root. We can stop as
 	 * soon as we a) reach the root, or b) only can decrease the counter of a
@@ -224,9 +301,11 @@ public class TreeLockTableClient<T extends TreeLockMode<T>> extends
 							request.incCount();
 							lscb.useRequest();
 						}
+						remember(lockName, request);
 						return currentMode.implicitMode(distanceToTargetLevel);
 					} else if ((currentMode == mode)
 							|| (currentMode.convert(mode) == currentMode)) {
+						remember(lockName, request);
 						level++;
 						parentRequest = request;
 						continue;
@@ -267,6 +346,7 @@ public class TreeLockTableClient<T extends TreeLockMode<T>> extends
 						lscb.useRequest();
 					}
 
+					remember(lockName, request);
 					header.unlatch();
 					return currentMode.implicitMode(distanceToTargetLevel);
 				}
@@ -332,6 +412,7 @@ public class TreeLockTableClient<T extends TreeLockMode<T>> extends
 				request.incCount();
 			}
 
+			remember(lockName, request);
 			header.unlatch();
 			level++;
 
@@ -88,6 +88,17 @@ public interface Log {
 	 */
 	public Loggable next(Loggable loggable) throws LogException;
 
+	/**
+	 * Opens a reader which scans the stable log from its head. The reader
+	 * fetches the log in large chunks and is therefore much cheaper than
+	 * repeated calls of {@link #next(Loggable)}.
+	 * 
+	 * @return a sequential reader starting at the first logged loggable
+	 * @throws LogException
+	 *             iff the reader could not be opened.
+	 */
+	public LogReader openReader() throws LogException;
+
 	/**
 	 * Returns the used LoggableHelper.
 	 * 
@@ -104,6 +115,15 @@ public interface Log {
 	 */
 	public void flush(long lsn) throws LogException;
 
+	/**
+	 * Schedules all log entries up to the parameter lsn for a flush within
+	 * the async commit window and returns without waiting for it.
+	 * 
+	 * @param lsn
+	 * @throws LogException
+	 */
+	public void flushDeferred(long lsn) throws LogException;
+
 	/**
 	 * Flushes all the buffered log entries.
 	 * 
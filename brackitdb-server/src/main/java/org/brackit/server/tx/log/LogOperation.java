@@ -29,6 +29,7 @@ package org.brackit.server.tx.log;
 
 import java.nio.ByteBuffer;
 
+import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.tx.Tx;
 
 /**
@@ -50,6 +51,15 @@ public abstract class LogOperation {
 
 	public abstract int getSize();
 
+	/**
+	 * Returns the only page touched by a redo of this operation or
+	 * <code>null</code> if the redo may also touch other pages or global
+	 * state, e.g., the allocation information of a container.
+	 */
+	public PageID getRedoPageID() {
+		return null;
+	}
+
 	public abstract void redo(Tx tx, long LSN) throws LogException;
 
 	public abstract void undo(Tx tx, long LSN, long undoNextLSN)
@@ -44,4 +44,46 @@ public class LogProperties {
 	public static final String FLUSH_ENABLE = "org.brackit.server.log.flush.enable";
 
 	public static final String APPEND_ENABLE = "org.brackit.server.log.append.enable";
+
+	/**
+	 * Size of the chunks fetched by sequential log readers in KB.
+	 */
+	public static final String READER_CHUNK_SIZE = "org.brackit.server.log.reader.chunk";
+
+	/**
+	 * Number of cached blocks of the stable log used by undo.
+	 */
+	public static final String LOG_CACHE_BLOCKS = "org.brackit.server.log.cache.blocks";
+
+	/**
+	 * Block size of the log cache in KB.
+	 */
+	public static final String LOG_CACHE_BLOCK_SIZE = "org.brackit.server.log.cache.block.size";
+
+	/**
+	 * Number of blocks read backwards on a log cache miss.
+	 */
+	public static final String LOG_CACHE_READ_AHEAD = "org.brackit.server.log.cache.readahead";
+
+	/**
+	 * Number of preallocated log segments kept ahead of the log tail.
+	 */
+	public static final String SEGMENT_POOL = "org.brackit.server.log.segment.pool";
+
+	public static final String GROUP_COMMIT = "org.brackit.server.log.groupcommit";
+
+	/**
+	 * Batching window of a commit group in microseconds.
+	 */
+	public static final String GROUP_COMMIT_WINDOW = "org.brackit.server.log.groupcommit.window";
+
+	/**
+	 * Number of waiting committers which closes the batching window early.
+	 */
+	public static final String GROUP_COMMIT_SIZE = "org.brackit.server.log.groupcommit.size";
+
+	/**
+	 * Maximum time in milliseconds an asynchronous commit stays unflushed.
+	 */
+	public static final String ASYNC_COMMIT_WINDOW = "org.brackit.server.log.asynccommit.window";
 }
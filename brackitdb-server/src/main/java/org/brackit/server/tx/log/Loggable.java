@@ -46,6 +46,9 @@ public interface Loggable {
 	// -> like a CLR, but with Undo processing
 	public static final byte TYPE_UPDATE_SPECIAL = (byte) 4;
 
+	// fuzzy checkpoint with dirty page table and active transaction table
+	public static final byte TYPE_CHECKPOINT = (byte) 5;
+
 	public byte getType();
 
 	public LogOperation getLogOperation();
@@ -40,6 +40,9 @@ import org.brackit.server.tx.TxID;
 public interface LoggableHelper {
 	public Loggable createEOT(TxID taID, long prevLSN, boolean commit);
 
+	public Loggable createCheckpoint(TxID taID, long prevLSN,
+			LogOperation createOperation);
+
 	public Loggable createUpdate(TxID taID, long prevLSN,
 			LogOperation createOperation);
 
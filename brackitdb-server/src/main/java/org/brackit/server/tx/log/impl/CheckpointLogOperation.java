@@ -0,0 +1,222 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.log.impl;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxID;
+import org.brackit.server.tx.log.LogException;
+import org.brackit.server.tx.log.LogOperation;
+import org.brackit.server.tx.log.SizeConstants;
+
+/**
+ * Content of a fuzzy checkpoint: the dirty page table with the redo LSN of
+ * each dirty page and the active transaction table with the last LSN and the
+ * minimum undo LSN of each running transaction. The dirty page table covers
+ * all updates with an LSN lower than the cover LSN.
+ */
+public class CheckpointLogOperation extends LogOperation {
+
+	public static final byte CHECKPOINT = 8;
+
+	private static final int BASE_SIZE = SizeConstants.LONG_SIZE + 2
+			* SizeConstants.INT_SIZE;
+
+	private static final int DIRTY_PAGE_SIZE = PageID.getSize()
+			+ SizeConstants.LONG_SIZE;
+
+	private static final int ACTIVE_TX_SIZE = TxID.getLength() + 2
+			* SizeConstants.LONG_SIZE;
+
+	private final long coverLSN;
+
+	private final PageID[] dirtyPages;
+
+	private final long[] redoLSNs;
+
+	private final TxID[] activeTXs;
+
+	private final long[] prevLSNs;
+
+	private final long[] undoLSNs;
+
+	public CheckpointLogOperation(long coverLSN, PageID[] dirtyPages,
+			long[] redoLSNs, TxID[] activeTXs, long[] prevLSNs, long[] undoLSNs) {
+		super(CHECKPOINT);
+		this.coverLSN = coverLSN;
+		this.dirtyPages = dirtyPages;
+		this.redoLSNs = redoLSNs;
+		this.activeTXs = activeTXs;
+		this.prevLSNs = prevLSNs;
+		this.undoLSNs = undoLSNs;
+	}
+
+	public CheckpointLogOperation(long coverLSN,
+			Map<PageID, Long> dirtyPageTable, Map<TxID, long[]> activeTxTable) {
+		super(CHECKPOINT);
+		this.coverLSN = coverLSN;
+		this.dirtyPages = new PageID[dirtyPageTable.size()];
+		this.redoLSNs = new long[dirtyPageTable.size()];
+		this.activeTXs = new TxID[activeTxTable.size()];
+		this.prevLSNs = new long[activeTxTable.size()];
+		this.undoLSNs = new long[activeTxTable.size()];
+
+		int i = 0;
+		for (Map.Entry<PageID, Long> entry : dirtyPageTable.entrySet()) {
+			dirtyPages[i] = entry.getKey();
+			redoLSNs[i++] = entry.getValue();
+		}
+
+		i = 0;
+		for (Map.Entry<TxID, long[]> entry : activeTxTable.entrySet()) {
+			activeTXs[i] = entry.getKey();
+			prevLSNs[i] = entry.getValue()[0];
+			undoLSNs[i++] = entry.getValue()[1];
+		}
+	}
+
+	public long getCoverLSN() {
+		return coverLSN;
+	}
+
+	public Map<PageID, Long> getDirtyPageTable() {
+		Map<PageID, Long> dirtyPageTable = new HashMap<PageID, Long>();
+
+		for (int i = 0; i < dirtyPages.length; i++) {
+			dirtyPageTable.put(dirtyPages[i], redoLSNs[i]);
+		}
+
+		return dirtyPageTable;
+	}
+
+	public PageID[] getDirtyPages() {
+		return dirtyPages;
+	}
+
+	public long[] getRedoLSNs() {
+		return redoLSNs;
+	}
+
+	public TxID[] getActiveTXs() {
+		return activeTXs;
+	}
+
+	public long[] getPrevLSNs() {
+		return prevLSNs;
+	}
+
+	public long[] getUndoLSNs() {
+		return undoLSNs;
+	}
+
+	/**
+	 * Returns the LSN from which redo must start according to this
+	 * checkpoint.
+	 */
+	public long getMinRedoLSN() {
+		long minRedoLSN = Long.MAX_VALUE;
+
+		for (long redoLSN : redoLSNs) {
+			minRedoLSN = Math.min(minRedoLSN, redoLSN);
+		}
+
+		return minRedoLSN;
+	}
+
+	@Override
+	public void toBytes(ByteBuffer buffer) {
+		buffer.putLong(coverLSN);
+		buffer.putInt(dirtyPages.length);
+
+		for (int i = 0; i < dirtyPages.length; i++) {
+			dirtyPages[i].write(buffer);
+			buffer.putLong(redoLSNs[i]);
+		}
+
+		buffer.putInt(activeTXs.length);
+
+		for (int i = 0; i < activeTXs.length; i++) {
+			activeTXs[i].toBytes(buffer);
+			buffer.putLong(prevLSNs[i]);
+			buffer.putLong(undoLSNs[i]);
+		}
+	}
+
+	public static CheckpointLogOperation fromBytes(ByteBuffer buffer) {
+		long coverLSN = buffer.getLong();
+		int noOfDirtyPages = buffer.getInt();
+		PageID[] dirtyPages = new PageID[noOfDirtyPages];
+		long[] redoLSNs = new long[noOfDirtyPages];
+
+		for (int i = 0; i < noOfDirtyPages; i++) {
+			dirtyPages[i] = PageID.read(buffer);
+			redoLSNs[i] = buffer.getLong();
+		}
+
+		int noOfActiveTXs = buffer.getInt();
+		TxID[] activeTXs = new TxID[noOfActiveTXs];
+		long[] prevLSNs = new long[noOfActiveTXs];
+		long[] undoLSNs = new long[noOfActiveTXs];
+
+		for (int i = 0; i < noOfActiveTXs; i++) {
+			activeTXs[i] = TxID.fromBytes(buffer);
+			prevLSNs[i] = buffer.getLong();
+			undoLSNs[i] = buffer.getLong();
+		}
+
+		return new CheckpointLogOperation(coverLSN, dirtyPages, redoLSNs,
+				activeTXs, prevLSNs, undoLSNs);
+	}
+
+	@Override
+	public int getSize() {
+		return BASE_SIZE + dirtyPages.length
+				* DIRTY_PAGE_SIZE + activeTXs.length * ACTIVE_TX_SIZE;
+	}
+
+	@Override
+	public void redo(Tx tx, long LSN) throws LogException {
+		throw new UnsupportedOperationException(String.format("A checkpoint log record can not be redone!"));
+	}
+
+	@Override
+	public void undo(Tx tx, long LSN, long undoNextLSN) throws LogException {
+		throw new UnsupportedOperationException(String.format("A checkpoint log record can not be undone!"));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s(%s dirty pages, %s active transactions)",
+				getClass().getSimpleName(), dirtyPages.length,
+				activeTXs.length);
+	}
+}
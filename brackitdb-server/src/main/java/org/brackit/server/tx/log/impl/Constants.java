@@ -65,6 +65,14 @@ class Constants {
 
 	static final int FIELD_LENGTH_LEN = SizeConstants.INT_SIZE;
 
+	static final int FIELD_CHECKSUM_LEN = SizeConstants.INT_SIZE;
+
+	/**
+	 * Each record on disk is preceded by its length and the CRC32 checksum
+	 * of its content.
+	 */
+	static final int RECORD_HEADER_LEN = FIELD_LENGTH_LEN + FIELD_CHECKSUM_LEN;
+
 	/**
 	 * Capacity of the log buffer in bytes.
 	 * 
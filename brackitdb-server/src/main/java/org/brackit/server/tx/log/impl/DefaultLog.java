@@ -27,6 +27,7 @@
  */
 package org.brackit.server.tx.log.impl;
 
+import org.brackit.server.tx.log.LogProperties;
 import org.brackit.server.tx.log.impl.virtual.RAFSegmentHelper;
 import org.brackit.server.tx.log.impl.virtual.SegmentLogFileHelper;
 import org.brackit.xquery.util.Cfg;
@@ -50,7 +51,8 @@ public class DefaultLog extends SimpleLog {
 
 	public DefaultLog(String directory, String basename, long segmentSize) {
 		this(new LogRecordHelper(), new SimpleLogBuffer(),
-				new RAFSegmentHelper(directory, basename), segmentSize,
+				new RAFSegmentHelper(directory, basename, segmentSize, Cfg
+						.asInt(LogProperties.SEGMENT_POOL, 2)), segmentSize,
 				new LogMonitor());
 	}
 
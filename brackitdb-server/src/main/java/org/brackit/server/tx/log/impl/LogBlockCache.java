@@ -0,0 +1,100 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.log.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of fixed-size blocks of the stable log. A block may be shorter
+ * than the block size if it contains the end of the stable log.
+ */
+class LogBlockCache {
+	private final int blockSize;
+
+	private final int capacity;
+
+	private final LinkedHashMap<Long, byte[]> blocks;
+
+	private long hits;
+
+	private long misses;
+
+	LogBlockCache(int blockSize, final int capacity) {
+		this.blockSize = blockSize;
+		this.capacity = capacity;
+		this.blocks = new LinkedHashMap<Long, byte[]>(capacity, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+				return (size() > capacity);
+			}
+		};
+	}
+
+	int getBlockSize() {
+		return blockSize;
+	}
+
+	int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the cached block if it holds at least the given number of
+	 * bytes.
+	 */
+	synchronized byte[] get(long blockNo, int minLength) {
+		byte[] block = blocks.get(blockNo);
+
+		if ((block == null) || (block.length < minLength)) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return block;
+	}
+
+	synchronized boolean contains(long blockNo) {
+		return blocks.containsKey(blockNo);
+	}
+
+	synchronized void put(long blockNo, byte[] block) {
+		blocks.put(blockNo, block);
+	}
+
+	synchronized void clear() {
+		blocks.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("log cache %s/%s blocks, %s hits, %s misses",
+				blocks.size(), capacity, hits, misses);
+	}
+}
@@ -30,14 +30,37 @@ package org.brackit.server.tx.log.impl;
 import org.brackit.server.tx.log.Loggable;
 
 /**
+ * Buffer for log records which are not yet written to the log file. The log
+ * reserves the LSN range of a record before it is added, so records may be
+ * added concurrently and out of LSN order. Only the gap-free prefix of added
+ * records is handed out for flushing.
+ * 
  * @author Ou Yi
  * 
  */
 public interface LogBuffer {
+	/**
+	 * Empties the buffer and expects the next record at the given LSN.
+	 */
+	void reset(long lsn);
+
+	/**
+	 * Adds a record with a reserved LSN. Returns <code>false</code> if the
+	 * buffer exceeds its capacity and should be flushed.
+	 */
 	boolean add(Loggable loggable);
 
+	/**
+	 * Removes and returns the gap-free prefix of buffered records, or
+	 * <code>null</code> if no record up to the given LSN is available.
+	 */
 	byte[] pollToFlush(long lsn);
 
+	/**
+	 * Returns the LSN following the last record handed out for flushing.
+	 */
+	long getPolledLSN();
+
 	Loggable get(long lsn);
 
 }
@@ -41,6 +41,12 @@ import org.brackit.server.tx.log.LogException;
 public interface LogFile {
 	long getLength() throws LogException;
 
+	/**
+	 * Cuts the file at the given length. Data beyond this position is
+	 * discarded.
+	 */
+	void setLength(long length) throws LogException;
+
 	long truncateTo(long pos) throws LogException;
 
 	long getFilePointer() throws LogException;
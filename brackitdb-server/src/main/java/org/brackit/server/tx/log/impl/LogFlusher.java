@@ -0,0 +1,240 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.log.impl;
+
+import org.brackit.xquery.util.log.Logger;
+import org.brackit.server.tx.log.LogException;
+
+/**
+ * Group commit for a {@link SimpleLog}. Committers announce the LSN they need
+ * on stable storage and wait. The flusher collects all pending requests,
+ * optionally lingers for a short batching window, and forces the log once for
+ * the whole group. Asynchronous committers only announce their LSN; the
+ * flusher forces it at the latest when the async commit window expired.
+ */
+class LogFlusher extends Thread {
+	private static final Logger log = Logger.getLogger(LogFlusher.class);
+
+	private final Object mutex = new Object();
+
+	private final SimpleLog transactionLog;
+
+	private final LogMonitor logMonitor;
+
+	private final long window;
+
+	private final int groupSize;
+
+	private final long deferWindow;
+
+	private volatile boolean active;
+
+	private volatile long durableLSN = -1;
+
+	private long requestedLSN = -1;
+
+	private int pending;
+
+	private long deferredLSN = -1;
+
+	private long deferredSince;
+
+	private LogException failure;
+
+	/**
+	 * @param window
+	 *            maximum time in microseconds the flusher waits for further
+	 *            committers before it forces the log
+	 * @param groupSize
+	 *            number of waiting committers which ends the batching window
+	 *            early
+	 * @param deferWindow
+	 *            maximum time in milliseconds a deferred flush request stays
+	 *            unflushed
+	 */
+	LogFlusher(SimpleLog transactionLog, LogMonitor logMonitor, long window,
+			int groupSize, long deferWindow) {
+		setName("LogFlusher");
+
+		this.transactionLog = transactionLog;
+		this.logMonitor = logMonitor;
+		this.window = Math.max(0, window) * 1000;
+		this.groupSize = groupSize;
+		this.deferWindow = Math.max(0, deferWindow) * 1000000;
+		this.active = true;
+
+		setDaemon(true);
+	}
+
+	/**
+	 * Waits until the given LSN is on stable storage. Returns
+	 * <code>false</code> if the flusher is not active anymore and the caller
+	 * must force the log itself.
+	 */
+	boolean await(long lsn) throws LogException {
+		if (lsn <= durableLSN) {
+			return true;
+		}
+
+		synchronized (mutex) {
+			if (lsn > requestedLSN) {
+				requestedLSN = lsn;
+			}
+			pending++;
+			mutex.notifyAll();
+
+			try {
+				while ((active) && (failure == null) && (durableLSN < lsn)) {
+					mutex.wait();
+				}
+			} catch (InterruptedException e) {
+				throw new LogException(e,
+						"Interrupted while waiting for flush of LSN %s.", lsn);
+			} finally {
+				pending--;
+			}
+
+			if (durableLSN >= lsn) {
+				return true;
+			}
+			if (failure != null) {
+				throw new LogException(failure,
+						"Flush of LSN %s failed.", lsn);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Requests a flush of the given LSN within the async commit window without
+	 * waiting for it. Returns <code>false</code> if the flusher is not active
+	 * anymore and the caller must force the log itself.
+	 */
+	boolean defer(long lsn) {
+		if (lsn <= durableLSN) {
+			return true;
+		}
+
+		synchronized (mutex) {
+			if ((!active) || (failure != null)) {
+				return false;
+			}
+
+			if (deferredLSN <= durableLSN) {
+				deferredSince = System.nanoTime();
+				mutex.notifyAll();
+			}
+			if (lsn > deferredLSN) {
+				deferredLSN = lsn;
+			}
+			return true;
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			long target;
+			int group;
+
+			synchronized (mutex) {
+				try {
+					while ((active) && (requestedLSN <= durableLSN)) {
+						if (deferredLSN <= durableLSN) {
+							mutex.wait();
+						} else {
+							long left = deferredSince + deferWindow
+									- System.nanoTime();
+
+							if (left <= 0) {
+								break;
+							}
+							mutex.wait(left / 1000000, (int) (left % 1000000));
+						}
+					}
+
+					if (!active) {
+						break;
+					}
+
+					if ((window > 0) && (requestedLSN > durableLSN)) {
+						long deadline = System.nanoTime() + window;
+						long left;
+
+						while ((active) && (pending < groupSize)
+								&& ((left = deadline - System.nanoTime()) > 0)) {
+							mutex.wait(left / 1000000, (int) (left % 1000000));
+						}
+					}
+				} catch (InterruptedException e) {
+					continue;
+				}
+
+				target = Math.max(requestedLSN, deferredLSN);
+				group = pending;
+			}
+
+			try {
+				long flushed = transactionLog.flushGroup(target);
+
+				synchronized (mutex) {
+					durableLSN = flushed;
+					mutex.notifyAll();
+				}
+
+				if (flushed < target) {
+					// wait for appenders to fill their reserved slots
+					transactionLog.awaitAppend(flushed + 1);
+				} else {
+					logMonitor.logGroupCommitted(group);
+				}
+			} catch (LogException e) {
+				log.error("Group commit failed.", e);
+
+				synchronized (mutex) {
+					failure = e;
+					active = false;
+					mutex.notifyAll();
+				}
+				break;
+			}
+		}
+	}
+
+	public void terminate() {
+		synchronized (mutex) {
+			active = false;
+			mutex.notifyAll();
+		}
+
+		try {
+			join();
+		} catch (InterruptedException e) {
+		}
+	}
+}
@@ -46,11 +46,32 @@ public class LogMonitor {
 	private int minAppendSize = Integer.MAX_VALUE;
 	private int maxAppendSize = Integer.MIN_VALUE;
 
+	private long groupCount = 0;
+	private long groupedCommitCount = 0;
+	private int maxGroupSize = 0;
+
+	private long syncCount = 0;
+	private long syncTime = 0;
+	private long maxSyncTime = 0;
+
 	long getFlushByteCount() {
 		return this.flushByteCount;
 	}
 
-	void logFlushed(int flushSize) {
+	synchronized void logGroupCommitted(int groupSize) {
+		this.groupCount++;
+		this.groupedCommitCount += groupSize;
+		this.maxGroupSize = (groupSize > maxGroupSize ? groupSize
+				: maxGroupSize);
+	}
+
+	synchronized void logSynced(long nanos) {
+		this.syncCount++;
+		this.syncTime += nanos;
+		this.maxSyncTime = (nanos > maxSyncTime ? nanos : maxSyncTime);
+	}
+
+	synchronized void logFlushed(int flushSize) {
 		this.flushCount++;
 		this.flushByteCount += flushSize;
 		this.minFlushSize = (flushSize < minFlushSize ? flushSize
@@ -104,8 +125,16 @@ public class LogMonitor {
 		return (int) (appendedCount == 0 ? 0 : appendByteCount / appendedCount);
 	}
 
+	synchronized double getAvgGroupSize() {
+		return (groupCount == 0 ? 0 : (double) groupedCommitCount / groupCount);
+	}
+
+	synchronized long getAvgSyncTime() {
+		return (syncCount == 0 ? 0 : syncTime / syncCount);
+	}
+
 	@Override
-	public String toString() {
+	public synchronized String toString() {
 		StringBuffer sb = new StringBuffer();
 
 		sb.append("\n");
@@ -121,6 +150,12 @@ public class LogMonitor {
 		sb.append("min flush size: " + minFlushSize + "\n");
 		sb.append("max flush size: " + maxFlushSize + "\n");
 		sb.append("avg flush size: " + getAvgFlushSize() + "\n");
+		sb.append("commit groups: " + groupCount + "\n");
+		sb.append("max group size: " + maxGroupSize + "\n");
+		sb.append(String.format("avg group size: %.2f\n", getAvgGroupSize()));
+		sb.append("syncs: " + syncCount + "\n");
+		sb.append("max sync latency: " + maxSyncTime / 1000 + " us\n");
+		sb.append("avg sync latency: " + getAvgSyncTime() / 1000 + " us\n");
 		sb.append("\n");
 
 		return sb.toString();
@@ -125,6 +125,7 @@ public class LogRecord implements Loggable {
 		switch (type) {
 		case TYPE_EOT:
 		case TYPE_UPDATE:
+		case TYPE_CHECKPOINT:
 			bb.put(logOperation.getType());
 			logOperation.toBytes(bb);
 			break;
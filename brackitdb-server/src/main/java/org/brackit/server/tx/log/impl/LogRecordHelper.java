@@ -56,6 +56,7 @@ public class LogRecordHelper implements LoggableHelper {
 	static {
 		helperSet = new HashSet<LogOperationHelper>();
 		helperSet.add(new EOTLogOperationHelper());
+		helperSet.add(new CheckpointLogOperationHelper());
 		helperSet.add(new PageLogOperationHelper());
 		helperSet.add(new BPlusIndexLogOperationHelper());
 		helperSet.add(new ElBPlusIndexLogOperationHelper());
@@ -90,6 +91,12 @@ public class LogRecordHelper implements LoggableHelper {
 		return new LogRecord(Loggable.TYPE_EOT, taID, prevLSN, new EOTLogOperation(commit), -1);
 	}
 
+	public Loggable createCheckpoint(TxID taID, long prevLSN,
+			LogOperation createOperation) {
+		return new LogRecord(Loggable.TYPE_CHECKPOINT, taID, prevLSN,
+				createOperation, -1);
+	}
+
 	public Loggable createUpdate(TxID taID, long prevLSN,
 			LogOperation createOperation) {
 		return new LogRecord(Loggable.TYPE_UPDATE, taID, prevLSN,
@@ -135,6 +142,7 @@ public class LogRecordHelper implements LoggableHelper {
 					undoNextLSN);
 		case Loggable.TYPE_UPDATE:
 		case Loggable.TYPE_EOT:
+		case Loggable.TYPE_CHECKPOINT:
 			logOperationType = buffer.get();
 			logOperation = fromBytes(logOperationType, buffer.slice());
 			return new LogRecord(logRecordType, taId, prevLSN,
@@ -112,6 +112,19 @@ public class RAFLogFile implements LogFile {
 		}
 	}
 
+	@Override
+	public void setLength(long length) throws LogException {
+		if (checkOpen)
+			checkOpen();
+
+		try {
+			raf.setLength(length);
+		} catch (IOException e) {
+			throw new LogException(e, "Could not set length of log file %s.",
+					toString());
+		}
+	}
+
 	@Override
 	public void seek(long pos) throws LogException {
 		if (checkOpen)
@@ -28,11 +28,16 @@
 package org.brackit.server.tx.log.impl;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.tx.log.Log;
 import org.brackit.server.tx.log.LogException;
 import org.brackit.server.tx.log.LogProperties;
+import org.brackit.server.tx.log.LogReader;
 import org.brackit.server.tx.log.Loggable;
 import org.brackit.server.tx.log.LoggableHelper;
 import org.brackit.server.tx.log.impl.virtual.SegmentLogFileHelper;
@@ -49,24 +54,71 @@ import org.brackit.xquery.util.Cfg;
 public abstract class SimpleLog implements Log {
 	private static final Logger log = Logger.getLogger(SimpleLog.class);
 
+	/**
+	 * Maximum time in milliseconds a flush waits for an appender to fill a
+	 * reserved slot before it checks again
+	 */
+	private static final long APPEND_WAIT = 10;
+
 	protected final LoggableHelper loggableHelper;
 
 	protected final LogBuffer logBuffer;
 
-	protected long lastLSN;
-
-	protected long nextLSN;
+	/**
+	 * Next free LSN. Appenders reserve the LSN range of their record with a
+	 * fetch-and-add and fill the reserved slot in the log buffer in parallel.
+	 */
+	protected final AtomicLong nextLSN = new AtomicLong();
 
-	protected final LogFile raf;
+	protected final VirtualLogFile raf;
 
-	protected boolean closed;
+	protected volatile boolean closed;
 
 	protected final LogMonitor logMonitor;
 
+	private final LogBlockCache blockCache;
+
+	private final int cacheReadAhead;
+
 	private boolean flushEnabled;
 
 	private boolean appendEnabled;
 
+	private final boolean groupCommit;
+
+	/**
+	 * Serializes forcing the log file. Records are written to the log file
+	 * under the log monitor, but forced outside of it. Lock order is log
+	 * monitor before sync lock.
+	 */
+	private final Object syncLock = new Object();
+
+	/**
+	 * End of the records handed to the log file
+	 */
+	private volatile long writtenLSN;
+
+	/**
+	 * End of the records known to be on stable storage. Only advanced after
+	 * the log file was forced.
+	 */
+	private volatile long syncedLSN;
+
+	private volatile LogFlusher flusher;
+
+	/**
+	 * Set if a reserved LSN range could not be filled. The log has a gap
+	 * then and refuses all further appends and flushes.
+	 */
+	private volatile LogException failure;
+
+	/**
+	 * Flushers waiting for a reserved slot to be filled
+	 */
+	private final Object appendMonitor = new Object();
+
+	private final AtomicInteger appendWaiters = new AtomicInteger();
+
 	public SimpleLog(LoggableHelper loggableHelper, LogBuffer logBuffer,
 			SegmentLogFileHelper helper, long segmentSize, LogMonitor logMonitor) {
 		super();
@@ -76,6 +128,13 @@ public abstract class SimpleLog implements Log {
 		this.logMonitor = logMonitor;
 		this.flushEnabled = Cfg.asBool(LogProperties.FLUSH_ENABLE, true);
 		this.appendEnabled = Cfg.asBool(LogProperties.APPEND_ENABLE, true);
+		this.groupCommit = Cfg.asBool(LogProperties.GROUP_COMMIT, true);
+		this.blockCache = new LogBlockCache(Math.max(1, Cfg.asInt(
+				LogProperties.LOG_CACHE_BLOCK_SIZE, 64)) * 1024, Math.max(1,
+				Cfg.asInt(LogProperties.LOG_CACHE_BLOCKS, 256)));
+		this.cacheReadAhead = Math.max(1, Math.min(Cfg.asInt(
+				LogProperties.LOG_CACHE_READ_AHEAD, 8), blockCache
+				.getCapacity()));
 
 		if (!flushEnabled) {
 			log.warn("log flushing deactivated");
@@ -93,7 +152,7 @@ public abstract class SimpleLog implements Log {
 	}
 
 	@Override
-	public synchronized Loggable get(long lsn) throws LogException {
+	public Loggable get(long lsn) throws LogException {
 		Loggable loggable = getInternal(lsn);
 
 		if (loggable == null) {
@@ -123,34 +182,224 @@ public abstract class SimpleLog implements Log {
 
 	@Override
 	public synchronized Loggable next(Loggable loggable) throws LogException {
-		return getInternal(loggable.getLSN() + Constants.FIELD_LENGTH_LEN
+		return getInternal(loggable.getLSN() + Constants.RECORD_HEADER_LEN
 				+ loggable.getSize());
 	}
 
-	private Loggable read(long lsn) throws LogException {
-		if (lsn >= raf.getLength()) {
-			return null;
+	@Override
+	public synchronized LogReader openReader() throws LogException {
+		long pos = raf.getFilePointer();
+		long head = raf.seekHead();
+		raf.seek(pos);
+		return new ChunkReader(head, raf.getLength(), Cfg.asInt(
+				LogProperties.READER_CHUNK_SIZE, 1024) * 1024);
+	}
+
+	/**
+	 * Reads the stable log in chunks. The log monitor is only held while a
+	 * chunk is fetched.
+	 */
+	private class ChunkReader implements LogReader {
+		private final int chunkSize;
+
+		private long endLSN;
+
+		private long lsn;
+
+		private byte[] chunk = new byte[0];
+
+		private long chunkLSN;
+
+		private int chunkLength;
+
+		ChunkReader(long lsn, long endLSN, int chunkSize) {
+			this.lsn = lsn;
+			this.endLSN = endLSN;
+			this.chunkSize = Math.max(chunkSize, 4096);
+		}
+
+		@Override
+		public Loggable next() throws LogException {
+			if (lsn >= endLSN) {
+				return null;
+			}
+
+			int offset = fetch(lsn, Constants.FIELD_LENGTH_LEN);
+			int length = ByteBuffer.wrap(chunk, offset,
+					Constants.FIELD_LENGTH_LEN).getInt();
+			offset = fetch(lsn, Constants.RECORD_HEADER_LEN + length)
+					+ Constants.RECORD_HEADER_LEN;
+
+			byte[] record = Arrays.copyOfRange(chunk, offset, offset + length);
+			Loggable loggable = loggableHelper.fromBytes(ByteBuffer
+					.wrap(record));
+			loggable.setLSN(lsn);
+			lsn += Constants.RECORD_HEADER_LEN + length;
+
+			return loggable;
 		}
 
+		private int fetch(long pos, int length) throws LogException {
+			if ((pos >= chunkLSN)
+					&& (pos + length <= chunkLSN + chunkLength)) {
+				return (int) (pos - chunkLSN);
+			}
+
+			int size = (int) Math.min(Math.max(chunkSize, length), endLSN
+					- pos);
+
+			if (size < length) {
+				throw new LogException("Truncated log record at LSN %s.", pos);
+			}
+
+			if (chunk.length < size) {
+				chunk = new byte[size];
+			}
+
+			synchronized (SimpleLog.this) {
+				long current = raf.getFilePointer();
+
+				try {
+					raf.seek(pos);
+					byte[] buffer = (chunk.length == size) ? chunk
+							: new byte[size];
+					if (raf.read(buffer) != size) {
+						throw new LogException(
+								"Could not read %s bytes at LSN %s.", size, pos);
+					}
+					if (buffer != chunk) {
+						System.arraycopy(buffer, 0, chunk, 0, size);
+					}
+				} finally {
+					raf.seek(current);
+				}
+			}
+
+			chunkLSN = pos;
+			chunkLength = size;
+			return 0;
+		}
+
+		@Override
+		public void close() {
+			chunk = null;
+			endLSN = -1;
+		}
+	}
+
+	private Loggable read(long lsn) throws LogException {
 		if (log.isDebugEnabled()) {
 			log.debug(String.format("Trying to read LSN %s from stable log.",
 					lsn));
 		}
 
+		byte[] header = readStable(lsn, Constants.FIELD_LENGTH_LEN);
+
+		if (header == null) {
+			return null;
+		}
+
+		int length = ByteBuffer.wrap(header).getInt();
+		byte[] record = readStable(lsn + Constants.RECORD_HEADER_LEN, length);
+
+		if (record == null) {
+			return null;
+		}
+
+		Loggable loggable = loggableHelper.fromBytes(ByteBuffer.wrap(record));
+
+		loggable.setLSN(lsn);
+
+		return loggable;
+	}
+
+	/**
+	 * Copies a range of the stable log through the block cache. Cache hits
+	 * do not need the log monitor. Returns <code>null</code> if the range is
+	 * not stable yet.
+	 */
+	private byte[] readStable(long pos, int length) throws LogException {
+		int blockSize = blockCache.getBlockSize();
+		byte[] bytes = new byte[length];
+		int copied = 0;
+
+		while (copied < length) {
+			long current = pos + copied;
+			long blockNo = current / blockSize;
+			int offset = (int) (current % blockSize);
+			int needed = Math.min(length - copied, blockSize - offset);
+			byte[] block = blockCache.get(blockNo, offset + needed);
+
+			if (block == null) {
+				block = load(blockNo, offset, offset + needed);
+
+				if (block == null) {
+					return null;
+				}
+			}
+
+			System.arraycopy(block, offset, bytes, copied, needed);
+			copied += needed;
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Reads a block of the stable log into the cache. Uncached predecessors
+	 * of the block are read with the same I/O because an undo follows the
+	 * log backwards.
+	 */
+	private synchronized byte[] load(long blockNo, int from, int to)
+			throws LogException {
+		int blockSize = blockCache.getBlockSize();
+		long blockStart = blockNo * blockSize;
+		long end = Math.min(blockStart + blockSize, raf.getLength());
+
+		if (blockStart + to > end) {
+			return null;
+		}
+
 		long pos = raf.getFilePointer();
 
 		try {
-			raf.seek(lsn);
-			int length = raf.readInt();
-			byte[] record = new byte[length];
-			raf.read(record);
+			long head = raf.seekHead();
 
-			Loggable loggable = loggableHelper.fromBytes(ByteBuffer
-					.wrap(record));
+			if (blockStart + from < head) {
+				throw new LogException(
+						"Position %s is not available anymore in log %s.",
+						blockStart + from, raf);
+			}
 
-			loggable.setLSN(lsn);
+			long first = blockNo;
+			while ((first > blockNo - cacheReadAhead + 1)
+					&& ((first - 1) * blockSize >= head)
+					&& (!blockCache.contains(first - 1))) {
+				first--;
+			}
 
-			return loggable;
+			long start = Math.max(first * blockSize, head);
+			byte[] run = new byte[(int) (end - start)];
+			raf.seek(start);
+
+			if (raf.read(run) != run.length) {
+				throw new LogException("Could not read %s bytes at LSN %s.",
+						run.length, start);
+			}
+
+			byte[] block = null;
+
+			for (long b = first; b <= blockNo; b++) {
+				long bStart = b * blockSize;
+				long bEnd = Math.min(bStart + blockSize, end);
+				long copyFrom = Math.max(bStart, start);
+				block = new byte[(int) (bEnd - bStart)];
+				System.arraycopy(run, (int) (copyFrom - start), block,
+						(int) (copyFrom - bStart), (int) (bEnd - copyFrom));
+				blockCache.put(b, block);
+			}
+
+			return block;
 		} finally {
 			raf.seek(pos);
 		}
@@ -162,39 +411,121 @@ public abstract class SimpleLog implements Log {
 		}
 
 		raf.open();
+		blockCache.clear();
+
+		if (raf.hasZeroTail()) {
+			recoverLength();
+		}
+
 		long length = raf.getLength();
-		nextLSN = length;
+		nextLSN.set(length);
+		logBuffer.reset(length);
 		raf.seek(length);
+		writtenLSN = length;
+		syncedLSN = length;
+		failure = null;
 		closed = false;
+
+		if (flushEnabled) {
+			flusher = new LogFlusher(this, logMonitor, Cfg.asLong(
+					LogProperties.GROUP_COMMIT_WINDOW, 0), Cfg.asInt(
+					LogProperties.GROUP_COMMIT_SIZE, 0), Cfg.asLong(
+					LogProperties.ASYNC_COMMIT_WINDOW, 200));
+			flusher.start();
+		}
+	}
+
+	/**
+	 * Determines the end of the log if the last segment was preallocated and
+	 * the log was not closed properly. Preallocated space is zero-filled, but
+	 * a record written before the crash may be torn, i.e., its length field
+	 * may be on disk while parts of its content are not. The log therefore
+	 * ends at the first record following the head whose length field is
+	 * empty or whose content does not match its checksum.
+	 */
+	private void recoverLength() throws LogException {
+		long physicalLength = raf.getLength();
+		long end = raf.seekHead();
+		byte[] header = new byte[Constants.RECORD_HEADER_LEN];
+		CRC32 crc = new CRC32();
+
+		while (end + header.length <= physicalLength) {
+			raf.seek(end);
+
+			if (raf.read(header) != header.length) {
+				break;
+			}
+
+			ByteBuffer bb = ByteBuffer.wrap(header);
+			int length = bb.getInt();
+			int checksum = bb.getInt();
+
+			if ((length <= 0) || (end + header.length + length > physicalLength)) {
+				break;
+			}
+
+			byte[] record = new byte[length];
+
+			if (raf.read(record) != length) {
+				break;
+			}
+
+			crc.reset();
+			crc.update(record);
+
+			if ((int) crc.getValue() != checksum) {
+				log.warn(String.format(
+						"Cutting log %s at torn record with LSN %s.", raf, end));
+				break;
+			}
+
+			end += header.length + length;
+		}
+
+		if (log.isInfoEnabled()) {
+			log.info(String.format("Recovered end of log %s at LSN %s.", raf,
+					end));
+		}
+
+		raf.setLength(end);
 	}
 
 	@Override
-	public synchronized long append(Loggable loggable) throws LogException {
+	public long append(Loggable loggable) throws LogException {
 		if (closed) {
 			throw new LogException("Illegal state, log already closed.");
 		}
+		checkFailure();
 
-		loggable.setLSN(nextLSN);
-		lastLSN = nextLSN;
-		nextLSN += Constants.FIELD_LENGTH_LEN + loggable.getSize();
+		long lsn = nextLSN.getAndAdd(Constants.RECORD_HEADER_LEN
+				+ loggable.getSize());
+		loggable.setLSN(lsn);
 
 		if (!appendEnabled) {
-			return loggable.getLSN();
+			return lsn;
 		}
 
-		boolean appended = logBuffer.add(loggable);
+		boolean appended;
 
-		if (!appended) // logBuffer capacity reached
-		{
-			flushAll(); // try to get some space
+		try {
+			appended = logBuffer.add(loggable);
+		} catch (RuntimeException e) {
+			// the reserved LSN range will never be filled
+			throw fail(new LogException(e,
+					"Appending LSN %s failed. Log has a gap.", lsn));
+		}
 
-			if (!logBuffer.add(loggable)) // second chance
-			{
-				throw new LogException(
-						"Problem adding a new log entry to the log buffer, try a larger log buffer capacity.");
+		if (appendWaiters.get() > 0) {
+			synchronized (appendMonitor) {
+				appendMonitor.notifyAll();
 			}
 		}
 
+		if (!appended) // logBuffer capacity reached
+		{
+			flush(lsn); // try to get some space
+		}
+
 		// logMonitor.logAppended(logEntry.getLoggable().getSizeInBytes());
 
 		if (log.isDebugEnabled()) {
@@ -208,39 +539,190 @@ public abstract class SimpleLog implements Log {
 	}
 
 	@Override
-	public synchronized void flush(long lsn) throws LogException {
-		byte[] bytesToFlush = logBuffer.pollToFlush(lsn);
-
-		if (bytesToFlush != null) {
-			if (log.isDebugEnabled()) {
-				log
-						.debug(String
-								.format(
-										"Flushing %6.3f kb including at least LSN %s to stable log.",
-										(double) bytesToFlush.length / 1000,
-										lsn));
+	public void flush(long lsn) throws LogException {
+		if (!appendEnabled) {
+			return;
+		}
+
+		// nothing beyond the last reserved record can be flushed
+		lsn = Math.min(lsn, nextLSN.get() - 1);
+		LogFlusher flusher = this.flusher;
+
+		if ((!groupCommit) || (flusher == null) || (!flusher.await(lsn))) {
+			flushDirect(lsn);
+		}
+	}
+
+	@Override
+	public void flushDeferred(long lsn) throws LogException {
+		if (!appendEnabled) {
+			return;
+		}
+
+		lsn = Math.min(lsn, nextLSN.get() - 1);
+		LogFlusher flusher = this.flusher;
+
+		if ((flusher == null) || (!flusher.defer(lsn))) {
+			flush(lsn);
+		}
+	}
+
+	/**
+	 * Writes the buffered log records up to the given LSN and returns when
+	 * they are on stable storage. The records may have been written
+	 * concurrently by the log flusher, which forces the log outside of the
+	 * log monitor. A record that is not in the log buffer anymore is
+	 * therefore only stable once the synced LSN covers it.
+	 */
+	private void flushDirect(long lsn) throws LogException {
+		while (true) {
+			long polledLSN;
+
+			synchronized (this) {
+				checkFailure();
+				byte[] bytesToFlush = logBuffer.pollToFlush(lsn);
+
+				if (bytesToFlush != null) {
+					if (log.isDebugEnabled()) {
+						log
+								.debug(String
+										.format(
+												"Flushing %6.3f kb including at least LSN %s to stable log.",
+												(double) bytesToFlush.length / 1000,
+												lsn));
+					}
+
+					if (flushEnabled) {
+						write(bytesToFlush);
+
+						logMonitor.logFlushed(bytesToFlush.length);
+					}
+				}
+
+				polledLSN = logBuffer.getPolledLSN();
 			}
 
-			if (flushEnabled) {
-				write(bytesToFlush);
+			if (polledLSN > lsn) {
+				syncTo(lsn);
+				return;
+			}
 
-				logMonitor.logFlushed(bytesToFlush.length);
+			// a concurrent appender has not yet filled its reserved slot
+			awaitAppend(polledLSN);
+		}
+	}
+
+	/**
+	 * Waits without holding the log monitor until the record at the given
+	 * reserved LSN is added to the log buffer, the log failed, or the wait
+	 * bound expired.
+	 */
+	void awaitAppend(long lsn) throws LogException {
+		appendWaiters.incrementAndGet();
+
+		try {
+			synchronized (appendMonitor) {
+				if ((failure == null) && (logBuffer.get(lsn) == null)) {
+					appendMonitor.wait(APPEND_WAIT);
+				}
 			}
+		} catch (InterruptedException e) {
+			throw new LogException(e,
+					"Interrupted while waiting for append of LSN %s.", lsn);
+		} finally {
+			appendWaiters.decrementAndGet();
 		}
+
+		checkFailure();
 	}
 
+	private LogException fail(LogException e) {
+		log.error("Log failed.", e);
+
+		synchronized (appendMonitor) {
+			if (failure == null) {
+				failure = e;
+			}
+			appendMonitor.notifyAll();
+		}
+		return e;
+	}
+
+	private void checkFailure() throws LogException {
+		LogException failure = this.failure;
+
+		if (failure != null) {
+			throw new LogException(failure, "Log %s failed.", raf);
+		}
+	}
+
+	/**
+	 * Hands records to the log file. Must be called with the log monitor
+	 * held.
+	 */
 	private void write(byte[] bytesToFlush) throws LogException {
 		if (raf.getFilePointer() != raf.getLength()) {
 			raf.seek(raf.getLength());
 		}
 
 		raf.write(bytesToFlush);
-		raf.sync();
+		writtenLSN = raf.getLength();
+	}
+
+	/**
+	 * Forces the log file unless the record at the given LSN is already on
+	 * stable storage. Must not be called with the log monitor held.
+	 */
+	private void syncTo(long lsn) throws LogException {
+		if ((!flushEnabled) || (syncedLSN > lsn)) {
+			return;
+		}
+
+		synchronized (syncLock) {
+			if (syncedLSN > lsn) {
+				// forced by a concurrent flush in the meantime
+				return;
+			}
+
+			// everything written so far is covered by the following sync
+			long target = writtenLSN;
+			long start = System.nanoTime();
+			raf.sync();
+			logMonitor.logSynced(System.nanoTime() - start);
+			syncedLSN = target;
+		}
+	}
+
+	/**
+	 * Writes the gap-free prefix of buffered log records and forces the log
+	 * file on behalf of a group of committers. The log monitor is only held
+	 * while the records are handed to the log file so that appends proceed
+	 * during the sync. Returns the LSN up to which the log is stable, which
+	 * may be lower than the requested LSN if reserved slots are still empty.
+	 */
+	long flushGroup(long lsn) throws LogException {
+		byte[] bytesToFlush;
+		long flushedLSN;
+
+		synchronized (this) {
+			checkFailure();
+			bytesToFlush = logBuffer.pollToFlush(lsn);
+			flushedLSN = logBuffer.getPolledLSN() - 1;
+
+			if ((bytesToFlush != null) && (bytesToFlush.length > 0)) {
+				write(bytesToFlush);
+				logMonitor.logFlushed(bytesToFlush.length);
+			}
+		}
+
+		// records polled by a concurrent direct flush may not be forced yet
+		syncTo(flushedLSN);
+		return flushedLSN;
 	}
 
 	@Override
-	public synchronized void flushAll() throws LogException {
-		flush(lastLSN);
+	public void flushAll() throws LogException {
+		flush(nextLSN.get() - 1);
 	}
 
 	@Override
@@ -251,7 +733,14 @@ public abstract class SimpleLog implements Log {
 			}
 		}
 
-		flushAll();
+		if (failure == null) {
+			flushAll();
+		}
+
+		if (flusher != null) {
+			flusher.terminate();
+			flusher = null;
+		}
 
 		try {
 			raf.close();
@@ -261,7 +750,11 @@ public abstract class SimpleLog implements Log {
 	}
 
 	long getRunningLSN() {
-		return nextLSN;
+		return nextLSN.get();
+	}
+
+	long getSyncedLSN() {
+		return syncedLSN;
 	}
 
 	boolean isClosed() {
@@ -269,12 +762,13 @@ public abstract class SimpleLog implements Log {
 	}
 
 	public void clear() throws LogException {
+		blockCache.clear();
 		raf.delete();
 	}
 
 	@Override
-	public synchronized long getNextLSN() {
-		return nextLSN;
+	public long getNextLSN() {
+		return nextLSN.get();
 	}
 
 	@Override
@@ -284,6 +778,9 @@ public abstract class SimpleLog implements Log {
 		}
 
 		minLSN = Math.min(raf.getLength(), minLSN);
-		raf.truncateTo(minLSN);
+
+		synchronized (syncLock) {
+			raf.truncateTo(minLSN);
+		}
 	}
 }
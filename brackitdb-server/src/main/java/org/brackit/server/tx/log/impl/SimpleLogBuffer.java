@@ -28,82 +28,115 @@
 package org.brackit.server.tx.log.impl;
 
 import java.nio.ByteBuffer;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 import org.brackit.server.tx.log.Loggable;
 
 /**
+ * Records are serialized by the appending thread into a slot keyed by their
+ * reserved LSN. Adding a record takes no lock, only polling is serialized.
+ * 
  * @author Ou Yi
  * 
  */
 public class SimpleLogBuffer implements LogBuffer {
-	private Queue<Loggable> logEntries = new LinkedList<Loggable>();
+	private static final class Slot {
+		final Loggable loggable;
+
+		final byte[] bytes;
+
+		final int checksum;
+
+		Slot(Loggable loggable, byte[] bytes, int checksum) {
+			this.loggable = loggable;
+			this.bytes = bytes;
+			this.checksum = checksum;
+		}
+	}
+
+	private final ConcurrentSkipListMap<Long, Slot> slots = new ConcurrentSkipListMap<Long, Slot>();
+
+	private final AtomicLong size = new AtomicLong();
 
 	private int maxCapacity = 1024 * 2000;
 
-	private int size = 0;
+	private volatile long polledLSN = 0;
 
-	private long lastFlushedLSN = -1;
+	@Override
+	public synchronized void reset(long lsn) {
+		slots.clear();
+		size.set(0);
+		polledLSN = lsn;
+	}
 
 	@Override
-	public synchronized boolean add(Loggable loggable) {
-		if (size + loggable.getSize() <= maxCapacity) {
-			logEntries.add(loggable);
-			size += loggable.getSize();
-			return true;
-		} else {
-			return false;
+	public boolean add(Loggable loggable) {
+		byte[] bytes = loggable.toBytes();
+
+		if (loggable.getSize() != bytes.length) {
+			throw new RuntimeException(loggable.toString());
 		}
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		slots.put(loggable.getLSN(), new Slot(loggable, bytes, (int) crc
+				.getValue()));
+		return (size.addAndGet(bytes.length) <= maxCapacity);
 	}
 
 	@Override
 	public synchronized byte[] pollToFlush(long lsn) {
-		if (lastFlushedLSN >= lsn) {
+		if (polledLSN > lsn) {
 			return null;
 		}
 
-		List<Loggable> entriesToFlush = new LinkedList<Loggable>();
+		List<Slot> slotsToFlush = new ArrayList<Slot>();
 		int byteCount = 0;
-		Loggable loggable = this.logEntries.poll();
+		long next = polledLSN;
+		Slot slot = slots.get(next);
 
-		while (loggable != null) // && Loggable.getLSN() <= lsn)
-		{
-			entriesToFlush.add(loggable);
-			byteCount += loggable.getSize() + Constants.FIELD_LENGTH_LEN;
-			lastFlushedLSN = loggable.getLSN();
+		while (slot != null) {
+			slotsToFlush.add(slot);
+			byteCount += slot.bytes.length + Constants.RECORD_HEADER_LEN;
+			next += slot.bytes.length + Constants.RECORD_HEADER_LEN;
 
-			loggable = logEntries.poll();
+			slot = slots.get(next);
 		}
 
-		ByteBuffer bb = ByteBuffer.allocate(byteCount);
+		if (slotsToFlush.isEmpty()) {
+			return null;
+		}
 
-		for (Loggable entry : entriesToFlush) {
-			byte[] bytes = entry.toBytes();
+		ByteBuffer bb = ByteBuffer.allocate(byteCount);
 
-			if (entry.getSize() != bytes.length) {
-				throw new RuntimeException(entry.toString());
-			}
+		for (Slot entry : slotsToFlush) {
+			bb.putInt(entry.bytes.length);
+			bb.putInt(entry.checksum);
+			bb.put(entry.bytes);
+		}
 
-			bb.putInt(bytes.length);
-			bb.put(bytes);
+		for (Slot entry : slotsToFlush) {
+			slots.remove(entry.loggable.getLSN());
 		}
 
-		size = 0;
+		size.addAndGet(Constants.RECORD_HEADER_LEN * slotsToFlush.size()
+				- byteCount);
+		polledLSN = next;
 		return bb.array();
 	}
 
 	@Override
-	public synchronized Loggable get(long lsn) {
-		if (lsn >= lastFlushedLSN) {
-			for (Loggable loggable : logEntries) {
-				if (loggable.getLSN() == lsn) {
-					return loggable;
-				}
-			}
-		}
+	public long getPolledLSN() {
+		return polledLSN;
+	}
 
-		return null;
+	@Override
+	public Loggable get(long lsn) {
+		Slot slot = slots.get(lsn);
+		return (slot != null) ? slot.loggable : null;
 	}
 }
@@ -30,14 +30,25 @@ package org.brackit.server.tx.log.impl.virtual;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Deque;
 
 import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.tx.log.LogException;
 import org.brackit.server.tx.log.impl.RAFLogFile;
 
 /**
+ * Segment helper for segments stored in plain files. Optionally, the helper
+ * keeps a pool of preallocated, zero-filled segment files ahead of the log
+ * tail. Truncated segments are not deleted but zero-filled again in the
+ * background and reused. Thus, a segment switch neither creates nor extends a
+ * file and the log force of a commit does not have to update file system
+ * metadata.
+ * 
  * @author Sebastian Baechle
  * 
  */
@@ -45,12 +56,30 @@ public class RAFSegmentHelper implements SegmentLogFileHelper {
 	private static final String FILENAME_FORMAT = "%s" + File.separator
 			+ "%s%012d.log";
 
+	private static final String SPARE_PREFIX = "spare.";
+
+	private static final String RECYCLED_PREFIX = "recycled.";
+
+	private static final int ZERO_FILL_CHUNK = 64 * 1024;
+
 	private static final Logger log = Logger.getLogger(RAFSegmentHelper.class);
 
 	private final String directory;
 
 	private final String basename;
 
+	private final long segmentSize;
+
+	private final int poolSize;
+
+	private final Deque<File> spares = new ArrayDeque<File>();
+
+	private final Deque<File> recycled = new ArrayDeque<File>();
+
+	private long poolFileNo;
+
+	private SegmentPreallocator preallocator;
+
 	private class FileComparator implements Comparator<File> {
 		@Override
 		public int compare(File o1, File o2) {
@@ -72,14 +101,146 @@ public class RAFSegmentHelper implements SegmentLogFileHelper {
 	}
 
 	public RAFSegmentHelper(String directory, String basename) {
+		this(directory, basename, 0, 0);
+	}
+
+	/**
+	 * @param segmentSize
+	 *            size of preallocated segments in bytes
+	 * @param poolSize
+	 *            number of preallocated segments kept ahead of the log tail
+	 */
+	public RAFSegmentHelper(String directory, String basename,
+			long segmentSize, int poolSize) {
 		this.directory = directory;
 		this.basename = basename;
+		this.segmentSize = segmentSize;
+		this.poolSize = (segmentSize > 0) ? Math.max(0, poolSize) : 0;
 	}
 
 	@Override
 	public SegmentLogFile append(long segmentNo, long segmentStart)
 			throws LogException {
-		return createSegment(buildName(segmentNo), segmentNo, segmentStart);
+		String filename = buildName(segmentNo);
+		File spare = takeSpare();
+
+		if ((spare != null) && (!spare.renameTo(new File(filename)))) {
+			log.warn(String.format("Could not reuse preallocated log segment "
+					+ "%s for %s.", spare, filename));
+			spare.delete();
+		}
+
+		return createSegment(filename, segmentNo, segmentStart);
+	}
+
+	@Override
+	public void recycle(SegmentLogFile segment) throws LogException {
+		File file = new File(buildName(segment.getSegmentNo()));
+
+		synchronized (this) {
+			if ((preallocator != null)
+					&& (spares.size() + recycled.size() < poolSize)) {
+				File target = new File(buildPoolName(RECYCLED_PREFIX,
+						poolFileNo++));
+
+				if (file.renameTo(target)) {
+					recycled.add(target);
+					preallocator.wakeup();
+					return;
+				}
+			}
+		}
+
+		segment.delete();
+	}
+
+	@Override
+	public void close() throws LogException {
+		SegmentPreallocator preallocator;
+
+		synchronized (this) {
+			preallocator = this.preallocator;
+			this.preallocator = null;
+		}
+
+		if (preallocator != null) {
+			preallocator.terminate();
+		}
+	}
+
+	private synchronized File takeSpare() {
+		File spare = spares.pollFirst();
+
+		if (preallocator != null) {
+			preallocator.wakeup();
+		}
+
+		return spare;
+	}
+
+	/**
+	 * Prepares a single preallocated segment. A recycled segment is
+	 * zero-filled again, otherwise a new one is created if the pool is not
+	 * full. Returns <code>false</code> if there is nothing to do.
+	 */
+	boolean prepareSpare() throws LogException {
+		File file;
+
+		synchronized (this) {
+			if (!recycled.isEmpty()) {
+				file = recycled.pollFirst();
+			} else if (spares.size() < poolSize) {
+				// fill new segments under a recycled name to zero-fill them
+				// again after a crash
+				file = new File(buildPoolName(RECYCLED_PREFIX, poolFileNo++));
+			} else {
+				return false;
+			}
+		}
+
+		zeroFill(file);
+		File spare = new File(buildPoolName(SPARE_PREFIX,
+				parsePoolFileNo(RECYCLED_PREFIX, file)));
+
+		if (!file.renameTo(spare)) {
+			file.delete();
+			throw new LogException("Could not rename log segment %s to %s.",
+					file, spare);
+		}
+
+		synchronized (this) {
+			spares.add(spare);
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Preallocated log segment %s.", spare));
+		}
+
+		return true;
+	}
+
+	private void zeroFill(File file) throws LogException {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+			try {
+				byte[] zeros = new byte[ZERO_FILL_CHUNK];
+				raf.setLength(segmentSize);
+				raf.seek(0);
+
+				for (long pos = 0; pos < segmentSize; pos += zeros.length) {
+					raf.write(zeros, 0, (int) Math.min(zeros.length,
+							segmentSize - pos));
+				}
+
+				raf.getFD().sync();
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			throw new LogException(e, "Could not preallocate log segment %s.",
+					file);
+		}
 	}
 
 	@Override
@@ -98,6 +259,10 @@ public class RAFSegmentHelper implements SegmentLogFileHelper {
 		File[] files = dir.listFiles(new LogFileFilter(basename));
 		SegmentLogFile tail = null;
 
+		if (poolSize > 0) {
+			openPool(dir);
+		}
+
 		if (files.length != 0) {
 			Arrays.sort(files, new FileComparator());
 
@@ -119,6 +284,34 @@ public class RAFSegmentHelper implements SegmentLogFileHelper {
 		return tail;
 	}
 
+	private synchronized void openPool(File dir) {
+		spares.clear();
+		recycled.clear();
+		poolFileNo = 0;
+
+		File[] spareFiles = dir.listFiles(new LogFileFilter(SPARE_PREFIX
+				+ basename));
+		File[] recycledFiles = dir.listFiles(new LogFileFilter(
+				RECYCLED_PREFIX + basename));
+		Arrays.sort(spareFiles, new FileComparator());
+		Arrays.sort(recycledFiles, new FileComparator());
+
+		for (File file : spareFiles) {
+			spares.add(file);
+			poolFileNo = Math.max(poolFileNo, parsePoolFileNo(SPARE_PREFIX,
+					file) + 1);
+		}
+		for (File file : recycledFiles) {
+			// zero-filling may have been interrupted
+			recycled.add(file);
+			poolFileNo = Math.max(poolFileNo, parsePoolFileNo(
+					RECYCLED_PREFIX, file) + 1);
+		}
+
+		preallocator = new SegmentPreallocator(this);
+		preallocator.start();
+	}
+
 	@Override
 	public void delete() throws LogException {
 		File logDir = new File(directory);
@@ -128,7 +321,10 @@ public class RAFSegmentHelper implements SegmentLogFileHelper {
 		}
 
 		try {
-			File[] files = logDir.listFiles(new LogFileFilter(basename));
+			File[] files = concat(logDir.listFiles(new LogFileFilter(basename)),
+					logDir.listFiles(new LogFileFilter(SPARE_PREFIX + basename)),
+					logDir.listFiles(new LogFileFilter(RECYCLED_PREFIX
+							+ basename)));
 
 			for (File file : files) {
 				if (log.isDebugEnabled()) {
@@ -190,6 +386,37 @@ public class RAFSegmentHelper implements SegmentLogFileHelper {
 		return String.format(FILENAME_FORMAT, directory, basename, segmentNo);
 	}
 
+	private String buildPoolName(String prefix, long fileNo) {
+		return String.format(FILENAME_FORMAT, directory, prefix + basename,
+				fileNo);
+	}
+
+	private long parsePoolFileNo(String prefix, File file) {
+		String name = file.getName();
+		int start = prefix.length() + basename.length();
+		int end = name.lastIndexOf('.');
+
+		try {
+			return Long.parseLong(name.substring(start, end));
+		} catch (RuntimeException e) {
+			return 0;
+		}
+	}
+
+	private File[] concat(File[]... files) {
+		int length = 0;
+		for (File[] f : files) {
+			length += f.length;
+		}
+		File[] all = new File[length];
+		int pos = 0;
+		for (File[] f : files) {
+			System.arraycopy(f, 0, all, pos, f.length);
+			pos += f.length;
+		}
+		return all;
+	}
+
 	@Override
 	public String toString() {
 		return directory + File.separator + basename + "*";
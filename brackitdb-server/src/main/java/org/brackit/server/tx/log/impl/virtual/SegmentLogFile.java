@@ -52,6 +52,12 @@ final class SegmentLogFile implements LogFile {
 
 	private long startOffset;
 
+	/**
+	 * Physical end of the written data. It may lie before the physical end of
+	 * the file if the segment was preallocated.
+	 */
+	private long end;
+
 	private SegmentLogFile previous;
 
 	private SegmentLogFile next;
@@ -77,11 +83,64 @@ final class SegmentLogFile implements LogFile {
 	}
 
 	public long getLength() throws LogException {
-		return segment.getLength() - startOffset;
+		return end - startOffset;
+	}
+
+	/**
+	 * Moves the end of the written data to the given logical position. The
+	 * physical size of the file is not changed.
+	 */
+	public void setLength(long length) throws LogException {
+		if ((length < 0) || (startOffset + length > segment.getLength())) {
+			throw new LogException(
+					"Cannot set length of segment %s to %s.", segment,
+					length);
+		}
+
+		end = startOffset + length;
+	}
+
+	/**
+	 * Returns the physical end of the written data.
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * Checks whether the segment ends with preallocated, i.e., zero-filled,
+	 * space so that the end of the written data cannot be derived from the
+	 * file size.
+	 */
+	public boolean hasZeroTail() throws LogException {
+		if (end <= startOffset) {
+			return false;
+		}
+
+		long pos = segment.getFilePointer();
+
+		try {
+			byte[] last = new byte[1];
+			segment.seek(end - 1);
+			segment.read(last);
+			return (last[0] == 0);
+		} finally {
+			segment.seek(pos);
+		}
+	}
+
+	/**
+	 * Releases preallocated space behind the written data.
+	 */
+	public void trim() throws LogException {
+		if (end < segment.getLength()) {
+			segment.setLength(end);
+		}
 	}
 
 	public void open() throws LogException {
 		segment.open();
+		end = segment.getLength();
 		segment.seekHead();
 
 		if (segment.getLength() >= HEADER_SIZE) {
@@ -114,7 +173,20 @@ final class SegmentLogFile implements LogFile {
 	}
 
 	public int read(byte[] b) throws LogException {
-		return segment.read(b);
+		long left = end - segment.getFilePointer();
+
+		if (left >= b.length) {
+			return segment.read(b);
+		}
+		if (left <= 0) {
+			return 0;
+		}
+
+		// do not read preallocated space behind the written data
+		byte[] part = new byte[(int) left];
+		int read = segment.read(part);
+		System.arraycopy(part, 0, b, 0, Math.max(0, read));
+		return read;
 	}
 
 	public int readInt() throws LogException {
@@ -123,6 +195,7 @@ final class SegmentLogFile implements LogFile {
 
 	public void writeInt(int i) throws LogException {
 		segment.writeInt(i);
+		end = Math.max(end, segment.getFilePointer());
 	}
 
 	public long readLong() throws LogException {
@@ -131,6 +204,7 @@ final class SegmentLogFile implements LogFile {
 
 	public void writeLong(long l) throws LogException {
 		segment.writeLong(l);
+		end = Math.max(end, segment.getFilePointer());
 	}
 
 	public void seek(long pos) throws LogException {
@@ -194,6 +268,7 @@ final class SegmentLogFile implements LogFile {
 
 	public void write(byte[] b) throws LogException {
 		segment.write(b);
+		end = Math.max(end, segment.getFilePointer());
 	}
 
 	public long getSegmentStart() {
@@ -210,6 +285,7 @@ final class SegmentLogFile implements LogFile {
 		this.segmentNo = segmentNo;
 		this.segmentStart = segmentStart;
 		this.startOffset = HEADER_SIZE;
+		this.end = HEADER_SIZE;
 		segment.sync();
 	}
 
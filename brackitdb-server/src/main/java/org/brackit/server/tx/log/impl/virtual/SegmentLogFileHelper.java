@@ -39,5 +39,16 @@ public interface SegmentLogFileHelper {
 	SegmentLogFile append(long segmentNo, long segmentStart)
 			throws LogException;
 
+	/**
+	 * Takes back a closed segment which is not needed anymore. The helper may
+	 * reuse the file for a later segment or delete it.
+	 */
+	void recycle(SegmentLogFile segment) throws LogException;
+
+	/**
+	 * Releases all resources held for the opened log.
+	 */
+	void close() throws LogException;
+
 	void delete() throws LogException;
 }
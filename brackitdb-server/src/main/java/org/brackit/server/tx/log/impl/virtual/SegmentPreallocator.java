@@ -0,0 +1,104 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.log.impl.virtual;
+
+import org.brackit.xquery.util.log.Logger;
+import org.brackit.server.tx.log.LogException;
+
+/**
+ * Background thread that keeps the pool of preallocated log segments of a
+ * {@link RAFSegmentHelper} filled.
+ */
+class SegmentPreallocator extends Thread {
+	private static final Logger log = Logger
+			.getLogger(SegmentPreallocator.class);
+
+	private static final long RETRY_INTERVAL = 1000;
+
+	private final RAFSegmentHelper helper;
+
+	private volatile boolean active;
+
+	private boolean signaled;
+
+	SegmentPreallocator(RAFSegmentHelper helper) {
+		setName("LogSegmentPreallocator");
+
+		this.helper = helper;
+		this.active = true;
+
+		setDaemon(true);
+	}
+
+	@Override
+	public void run() {
+		while (active) {
+			try {
+				if (helper.prepareSpare()) {
+					continue;
+				}
+
+				synchronized (this) {
+					while ((active) && (!signaled)) {
+						wait();
+					}
+					signaled = false;
+				}
+			} catch (LogException e) {
+				log.error("Preallocation of log segment failed.", e);
+
+				try {
+					synchronized (this) {
+						if (active) {
+							wait(RETRY_INTERVAL);
+						}
+					}
+				} catch (InterruptedException e1) {
+					// check state
+				}
+			} catch (InterruptedException e) {
+				// check state
+			}
+		}
+	}
+
+	synchronized void wakeup() {
+		signaled = true;
+		notifyAll();
+	}
+
+	public void terminate() {
+		active = false;
+		wakeup();
+
+		try {
+			join();
+		} catch (InterruptedException e) {
+		}
+	}
+}
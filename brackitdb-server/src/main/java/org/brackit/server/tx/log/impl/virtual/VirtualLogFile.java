@@ -37,7 +37,9 @@ import org.brackit.server.util.Calc;
  * consisting of multiple log files, e.g., on the file system. Log file
  * switching/rotating is therefore transparent to the caller. The virtual log
  * file supports truncation from the beginning, i.e., parts of the physical
- * files can so be removed, but not accessed anymore.
+ * files can so be removed, but not accessed anymore. Truncated segments are
+ * handed back to the segment helper, which may recycle them as preallocated
+ * segments for the tail of the log.
  * 
  * @author Sebastian Baechle
  * 
@@ -84,6 +86,8 @@ public final class VirtualLogFile implements LogFile {
 		checkOpen();
 
 		try {
+			tail.trim();
+
 			for (SegmentLogFile segment = tail; segment != null; segment = segment
 					.getPrevious()) {
 				segment.close();
@@ -91,6 +95,7 @@ public final class VirtualLogFile implements LogFile {
 		} finally {
 			current = null;
 			tail = null;
+			helper.close();
 		}
 	}
 
@@ -118,6 +123,39 @@ public final class VirtualLogFile implements LogFile {
 		return tail.getSegmentStart() + tail.getLength();
 	}
 
+	/**
+	 * Sets the end of the log to the given position. Segments behind this
+	 * position are released.
+	 */
+	@Override
+	public void setLength(long length) throws LogException {
+		checkOpen();
+
+		while ((length < tail.getSegmentStart()) && (tail.getPrevious() != null)) {
+			SegmentLogFile obsolete = tail;
+			tail = tail.getPrevious();
+			tail.setNext(null);
+			obsolete.close();
+			helper.recycle(obsolete);
+		}
+
+		tail.setLength(Math.max(0, length - tail.getSegmentStart()));
+		current = tail;
+		current.seek(tail.getLength());
+	}
+
+	/**
+	 * Checks whether the last segment ends with zero-filled space. In this
+	 * case, the segment was preallocated and the log was not closed properly,
+	 * so that the caller has to determine the end of the log and to set it
+	 * with {@link #setLength(long)}.
+	 */
+	public boolean hasZeroTail() throws LogException {
+		checkOpen();
+
+		return tail.hasZeroTail();
+	}
+
 	@Override
 	public int read(byte[] b) throws LogException {
 		checkOpen();
@@ -245,7 +283,7 @@ public final class VirtualLogFile implements LogFile {
 				for (SegmentLogFile oldSegment = candidate.getPrevious(); oldSegment != null; oldSegment = oldSegment
 						.getPrevious()) {
 					oldSegment.close();
-					oldSegment.delete();
+					helper.recycle(oldSegment);
 					oldSegment.getNext().setPrevious(null);
 				}
 
@@ -261,8 +299,8 @@ public final class VirtualLogFile implements LogFile {
 		checkOpen();
 
 		while (true) {
-			int leftInSegment = (int) (segmentSize - current.getSegment()
-					.getLength());
+			int leftInSegment = (int) Math.max(0, segmentSize
+					- current.getEnd());
 
 			if (current != tail) {
 				throw new LogException(
@@ -296,8 +334,8 @@ public final class VirtualLogFile implements LogFile {
 	public void writeInt(int i) throws LogException {
 		checkOpen();
 
-		int leftInSegment = (int) (segmentSize - current.getSegment()
-				.getLength());
+		int leftInSegment = (int) Math.max(0, segmentSize
+				- current.getEnd());
 
 		if (current != tail) {
 			throw new LogException(
@@ -315,8 +353,8 @@ public final class VirtualLogFile implements LogFile {
 	public void writeLong(long l) throws LogException {
 		checkOpen();
 
-		int leftInSegment = (int) (segmentSize - current.getSegment()
-				.getLength());
+		int leftInSegment = (int) Math.max(0, segmentSize
+				- current.getEnd());
 
 		if (current != tail) {
 			throw new LogException(
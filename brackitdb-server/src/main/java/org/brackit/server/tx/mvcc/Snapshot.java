@@ -0,0 +1,173 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.mvcc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.brackit.server.io.buffer.Handle;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.tx.TxException;
+import org.brackit.server.tx.mvcc.VersionStore.Version;
+import org.brackit.server.tx.mvcc.VersionStore.Writer;
+
+/**
+ * The committed state of the database as of the begin of a snapshot
+ * transaction.
+ */
+public class Snapshot {
+	private final VersionStore store;
+
+	final long ts;
+
+	/**
+	 * Visibility never changes once decided: writers still running when it
+	 * is decided will finish with a larger timestamp.
+	 */
+	private final Map<Writer, Boolean> visibility = new HashMap<Writer, Boolean>();
+
+	Snapshot(VersionStore store, long ts) {
+		this.store = store;
+		this.ts = ts;
+	}
+
+	/**
+	 * Returns a private copy of the page as seen by this snapshot or
+	 * <code>null</code> if the current page is visible. The caller must hold
+	 * a shared latch on the current page.
+	 */
+	public Handle getVersion(PageID pageID) throws TxException {
+		Version version = store.lookup(this, pageID);
+
+		if (version == null) {
+			return null;
+		}
+
+		if (version.image == null) {
+			throw new TxException("Page %s does not exist in snapshot %s.",
+					pageID, ts);
+		}
+
+		return new VersionHandle(pageID, version.image);
+	}
+
+	public void close() {
+		store.close(this);
+	}
+
+	/**
+	 * Called by the version store with its monitor held.
+	 */
+	boolean isVisible(Writer writer) {
+		if (writer.stable) {
+			return true;
+		}
+
+		Boolean visible = visibility.get(writer);
+
+		if (visible != null) {
+			return visible;
+		}
+
+		// collect all undecided writers the given one depends on
+		Map<Writer, Boolean> candidates = new HashMap<Writer, Boolean>();
+		List<Writer> pending = new ArrayList<Writer>();
+		pending.add(writer);
+		candidates.put(writer, isCommitted(writer));
+
+		for (int i = 0; i < pending.size(); i++) {
+			List<Writer> dependencies = pending.get(i).dependencies;
+
+			if (dependencies == null) {
+				continue;
+			}
+
+			for (Writer dependency : dependencies) {
+				if ((!dependency.stable)
+						&& (!visibility.containsKey(dependency))
+						&& (!candidates.containsKey(dependency))) {
+					candidates.put(dependency, isCommitted(dependency));
+					pending.add(dependency);
+				}
+			}
+		}
+
+		// a writer is only visible if all its dependencies are
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+
+			for (Writer candidate : pending) {
+				if ((candidates.get(candidate))
+						&& (!dependenciesVisible(candidate, candidates))) {
+					candidates.put(candidate, Boolean.FALSE);
+					changed = true;
+				}
+			}
+		}
+
+		visibility.putAll(candidates);
+		return candidates.get(writer);
+	}
+
+	private boolean isCommitted(Writer writer) {
+		return ((writer.commitTS != 0) && (writer.commitTS <= ts));
+	}
+
+	private boolean dependenciesVisible(Writer writer,
+			Map<Writer, Boolean> candidates) {
+		if (writer.dependencies == null) {
+			return true;
+		}
+
+		for (Writer dependency : writer.dependencies) {
+			if (dependency.stable) {
+				continue;
+			}
+
+			Boolean visible = visibility.get(dependency);
+
+			if (visible == null) {
+				visible = candidates.get(dependency);
+			}
+
+			if (!visible) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Snapshot(ts=%s)", ts);
+	}
+}
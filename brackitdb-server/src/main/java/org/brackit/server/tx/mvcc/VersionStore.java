@@ -0,0 +1,295 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.mvcc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.brackit.server.io.buffer.Handle;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxID;
+import org.brackit.xquery.util.log.Logger;
+
+/**
+ * Keeps before-images of pages that were modified by running or recently
+ * finished transactions. A writer deposits the image of a page when it
+ * latches the page exclusively for the first time after another transaction.
+ * The images of a page form a chain in modification order.
+ * <p>
+ * A {@link Snapshot} reads a page as the before-image of the first chain entry
+ * whose writer is not visible to it. A writer that modifies a page after
+ * another transaction depends on that transaction, i.e., it only becomes
+ * visible together with it. This keeps the visible part of every chain a
+ * prefix and makes the set of visible transactions consistent across pages.
+ * A snapshot may therefore miss a transaction that finished before it began,
+ * if that transaction followed a writer that was still running, but it never
+ * sees a transaction only partially.
+ * <p>
+ * Images are dropped as soon as their writer is visible to all active and all
+ * future snapshots.
+ */
+public class VersionStore {
+	private static final Logger log = Logger.getLogger(VersionStore.class);
+
+	static final class Writer {
+		final TxID txID;
+
+		final List<PageID> pages = new ArrayList<PageID>(4);
+
+		List<Writer> dependencies;
+
+		long commitTS;
+
+		boolean stable;
+
+		Writer(TxID txID) {
+			this.txID = txID;
+		}
+
+		void dependsOn(Writer writer) {
+			if (dependencies == null) {
+				dependencies = new ArrayList<Writer>(2);
+			} else if (dependencies.contains(writer)) {
+				return;
+			}
+			dependencies.add(writer);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s(commitTS=%s)", txID, commitTS);
+		}
+	}
+
+	static final class Version {
+		final Writer writer;
+
+		/**
+		 * <code>null</code> if the page was allocated by the writer.
+		 */
+		final byte[] image;
+
+		Version(Writer writer, byte[] image) {
+			this.writer = writer;
+			this.image = image;
+		}
+	}
+
+	private final Map<TxID, Writer> writers = new HashMap<TxID, Writer>();
+
+	private final Map<PageID, List<Version>> versions = new HashMap<PageID, List<Version>>();
+
+	private final List<Writer> finished = new ArrayList<Writer>();
+
+	private final List<Snapshot> snapshots = new ArrayList<Snapshot>();
+
+	private long clock;
+
+	public synchronized Snapshot openSnapshot() {
+		Snapshot snapshot = new Snapshot(this, clock);
+		snapshots.add(snapshot);
+		return snapshot;
+	}
+
+	synchronized void close(Snapshot snapshot) {
+		if (snapshots.remove(snapshot)) {
+			collect();
+		}
+	}
+
+	/**
+	 * Must be called by a writer after it latched a page exclusively and
+	 * before it modifies it.
+	 */
+	public void beforeUpdate(Tx tx, Handle handle) {
+		PageID pageID = handle.getPageID();
+
+		synchronized (this) {
+			List<Version> chain = versions.get(pageID);
+
+			if ((chain != null)
+					&& (chain.get(chain.size() - 1).writer.txID.equals(tx
+							.getID()))) {
+				return;
+			}
+		}
+
+		// the exclusive latch keeps the page stable while we copy it
+		byte[] image = new byte[handle.page.length];
+		System.arraycopy(handle.page, 0, image, 0, image.length);
+		add(tx, pageID, image);
+	}
+
+	/**
+	 * Must be called by a writer after it allocated a new page.
+	 */
+	public void allocated(Tx tx, Handle handle) {
+		add(tx, handle.getPageID(), null);
+	}
+
+	private synchronized void add(Tx tx, PageID pageID, byte[] image) {
+		Writer writer = writers.get(tx.getID());
+
+		if (writer == null) {
+			writer = new Writer(tx.getID());
+			writers.put(tx.getID(), writer);
+		}
+
+		List<Version> chain = versions.get(pageID);
+
+		if (chain == null) {
+			chain = new ArrayList<Version>(2);
+			versions.put(pageID, chain);
+		} else {
+			Writer last = chain.get(chain.size() - 1).writer;
+
+			if (last == writer) {
+				return;
+			}
+			if (!last.stable) {
+				writer.dependsOn(last);
+			}
+		}
+
+		chain.add(new Version(writer, image));
+		writer.pages.add(pageID);
+	}
+
+	/**
+	 * Must be called at the end of every transaction after its changes are
+	 * either durable or completely undone.
+	 */
+	public synchronized void finish(Tx tx) {
+		Writer writer = writers.remove(tx.getID());
+
+		if (writer == null) {
+			return;
+		}
+
+		writer.commitTS = ++clock;
+		finished.add(writer);
+		collect();
+	}
+
+	synchronized Version lookup(Snapshot snapshot, PageID pageID) {
+		List<Version> chain = versions.get(pageID);
+
+		if (chain == null) {
+			return null;
+		}
+
+		for (Version version : chain) {
+			if (!snapshot.isVisible(version.writer)) {
+				return version;
+			}
+		}
+
+		return null;
+	}
+
+	synchronized int versionedPages() {
+		return versions.size();
+	}
+
+	private void collect() {
+		long horizon = Long.MAX_VALUE;
+
+		for (Snapshot snapshot : snapshots) {
+			horizon = Math.min(horizon, snapshot.ts);
+		}
+
+		List<Writer> stable = new ArrayList<Writer>();
+
+		for (Writer writer : finished) {
+			if (writer.commitTS <= horizon) {
+				writer.stable = true;
+				stable.add(writer);
+			}
+		}
+
+		// a writer is only stable if all its dependencies are
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+
+			for (Iterator<Writer> it = stable.iterator(); it.hasNext();) {
+				Writer writer = it.next();
+
+				if (writer.dependencies != null) {
+					for (Writer dependency : writer.dependencies) {
+						if (!dependency.stable) {
+							writer.stable = false;
+							it.remove();
+							changed = true;
+							break;
+						}
+					}
+				}
+			}
+		}
+
+		if (stable.isEmpty()) {
+			return;
+		}
+
+		finished.removeAll(stable);
+
+		for (Writer writer : stable) {
+			writer.dependencies = null;
+
+			for (PageID pageID : writer.pages) {
+				List<Version> chain = versions.get(pageID);
+
+				if (chain == null) {
+					continue;
+				}
+
+				int trim = 0;
+				while ((trim < chain.size()) && (chain.get(trim).writer.stable)) {
+					trim++;
+				}
+
+				if (trim == chain.size()) {
+					versions.remove(pageID);
+				} else {
+					chain.subList(0, trim).clear();
+				}
+			}
+		}
+
+		if (log.isTraceEnabled()) {
+			log.trace(String.format("Collected versions of %s writers. "
+					+ "%s pages still versioned.", stable.size(), versions
+					.size()));
+		}
+	}
+}
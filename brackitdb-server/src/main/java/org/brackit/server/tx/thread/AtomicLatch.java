@@ -0,0 +1,440 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.thread;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Non-blocking implementation of the S/U/X latch semantics of
+ * {@link SyncLatch}. The complete latch state is kept in a single integer,
+ * which is modified with CAS. Uncontended requests never enter a monitor.
+ * Contended requests spin briefly and then park in a FIFO queue, which is
+ * allocated lazily on first contention.
+ * <p>
+ * A release does not wake all waiters but only those queued up to the first
+ * waiting writer (X or U). To avoid writer starvation, readers defer to
+ * waiting writers. Because shared latches may be acquired recursively by the
+ * same thread, which we cannot detect cheaply, a reader defers only for a
+ * bounded time and then competes again for the latch as usual. Conditional
+ * requests never defer.
+ * </p>
+ * <p>
+ * Like in {@link SyncLatch}, an update latch is compatible with existing
+ * shared latches but blocks new ones, so that a subsequent {@link #upX()}
+ * only waits until the current readers have left.
+ * </p>
+ * <p>
+ * Additionally, the latch maintains a version counter, which is incremented
+ * whenever an exclusive latch is acquired and released. It allows readers to
+ * access the protected resource without latching it at all and to validate
+ * afterwards with {@link #validate(int)} that no writer interfered.
+ * </p>
+ */
+public class AtomicLatch implements Latch {
+	private static final boolean DEBUG = false;
+
+	private static final int SPINS = (Runtime.getRuntime()
+			.availableProcessors() > 1) ? 64 : 0;
+
+	private static final long READER_DEFER_NANOS = 1000000L;
+
+	private static final int X_BIT = 1 << 30;
+
+	private static final int U_BIT = 1 << 29;
+
+	private static final int S_MASK = U_BIT - 1;
+
+	private static final AtomicIntegerFieldUpdater<AtomicLatch> STATE = AtomicIntegerFieldUpdater
+			.newUpdater(AtomicLatch.class, "state");
+
+	private static final AtomicIntegerFieldUpdater<AtomicLatch> WRITERS = AtomicIntegerFieldUpdater
+			.newUpdater(AtomicLatch.class, "writers");
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<AtomicLatch, ConcurrentLinkedQueue> QUEUE = AtomicReferenceFieldUpdater
+			.newUpdater(AtomicLatch.class, ConcurrentLinkedQueue.class,
+					"queue");
+
+	private static final class Waiter {
+		final Thread thread;
+
+		final int mode;
+
+		Waiter(Thread thread, int mode) {
+			this.thread = thread;
+			this.mode = mode;
+		}
+	}
+
+	// X bit, U bit and number of shared holders
+	private volatile int state;
+
+	// number of queued X and U requests
+	private volatile int writers;
+
+	// odd while latched exclusively; only modified by the X holder
+	private volatile int version;
+
+	private volatile Thread updateOwner;
+
+	private volatile Thread upgrader;
+
+	private volatile ConcurrentLinkedQueue<Waiter> queue;
+
+	// contention counters, only maintained if DEBUG is enabled
+	private int contended;
+
+	private int parked;
+
+	@Override
+	public final void latchS() {
+		latch(MODE_S);
+	}
+
+	@Override
+	public final void latchSI() {
+		latch(MODE_S);
+		unlatch();
+	}
+
+	@Override
+	public final void latchU() {
+		latch(MODE_U);
+	}
+
+	@Override
+	public final void latchX() {
+		latch(MODE_X);
+	}
+
+	@Override
+	public final boolean latchSC() {
+		return tryLatch(MODE_S, false);
+	}
+
+	@Override
+	public final boolean latchUC() {
+		return tryLatch(MODE_U, false);
+	}
+
+	@Override
+	public final boolean latchXC() {
+		return tryLatch(MODE_X, false);
+	}
+
+	@Override
+	public final void upX() {
+		if ((state & U_BIT) == 0) {
+			throw new IllegalStateException(info());
+		}
+
+		// the update latch blocks new readers,
+		// so we only have to wait until the current ones leave
+		for (int i = 0; i < SPINS; i++) {
+			if (STATE.compareAndSet(this, U_BIT, X_BIT)) {
+				version++;
+				updateOwner = null;
+				return;
+			}
+		}
+
+		if (DEBUG) {
+			contended++;
+		}
+
+		upgrader = Thread.currentThread();
+		try {
+			while (!STATE.compareAndSet(this, U_BIT, X_BIT)) {
+				if (DEBUG) {
+					parked++;
+				}
+				LockSupport.park(this);
+			}
+		} finally {
+			upgrader = null;
+		}
+		version++;
+		updateOwner = null;
+	}
+
+	@Override
+	public final void downS() {
+		for (;;) {
+			int s = state;
+			int n;
+
+			if ((s & X_BIT) != 0) {
+				// nobody else can change the state while we hold X
+				version++;
+				n = 1;
+			} else if ((s & U_BIT) != 0) {
+				n = (s & ~U_BIT) + 1;
+			} else {
+				throw new IllegalStateException(info());
+			}
+
+			if (STATE.compareAndSet(this, s, n)) {
+				break;
+			}
+		}
+
+		updateOwner = null;
+		signal();
+	}
+
+	@Override
+	public final void unlatch() {
+		int s;
+		int n;
+
+		for (;;) {
+			s = state;
+
+			if ((s & X_BIT) != 0) {
+				// nobody else can change the state while we hold X
+				version++;
+				n = 0;
+			} else if (((s & U_BIT) != 0)
+					&& (((s & S_MASK) == 0) || (updateOwner == Thread
+							.currentThread()))) {
+				n = s & ~U_BIT;
+			} else if ((s & S_MASK) != 0) {
+				n = s - 1;
+			} else {
+				throw new IllegalStateException(info());
+			}
+
+			if (STATE.compareAndSet(this, s, n)) {
+				break;
+			}
+		}
+
+		if (((s & U_BIT) != 0) && ((n & U_BIT) == 0)) {
+			updateOwner = null;
+		}
+
+		if (n == U_BIT) {
+			// last reader left a pending upgrade
+			Thread up = upgrader;
+			if (up != null) {
+				LockSupport.unpark(up);
+			}
+		} else if ((n == 0) || ((s & (X_BIT | U_BIT)) != (n & (X_BIT | U_BIT)))) {
+			signal();
+		}
+	}
+
+	/**
+	 * Returns a version stamp for an optimistic read of the protected resource
+	 * or <code>-1</code> if it is currently latched exclusively.
+	 */
+	public final int readVersion() {
+		int v = version;
+		return (((v & 1) != 0) || ((state & X_BIT) != 0)) ? -1 : v;
+	}
+
+	/**
+	 * Checks whether the protected resource was not latched exclusively since
+	 * the given version stamp was taken.
+	 */
+	public final boolean validate(int stamp) {
+		return ((stamp != -1) && (version == stamp));
+	}
+
+	@Override
+	public final boolean isLatchedS() {
+		return (state != 0);
+	}
+
+	@Override
+	public final boolean isLatchedU() {
+		return ((state & U_BIT) != 0);
+	}
+
+	@Override
+	public final boolean isLatchedX() {
+		return ((state & X_BIT) != 0);
+	}
+
+	@Override
+	public final int getMode() {
+		int s = state;
+
+		if ((s & X_BIT) != 0) {
+			return MODE_X;
+		} else if ((s & U_BIT) != 0) {
+			return MODE_U;
+		} else if (s != 0) {
+			return MODE_S;
+		}
+		return MODE_NONE;
+	}
+
+	@Override
+	public final String info() {
+		int s = state;
+		int count = (s & S_MASK) + (((s & (X_BIT | U_BIT)) != 0) ? 1 : 0);
+
+		if (DEBUG) {
+			return String.format("mode=%s count=%s contended=%s parked=%s",
+					getMode(), count, contended, parked);
+		}
+		return String.format("mode=%s count=%s", getMode(), count);
+	}
+
+	private boolean tryLatch(int mode, boolean deferToWriters) {
+		for (;;) {
+			int s = state;
+			int n;
+
+			if (mode == MODE_S) {
+				if (((s & (X_BIT | U_BIT)) != 0)
+						|| ((deferToWriters) && (writers > 0))) {
+					return false;
+				}
+				n = s + 1;
+			} else if (mode == MODE_U) {
+				if ((s & (X_BIT | U_BIT)) != 0) {
+					return false;
+				}
+				n = s | U_BIT;
+			} else {
+				if (s != 0) {
+					return false;
+				}
+				n = X_BIT;
+			}
+
+			if (STATE.compareAndSet(this, s, n)) {
+				if (mode == MODE_U) {
+					updateOwner = Thread.currentThread();
+				} else if (mode == MODE_X) {
+					version++;
+				}
+				return true;
+			}
+		}
+	}
+
+	private void latch(int mode) {
+		boolean defer = (mode == MODE_S);
+
+		if (tryLatch(mode, defer)) {
+			return;
+		}
+
+		for (int i = 0; i < SPINS; i++) {
+			if (tryLatch(mode, defer)) {
+				return;
+			}
+		}
+
+		if (DEBUG) {
+			contended++;
+		}
+
+		await(mode);
+	}
+
+	private void await(int mode) {
+		boolean writer = (mode != MODE_S);
+		long deadline = System.nanoTime() + READER_DEFER_NANOS;
+		Waiter waiter = new Waiter(Thread.currentThread(), mode);
+		ConcurrentLinkedQueue<Waiter> q = queue();
+
+		if (writer) {
+			WRITERS.incrementAndGet(this);
+		}
+
+		// enqueue before the final check to avoid lost wakeups
+		q.add(waiter);
+
+		try {
+			for (;;) {
+				long remaining = (writer) ? 0 : deadline - System.nanoTime();
+				boolean defer = (remaining > 0);
+
+				if (tryLatch(mode, defer)) {
+					return;
+				}
+
+				if (DEBUG) {
+					parked++;
+				}
+
+				if (defer) {
+					LockSupport.parkNanos(this, remaining);
+				} else {
+					LockSupport.park(this);
+				}
+			}
+		} finally {
+			q.remove(waiter);
+
+			if (writer) {
+				WRITERS.decrementAndGet(this);
+			}
+		}
+	}
+
+	/**
+	 * Wakes up the waiters in queue order up to and including the first
+	 * writer. Waiters behind the first writer stay parked until it has been
+	 * served.
+	 */
+	private void signal() {
+		ConcurrentLinkedQueue<Waiter> q = queue;
+
+		if (q == null) {
+			return;
+		}
+
+		for (Waiter w : q) {
+			LockSupport.unpark(w.thread);
+
+			if (w.mode != MODE_S) {
+				return;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private ConcurrentLinkedQueue<Waiter> queue() {
+		ConcurrentLinkedQueue<Waiter> q = queue;
+
+		if (q == null) {
+			QUEUE.compareAndSet(this, null, new ConcurrentLinkedQueue<Waiter>());
+			q = queue;
+		}
+
+		return q;
+	}
+}
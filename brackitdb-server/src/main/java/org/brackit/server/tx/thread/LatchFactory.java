@@ -34,6 +34,6 @@ package org.brackit.server.tx.thread;
  */
 public class LatchFactory {
 	public static Latch create() {
-		return new SyncLatch();
+		return new AtomicLatch();
 	}
 }
@@ -27,141 +27,189 @@
  */
 package org.brackit.server.tx.thread;
 
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
+ * Blocking latch guarded by a {@link ReentrantLock}. Waiters are parked on a
+ * {@link Condition}, i.e., a blocked virtual thread releases its carrier.
  * 
  * @author Sebastian Baechle
  * 
  */
 public class SyncLatch implements Latch {
 
+	private final ReentrantLock mutex = new ReentrantLock();
+
+	private final Condition released = mutex.newCondition();
+
 	private int mode;
 	private int count;
 
 	@Override
-	public final synchronized void downS() {
-		if ((mode != MODE_U) && (mode != MODE_X)) {
-			throw new IllegalStateException(info());
-		}
+	public final void downS() {
+		mutex.lock();
+		try {
+			if ((mode != MODE_U) && (mode != MODE_X)) {
+				throw new IllegalStateException(info());
+			}
 
-		mode = MODE_S;
-		notifyAll();
+			mode = MODE_S;
+			released.signalAll();
+		} finally {
+			mutex.unlock();
+		}
 	}
 
 	@Override
-	public final synchronized String info() {
-		return String.format("mode=%s count=%s", mode, count);
+	public final String info() {
+		mutex.lock();
+		try {
+			return String.format("mode=%s count=%s", mode, count);
+		} finally {
+			mutex.unlock();
+		}
 	}
 
-	public final synchronized boolean isLatchedS() {
-		return (mode > MODE_NONE);
+	public final boolean isLatchedS() {
+		return (getMode() > MODE_NONE);
 	}
 
-	public final synchronized boolean isLatchedU() {
-		return (mode == MODE_U);
+	public final boolean isLatchedU() {
+		return (getMode() == MODE_U);
 	}
 
-	public final synchronized boolean isLatchedX() {
-		return (mode == MODE_X);
+	public final boolean isLatchedX() {
+		return (getMode() == MODE_X);
 	}
 
 	@Override
-	public final synchronized void latchX() {
-		while (!latchXC()) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
+	public final void latchX() {
+		mutex.lock();
+		try {
+			while (!latchXC()) {
+				released.awaitUninterruptibly();
 			}
+		} finally {
+			mutex.unlock();
 		}
 	}
 
 	@Override
-	public final synchronized boolean latchXC() {
-
-		if (mode == MODE_NONE) {
-			count++;
-			mode = MODE_X;
-
-			return true;
-		} else {
-			return false;
+	public final boolean latchXC() {
+		mutex.lock();
+		try {
+			if (mode == MODE_NONE) {
+				count++;
+				mode = MODE_X;
+
+				return true;
+			} else {
+				return false;
+			}
+		} finally {
+			mutex.unlock();
 		}
 	}
 
 	@Override
-	public final synchronized void latchS() {
-		while (!latchSC()) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
+	public final void latchS() {
+		mutex.lock();
+		try {
+			while (!latchSC()) {
+				released.awaitUninterruptibly();
 			}
+		} finally {
+			mutex.unlock();
 		}
 	}
 
 	@Override
-	public final synchronized boolean latchSC() {
-
-		if (mode <= MODE_S) {
-			count++;
-			mode = MODE_S;
-
-			return true;
-		} else {
-			return false;
+	public final boolean latchSC() {
+		mutex.lock();
+		try {
+			if (mode <= MODE_S) {
+				count++;
+				mode = MODE_S;
+
+				return true;
+			} else {
+				return false;
+			}
+		} finally {
+			mutex.unlock();
 		}
 	}
 
 	@Override
-	public final synchronized void latchSI() {
-		latchS();
-		unlatch();
+	public final void latchSI() {
+		mutex.lock();
+		try {
+			latchS();
+			unlatch();
+		} finally {
+			mutex.unlock();
+		}
 	}
 
 	@Override
-	public final synchronized void latchU() {
-		while (!latchUC()) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
+	public final void latchU() {
+		mutex.lock();
+		try {
+			while (!latchUC()) {
+				released.awaitUninterruptibly();
 			}
+		} finally {
+			mutex.unlock();
 		}
 	}
 
 	@Override
-	public final synchronized boolean latchUC() {
-
-		if (mode <= MODE_S) {
-			count++;
-			mode = MODE_U;
-
-			return true;
-		} else {
-			return false;
+	public final boolean latchUC() {
+		mutex.lock();
+		try {
+			if (mode <= MODE_S) {
+				count++;
+				mode = MODE_U;
+
+				return true;
+			} else {
+				return false;
+			}
+		} finally {
+			mutex.unlock();
 		}
-
 	}
 
 	@Override
-	public final synchronized void unlatch() {
-		if ((count == 0) || (mode == MODE_NONE)) {
-			throw new IllegalStateException(info());
-		}
+	public final void unlatch() {
+		mutex.lock();
+		try {
+			if ((count == 0) || (mode == MODE_NONE)) {
+				throw new IllegalStateException(info());
+			}
 
-		count--;
+			count--;
 
-		if (count == 0) {
-			mode = MODE_NONE;
-		}
+			if (count == 0) {
+				mode = MODE_NONE;
+			}
 
-		notifyAll();
+			released.signalAll();
+		} finally {
+			mutex.unlock();
+		}
 	}
 
 	@Override
-	public final synchronized void upX() {
-		while (!upgradeLatchExclusiveConditional()) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
+	public final void upX() {
+		mutex.lock();
+		try {
+			while (!upgradeLatchExclusiveConditional()) {
+				released.awaitUninterruptibly();
 			}
+		} finally {
+			mutex.unlock();
 		}
 	}
 
@@ -179,7 +227,12 @@ public class SyncLatch implements Latch {
 		}
 	}
 
-	public final synchronized int getMode() {
-		return mode;
+	public final int getMode() {
+		mutex.lock();
+		try {
+			return mode;
+		} finally {
+			mutex.unlock();
+		}
 	}
 }
@@ -30,23 +30,27 @@ package org.brackit.server.tx.thread;
 import java.util.HashMap;
 import java.util.Random;
 
-import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.io.buffer.PageID;
 
+/**
+ * Control block of a task, i.e., a session or a job, that accesses the
+ * store. A control block is created lazily for the current thread unless the
+ * task brings its own one with {@link #bind(ThreadCB)}. This keeps control
+ * blocks per task and not per (carrier) thread, and it keeps them cheap
+ * enough to have thousands of mostly idle tasks: the debug bookkeeping of
+ * fixes and latches is only allocated when used.
+ */
 public final class ThreadCB {
-	private final static String LOG_PATH = "/media/ramdisk/";
-
-	public final Logger log;
 
-	public final Thread thread;
-
-	public final Random random;
+	public Thread thread;
 
 	public Thread supervisor;
 
-	private HashMap<PageID, Integer> myFixes = new HashMap<PageID, Integer>(64);
+	private Random random;
+
+	private HashMap<PageID, Integer> myFixes;
 
-	private HashMap<Latch, Integer> myLatches = new HashMap<Latch, Integer>(64);
+	private HashMap<Latch, Integer> myLatches;
 
 	public final int id;
 
@@ -60,43 +64,84 @@ public final class ThreadCB {
 
 	private int pageHintHits;
 
+	private int bulkRead;
+
 	public ThreadCB waiting = null;
 
-	private static ThreadLocal<ThreadCB> controlBlock = new ThreadLocal<ThreadCB>() {
-		@Override
-		protected ThreadCB initialValue() {
-			return new ThreadCB();
-		}
-	};
+	private static final ThreadLocal<ThreadCB> controlBlock = new ThreadLocal<ThreadCB>();
 
 	private ThreadCB() {
 		id = IDAssigner.counter.getAndIncrement();
 		thread = Thread.currentThread();
-		random = new Random();
-		log = Logger.getLogger(thread.getName());
-		// try
-		// {
-		// //FileAppender fileAppender = new FileAppender(new
-		// PatternLayout("%d [%l] %-5p %c{1} - %m%n"), LOG_PATH +
-		// thread.getName() + ".log", false);
-		// FileAppender fileAppender = new FileAppender(new
-		// PatternLayout("%d [%t] %-5p %c{1} - %m%n"), LOG_PATH +
-		// thread.getName() + ".log", false);
-		// log.setLevel(Level.TRACE);
-		// log.addAppender(fileAppender);
-		// }
-		// catch (IOException e)
-		// {
-		// log.error(e);
-		// }
+	}
+
+	/**
+	 * Creates a new control block for a task. It must be bound to the
+	 * executing thread with {@link #bind(ThreadCB)}.
+	 */
+	public static ThreadCB create() {
+		return new ThreadCB();
+	}
+
+	/**
+	 * Binds the given control block to the current thread and returns the
+	 * previously bound one, which must be restored with another call to
+	 * {@link #bind(ThreadCB)} when the task yields the thread.
+	 */
+	public static ThreadCB bind(ThreadCB cb) {
+		ThreadCB previous = controlBlock.get();
+
+		if (cb != null) {
+			cb.thread = Thread.currentThread();
+			controlBlock.set(cb);
+		} else {
+			controlBlock.remove();
+		}
+
+		return previous;
 	}
 
 	public final static ThreadCB get() {
-		return controlBlock.get();
+		ThreadCB cb = controlBlock.get();
+
+		if (cb == null) {
+			cb = new ThreadCB();
+			controlBlock.set(cb);
+		}
+
+		return cb;
+	}
+
+	public Random random() {
+		if (random == null) {
+			random = new Random();
+		}
+
+		return random;
+	}
+
+	/**
+	 * Marks the beginning of a large scan of this thread. Calls may be nested
+	 * and must be paired with {@link #endBulkRead()}.
+	 */
+	public void beginBulkRead() {
+		bulkRead++;
+	}
+
+	public void endBulkRead() {
+		bulkRead--;
+	}
+
+	/**
+	 * Indicates whether pages are currently fixed as part of a large scan.
+	 */
+	public boolean isBulkRead() {
+		return bulkRead > 0;
 	}
 
 	public void registerUnfix(PageID pageID) {
-		int fixCount = myFixes.get(pageID);
+		Integer fc = (myFixes != null) ? myFixes.get(pageID) : null;
+		int fixCount = (fc == null) ? -1 : fc;
 
 		if (fixCount == -1) {
 			throw new RuntimeException("Did not fix " + pageID + " my fix set "
@@ -124,7 +169,12 @@ public final class ThreadCB {
 	}
 
 	public void registerFix(PageID pageID) {
-		int fixCount = myFixes.get(pageID);
+		if (myFixes == null) {
+			myFixes = new HashMap<PageID, Integer>();
+		}
+
+		Integer fc = myFixes.get(pageID);
+		int fixCount = (fc == null) ? -1 : fc;
 
 		if (fixCount == -1) {
 			myFixes.put(pageID, 1);
@@ -137,7 +187,7 @@ public final class ThreadCB {
 	}
 
 	public void registerUnlatch(Latch latch) {
-		Integer lc = myLatches.get(latch);
+		Integer lc = (myLatches != null) ? myLatches.get(latch) : null;
 		int latchCount = (lc == null) ? -1 : lc;
 
 		if (latchCount == -1) {
@@ -151,28 +201,22 @@ public final class ThreadCB {
 	}
 
 	public void registerUpdateLatch(Latch latch) {
-		Integer lc = myLatches.get(latch);
-		int latchCount = (lc == null) ? -1 : lc;
-
-		if (latchCount == -1) {
-			myLatches.put(latch, 1);
-		} else {
-			myLatches.put(latch, latchCount + 1);
-		}
+		registerLatch(latch);
 	}
 
 	public void registerExclusiveLatch(Latch latch) {
-		Integer lc = myLatches.get(latch);
-		int latchCount = (lc == null) ? -1 : lc;
-
-		if (latchCount == -1) {
-			myLatches.put(latch, 1);
-		} else {
-			myLatches.put(latch, latchCount + 1);
-		}
+		registerLatch(latch);
 	}
 
 	public void registerSharedLatch(Latch latch) {
+		registerLatch(latch);
+	}
+
+	private void registerLatch(Latch latch) {
+		if (myLatches == null) {
+			myLatches = new HashMap<Latch, Integer>();
+		}
+
 		Integer lc = myLatches.get(latch);
 		int latchCount = (lc == null) ? -1 : lc;
 
@@ -184,11 +228,11 @@ public final class ThreadCB {
 	}
 
 	public int getLatchedCount() {
-		return myLatches.size();
+		return (myLatches != null) ? myLatches.size() : 0;
 	}
 	
 	public String getLatches() {
-		return myLatches.toString();
+		return (myLatches != null) ? myLatches.toString() : "{}";
 	}
 
 	public void countPageHintMiss() {
@@ -213,6 +257,6 @@ public final class ThreadCB {
 	}
 
 	public int getFixCount() {
-		return myFixes.size();
+		return (myFixes != null) ? myFixes.size() : 0;
 	}
 }
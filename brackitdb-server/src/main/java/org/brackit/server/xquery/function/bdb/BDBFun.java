@@ -97,6 +97,7 @@ public class BDBFun {
 		Functions.predefine(new ListVocabulary());
 		Functions.predefine(new DocumentScan());
 		Functions.predefine(new SetIsolation());
+		Functions.predefine(new SetCommitMode());
 		Functions.predefine(new SetLockdepth());
 		Functions.predefine(new CreatePathIndex(CREATE_PATH_INDEX,
 				new Signature(SequenceType.NODE, new SequenceType(
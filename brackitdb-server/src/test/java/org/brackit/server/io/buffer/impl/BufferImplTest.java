@@ -39,6 +39,7 @@ import org.brackit.server.io.buffer.BufferException;
 import org.brackit.server.io.buffer.Handle;
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.io.manager.impl.BufferMgrMockup;
+import org.brackit.server.tx.IsolationLevel;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxException;
 import org.brackit.server.tx.TxMgr;
@@ -268,6 +269,58 @@ public class BufferImplTest {
 		}
 	}
 
+	@Test
+	public void testReadOnlyRejectsUpdates() throws ServerException {
+		int unitID = buffer.createUnit(t2);
+		Handle handle = buffer.allocatePage(t2, unitID);
+		PageID pageNo = handle.getPageID();
+		handle.unlatch();
+		buffer.unfixPage(handle);
+		t2.commit();
+
+		Tx readOnly = taMgr.begin(IsolationLevel.SERIALIZABLE, null, true);
+
+		try {
+			buffer.createUnit(readOnly);
+			fail("Could create unit with read-only transaction");
+		} catch (BufferException e) {
+			// expected
+		}
+		try {
+			buffer.allocatePage(readOnly, unitID);
+			fail("Could allocate page with read-only transaction");
+		} catch (BufferException e) {
+			// expected
+		}
+		try {
+			buffer.deletePage(readOnly, pageNo, unitID);
+			fail("Could delete page with read-only transaction");
+		} catch (BufferException e) {
+			// expected
+		}
+		try {
+			buffer.dropUnit(readOnly, unitID);
+			fail("Could drop unit with read-only transaction");
+		} catch (BufferException e) {
+			// expected
+		}
+
+		// reads are still allowed
+		handle = buffer.fixPage(readOnly, pageNo);
+		handle.latchS();
+		handle.unlatch();
+		buffer.unfixPage(handle);
+		readOnly.commit();
+		assertEquals("fixed pages", 0, buffer.getFixCount());
+
+		// the rejected allocation did not leak a block
+		handle = buffer.allocatePage(t3, unitID);
+		assertEquals("next page", pageNo.getBlockNo() + 1, handle.getPageID()
+				.getBlockNo());
+		handle.unlatch();
+		buffer.unfixPage(handle);
+	}
+
 	private PageID[] prepareTestPages(Buffer buffer, int numberOfPages,
 			boolean withPattern) throws ServerException {
 		Handle handle = null;
@@ -0,0 +1,207 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.io.buffer.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.brackit.server.ServerException;
+import org.brackit.server.io.buffer.Handle;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.io.file.BlockSpaceMockup;
+import org.brackit.server.io.file.StoreException;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxMgr;
+import org.brackit.server.tx.impl.TaMgrMockup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PageCleanerTest {
+
+	private static final int CONTAINER_NO = 96;
+
+	private static final int BUFFER_SIZE = 10;
+
+	private static final int BLOCK_SIZE = 4096;
+
+	private TxMgr taMgr;
+
+	private GateBlockSpace blockSpace;
+
+	private TQBuffer buffer;
+
+	private Tx tx;
+
+	private int unitID;
+
+	/**
+	 * Block space whose writes can be held back to simulate slow I/O.
+	 */
+	private static class GateBlockSpace extends BlockSpaceMockup {
+		volatile CountDownLatch entered;
+
+		volatile CountDownLatch gate;
+
+		GateBlockSpace(String containerFilename, int containerNo) {
+			super(containerFilename, containerNo);
+		}
+
+		void holdWrites() {
+			entered = new CountDownLatch(1);
+			gate = new CountDownLatch(1);
+		}
+
+		void releaseWrites() {
+			gate.countDown();
+		}
+
+		private void pass() {
+			CountDownLatch g = gate;
+			if (g != null) {
+				entered.countDown();
+				try {
+					g.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+
+		@Override
+		public void write(int blockNo, byte[] buffer, int numBlocks)
+				throws StoreException {
+			pass();
+			super.write(blockNo, buffer, numBlocks);
+		}
+
+		@Override
+		public void write(int blockNo, byte[][] buffers, int numBlocks)
+				throws StoreException {
+			pass();
+			super.write(blockNo, buffers, numBlocks);
+		}
+	}
+
+	@Test
+	public void testCleanerDoesNotStallPartition() throws Exception {
+		final PageID[] pageIDs = new PageID[BUFFER_SIZE];
+		for (int i = 0; i < BUFFER_SIZE; i++) {
+			Handle handle = buffer.allocatePage(tx, unitID);
+			handle.page[Handle.GENERAL_HEADER_SIZE] = (byte) i;
+			pageIDs[i] = handle.getPageID();
+			handle.unlatch();
+			buffer.unfixPage(handle);
+		}
+
+		// let the cleaner hang in the write-back of the dirty pages
+		blockSpace.holdWrites();
+		final Throwable[] error = new Throwable[1];
+		Thread cleaner = new Thread() {
+			public void run() {
+				try {
+					buffer.clean();
+				} catch (Throwable e) {
+					error[0] = e;
+				}
+			}
+		};
+		cleaner.start();
+		assertTrue("cleaner started write-back", blockSpace.entered.await(
+				10, TimeUnit.SECONDS));
+
+		// a fixer which needs a victim must not block the partition
+		final PageID[] allocated = new PageID[1];
+		Thread allocator = new Thread() {
+			public void run() {
+				try {
+					Handle handle = buffer.allocatePage(tx, unitID);
+					allocated[0] = handle.getPageID();
+					handle.unlatch();
+					buffer.unfixPage(handle);
+				} catch (Throwable e) {
+					error[0] = e;
+				}
+			}
+		};
+		allocator.start();
+		allocator.join(500);
+
+		Thread reader = new Thread() {
+			public void run() {
+				try {
+					Handle handle = buffer.fixPage(tx, pageIDs[BUFFER_SIZE - 1]);
+					buffer.unfixPage(handle);
+				} catch (Throwable e) {
+					error[0] = e;
+				}
+			}
+		};
+		reader.start();
+		reader.join(5000);
+		boolean stalled = reader.isAlive();
+
+		blockSpace.releaseWrites();
+		cleaner.join();
+		allocator.join();
+		reader.join();
+
+		assertFalse("partition stalled by the cleaner", stalled);
+		if (error[0] != null) {
+			throw new AssertionError(error[0]);
+		}
+		assertTrue("page allocated", allocated[0] != null);
+
+		for (int i = 0; i < BUFFER_SIZE; i++) {
+			Handle handle = buffer.fixPage(tx, pageIDs[i]);
+			assertEquals("restored content", (byte) i,
+					handle.page[Handle.GENERAL_HEADER_SIZE]);
+			buffer.unfixPage(handle);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		taMgr = new TaMgrMockup();
+		blockSpace = new GateBlockSpace("cleaner.cnt", CONTAINER_NO);
+		blockSpace.create(BLOCK_SIZE, BUFFER_SIZE, 1.0);
+		buffer = new TQBuffer(blockSpace, BUFFER_SIZE, 1, taMgr.getLog(),
+				taMgr.getBufferManager());
+		tx = taMgr.begin();
+		unitID = buffer.createUnit(tx);
+	}
+
+	@After
+	public void tearDown() throws ServerException {
+		tx.commit();
+		buffer.shutdown(true);
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.io.buffer.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.brackit.server.ServerException;
+import org.brackit.server.io.buffer.BufferException;
+import org.brackit.server.io.buffer.Handle;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.io.buffer.impl.AbstractBuffer.Partition;
+import org.brackit.server.io.file.BlockSpaceMockup;
+import org.brackit.server.tx.DummyTX;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxException;
+import org.brackit.server.tx.TxMgr;
+import org.brackit.server.tx.impl.TaMgrMockup;
+import org.brackit.server.tx.log.LogOperation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PartitionedBufferTest {
+
+	private static final int CONTAINER_NO = 97;
+
+	private static final int BUFFER_SIZE = 40;
+
+	private static final int PARTITIONS = 4;
+
+	private static final int BLOCK_SIZE = 4096;
+
+	private static final int NUMBER_OF_PAGES = 8 * 64;
+
+	private TxMgr taMgr;
+
+	private BlockSpaceMockup blockSpace;
+
+	private TQBuffer buffer;
+
+	private Tx tx;
+
+	private int unitID;
+
+	@Test
+	public void testPartitionRouting() throws ServerException {
+		PageID[] pageIDs = allocatePages(NUMBER_OF_PAGES);
+		Set<Partition> used = new HashSet<Partition>();
+
+		for (PageID pageID : pageIDs) {
+			Partition p = buffer.partition(pageID);
+			int stripeStart = pageID.getBlockNo() - (pageID.getBlockNo() % 64);
+			assertSame("partition of stripe", buffer.partition(new PageID(
+					CONTAINER_NO, Math.max(1, stripeStart))), p);
+			used.add(p);
+
+			Handle handle = buffer.fixPage(tx, pageID);
+			assertSame("page table of routed partition", handle,
+					p.pageNoToFrame.get(pageID));
+			assertEquals("restored content", pageID.getBlockNo(), readMarker(
+					handle));
+			buffer.unfixPage(handle);
+		}
+
+		assertTrue("pages spread over partitions", used.size() > 1);
+	}
+
+	@Test
+	public void testConcurrentEviction() throws Exception {
+		final PageID[] pageIDs = allocatePages(NUMBER_OF_PAGES);
+		final Throwable[] error = new Throwable[1];
+		Thread[] threads = new Thread[8];
+
+		for (int i = 0; i < threads.length; i++) {
+			final long seed = i;
+			threads[i] = new Thread() {
+				public void run() {
+					Random rand = new Random(seed);
+					try {
+						for (int j = 0; j < 2000; j++) {
+							PageID pageID = pageIDs[rand
+									.nextInt(pageIDs.length)];
+							Handle handle = buffer.fixPage(tx, pageID);
+							handle.latchS();
+							try {
+								assertEquals("restored content", pageID
+										.getBlockNo(), readMarker(handle));
+							} finally {
+								handle.unlatch();
+								buffer.unfixPage(handle);
+							}
+						}
+					} catch (Throwable e) {
+						synchronized (error) {
+							error[0] = e;
+						}
+					}
+				}
+			};
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		if (error[0] != null) {
+			throw new AssertionError(error[0]);
+		}
+
+		for (PageID pageID : pageIDs) {
+			Partition p = buffer.partition(pageID);
+			synchronized (p) {
+				assertTrue("partition overflow", p.pageNoToFrame.size() <= p.size);
+				assertTrue("pool overflow", p.pool.size() <= p.size);
+				assertEquals("balanced fixes", p.fixCnt, p.unfixCnt);
+			}
+		}
+	}
+
+	@Test
+	public void testFailedAllocationReleasesBlock() throws ServerException {
+		allocatePages(2 * BUFFER_SIZE);
+		int used = usedBlocks();
+
+		Tx failing = new DummyTX() {
+			@Override
+			public long logUpdate(LogOperation logOperation)
+					throws TxException {
+				throw new TxException("Log is not available.");
+			}
+		};
+
+		try {
+			buffer.allocatePage(failing, unitID);
+			fail("allocation did not fail");
+		} catch (BufferException e) {
+			// expected
+		}
+		assertEquals("used blocks after failed allocation", used,
+				usedBlocks());
+
+		PageID pageID = new PageID(CONTAINER_NO, 4 * NUMBER_OF_PAGES);
+		try {
+			buffer.allocatePage(failing, unitID, pageID, true, -1, false);
+			fail("allocation did not fail");
+		} catch (BufferException e) {
+			// expected
+		}
+		assertFalse("requested block released", blockSpace.isUsed(pageID
+				.getBlockNo()));
+
+		// buffer is still fully usable
+		allocatePages(2 * BUFFER_SIZE);
+		assertEquals("used blocks after successful allocation", used + 2
+				* BUFFER_SIZE, usedBlocks());
+	}
+
+	private PageID[] allocatePages(int count) throws ServerException {
+		PageID[] pageIDs = new PageID[count];
+
+		for (int i = 0; i < count; i++) {
+			Handle handle = buffer.allocatePage(tx, unitID);
+			pageIDs[i] = handle.getPageID();
+			writeMarker(handle, pageIDs[i].getBlockNo());
+			handle.unlatch();
+			buffer.unfixPage(handle);
+		}
+
+		return pageIDs;
+	}
+
+	private int usedBlocks() {
+		int used = 0;
+		for (int i = 0; i < 8 * NUMBER_OF_PAGES; i++) {
+			if (blockSpace.isUsed(i)) {
+				used++;
+			}
+		}
+		return used;
+	}
+
+	private static void writeMarker(Handle handle, int marker) {
+		int pos = Handle.GENERAL_HEADER_SIZE;
+		handle.page[pos] = (byte) (marker >> 24);
+		handle.page[pos + 1] = (byte) (marker >> 16);
+		handle.page[pos + 2] = (byte) (marker >> 8);
+		handle.page[pos + 3] = (byte) marker;
+	}
+
+	private static int readMarker(Handle handle) {
+		int pos = Handle.GENERAL_HEADER_SIZE;
+		return ((handle.page[pos] & 255) << 24)
+				| ((handle.page[pos + 1] & 255) << 16)
+				| ((handle.page[pos + 2] & 255) << 8)
+				| (handle.page[pos + 3] & 255);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		taMgr = new TaMgrMockup();
+		blockSpace = new BlockSpaceMockup("partitioned.cnt", CONTAINER_NO);
+		blockSpace.create(BLOCK_SIZE, BUFFER_SIZE, 1.0);
+		buffer = new TQBuffer(blockSpace, BUFFER_SIZE, PARTITIONS, taMgr
+				.getLog(), taMgr.getBufferManager());
+		tx = taMgr.begin();
+		unitID = buffer.createUnit(tx);
+	}
+
+	@After
+	public void tearDown() throws ServerException {
+		tx.commit();
+		buffer.shutdown(true);
+	}
+}
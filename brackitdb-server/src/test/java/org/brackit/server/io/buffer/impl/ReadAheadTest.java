@@ -0,0 +1,180 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.io.buffer.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.brackit.server.ServerException;
+import org.brackit.server.io.buffer.Handle;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.io.buffer.impl.AbstractBuffer.Partition;
+import org.brackit.server.io.file.BlockSpaceMockup;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxMgr;
+import org.brackit.server.tx.impl.TaMgrMockup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReadAheadTest {
+
+	private static final int CONTAINER_NO = 98;
+
+	private static final int BUFFER_SIZE = 16;
+
+	private static final int BLOCK_SIZE = 4096;
+
+	private static final int NUMBER_OF_PAGES = 60;
+
+	private static final int READ_AHEAD_PAGES = 40;
+
+	private TxMgr taMgr;
+
+	private BlockSpaceMockup blockSpace;
+
+	private TQBuffer buffer;
+
+	private Tx tx;
+
+	private int unitID;
+
+	private PageID[] pageIDs;
+
+	@Test
+	public void testPrefetchedPagesAreReplacedFIFO() throws ServerException {
+		// a first window followed by single pages as issued by a scan
+		int window = BUFFER_SIZE / 4;
+		buffer.readAhead(pageIDs[0].getBlockNo(), window);
+		for (int i = window; i < READ_AHEAD_PAGES; i++) {
+			buffer.readAhead(pageIDs[i].getBlockNo(), 1);
+		}
+
+		int resident = 0;
+		for (int i = READ_AHEAD_PAGES - 1; i >= 0; i--) {
+			if (isResident(pageIDs[i])) {
+				assertEquals("resident prefetched pages are the youngest",
+						READ_AHEAD_PAGES - 1 - resident, i);
+				resident++;
+			}
+		}
+		assertEquals("prefetched pages resident", window, resident);
+		assertFalse("oldest prefetched page replaced", isResident(pageIDs[0]));
+		checkContent();
+	}
+
+	@Test
+	public void testReadAheadBeyondFreeFrames() throws ServerException {
+		PageID hot = pageIDs[NUMBER_OF_PAGES - 1];
+		assertTrue("hot page resident", isResident(hot));
+
+		// one read-ahead request larger than the whole buffer
+		buffer.readAhead(pageIDs[0].getBlockNo(), READ_AHEAD_PAGES);
+
+		int resident = 0;
+		for (int i = 0; i < READ_AHEAD_PAGES; i++) {
+			if (isResident(pageIDs[i])) {
+				resident++;
+			}
+		}
+		assertTrue("prefetched pages resident", resident > 0);
+		assertTrue("prefetched share capped", resident <= BUFFER_SIZE / 4);
+		assertTrue("youngest prefetched page resident",
+				isResident(pageIDs[READ_AHEAD_PAGES - 1]));
+		assertTrue("hot page survived read-ahead", isResident(hot));
+		checkContent();
+	}
+
+	private boolean isResident(PageID pageID) {
+		Partition p = buffer.partition(pageID);
+		synchronized (p) {
+			return p.pageNoToFrame.containsKey(pageID);
+		}
+	}
+
+	private void checkContent() throws ServerException {
+		for (PageID pageID : pageIDs) {
+			Handle handle = buffer.fixPage(tx, pageID);
+			assertEquals("restored content", pageID.getBlockNo(),
+					readMarker(handle));
+			buffer.unfixPage(handle);
+		}
+		Partition p = buffer.partition(pageIDs[0]);
+		synchronized (p) {
+			assertTrue("partition overflow", p.pageNoToFrame.size() <= p.size);
+			assertEquals("balanced fixes", p.fixCnt, p.unfixCnt);
+		}
+	}
+
+	private static void writeMarker(Handle handle, int marker) {
+		int pos = Handle.GENERAL_HEADER_SIZE;
+		handle.page[pos] = (byte) (marker >> 24);
+		handle.page[pos + 1] = (byte) (marker >> 16);
+		handle.page[pos + 2] = (byte) (marker >> 8);
+		handle.page[pos + 3] = (byte) marker;
+	}
+
+	private static int readMarker(Handle handle) {
+		int pos = Handle.GENERAL_HEADER_SIZE;
+		return ((handle.page[pos] & 255) << 24)
+				| ((handle.page[pos + 1] & 255) << 16)
+				| ((handle.page[pos + 2] & 255) << 8)
+				| (handle.page[pos + 3] & 255);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		taMgr = new TaMgrMockup();
+		blockSpace = new BlockSpaceMockup("readahead.cnt", CONTAINER_NO);
+		blockSpace.create(BLOCK_SIZE, BUFFER_SIZE, 1.0);
+		buffer = new TQBuffer(blockSpace, BUFFER_SIZE, 1, taMgr.getLog(),
+				taMgr.getBufferManager());
+		tx = taMgr.begin();
+		unitID = buffer.createUnit(tx);
+
+		pageIDs = new PageID[NUMBER_OF_PAGES];
+		for (int i = 0; i < NUMBER_OF_PAGES; i++) {
+			Handle handle = buffer.allocatePage(tx, unitID);
+			pageIDs[i] = handle.getPageID();
+			writeMarker(handle, pageIDs[i].getBlockNo());
+			handle.unlatch();
+			buffer.unfixPage(handle);
+		}
+		// make the last page hot
+		for (int i = 0; i < 2; i++) {
+			buffer.unfixPage(buffer.fixPage(tx, pageIDs[NUMBER_OF_PAGES - 1]));
+		}
+	}
+
+	@After
+	public void tearDown() throws ServerException {
+		tx.commit();
+		buffer.shutdown(true);
+	}
+}
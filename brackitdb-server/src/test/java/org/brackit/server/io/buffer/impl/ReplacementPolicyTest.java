@@ -0,0 +1,237 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.io.buffer.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.brackit.server.ServerException;
+import org.brackit.server.io.buffer.Buffer;
+import org.brackit.server.io.buffer.Handle;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.io.buffer.impl.ARCBuffer.ARCPartition;
+import org.brackit.server.io.buffer.impl.AbstractBuffer.Partition;
+import org.brackit.server.io.buffer.impl.ClockBuffer.ClockPartition;
+import org.brackit.server.io.file.BlockSpace;
+import org.brackit.server.io.file.BlockSpaceMockup;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxMgr;
+import org.brackit.server.tx.impl.TaMgrMockup;
+import org.brackit.server.tx.log.Log;
+import org.brackit.server.tx.log.impl.LogMockup;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplacementPolicyTest {
+
+	private static final int CONTAINER_NO = 98;
+
+	private static final int BUFFER_SIZE = 10;
+
+	private static final int BLOCK_SIZE = 4096;
+
+	private static final int INITIAL_SIZE = 40;
+
+	private static final int NUMBER_OF_PAGES = 3 * BUFFER_SIZE;
+
+	private Log log;
+
+	private TxMgr taMgr;
+
+	private BlockSpace blockSpace;
+
+	@Test
+	public void testARC() throws ServerException {
+		checkReplacement(new ARCBuffer(blockSpace, BUFFER_SIZE, 1, log, taMgr
+				.getBufferManager()));
+	}
+
+	@Test
+	public void testClock() throws ServerException {
+		checkReplacement(new ClockBuffer(blockSpace, BUFFER_SIZE, 1, log,
+				taMgr.getBufferManager()));
+	}
+
+	@Test
+	public void testARCAdaptsTarget() throws ServerException {
+		ARCBuffer buffer = new ARCBuffer(blockSpace, BUFFER_SIZE, 1, log, taMgr
+				.getBufferManager());
+		Tx tx = taMgr.begin();
+		int unitID = buffer.createUnit(tx);
+		PageID[] pageIDs = new PageID[BUFFER_SIZE + 1];
+
+		// pages 0..9 are referenced once (T1), pages 0..4 twice (T2)
+		for (int i = 0; i < BUFFER_SIZE; i++) {
+			pageIDs[i] = allocate(buffer, tx, unitID);
+		}
+		for (int i = 0; i < BUFFER_SIZE / 2; i++) {
+			refix(buffer, tx, pageIDs[i]);
+		}
+		ARCPartition p = (ARCPartition) buffer.partition(pageIDs[0]);
+		assertEquals("T1", BUFFER_SIZE / 2, p.t1.length);
+		assertEquals("T2", BUFFER_SIZE / 2, p.t2.length);
+		assertEquals("initial target", 0, p.target);
+
+		// T1 exceeds its target: the LRU page of T1 becomes a ghost
+		pageIDs[BUFFER_SIZE] = allocate(buffer, tx, unitID);
+		PageID ghost = pageIDs[BUFFER_SIZE / 2];
+		assertFalse("LRU of T1 replaced", isResident(buffer, ghost));
+		assertTrue("ghost in B1", p.b1.contains(ghost));
+		for (int i = 0; i < BUFFER_SIZE / 2; i++) {
+			assertTrue("T2 page kept", isResident(buffer, pageIDs[i]));
+		}
+
+		// a fault on the ghost enlarges T1 and promotes the page to T2
+		refix(buffer, tx, ghost);
+		assertEquals("adapted target", 1, p.target);
+		assertFalse("ghost removed", p.b1.contains(ghost));
+		assertEquals("T2", BUFFER_SIZE / 2 + 1, p.t2.length);
+		PageID next = pageIDs[BUFFER_SIZE / 2 + 1];
+		assertFalse("next LRU of T1 replaced", isResident(buffer, next));
+
+		// a fault on a ghost of T1 again grows the target, so T2 keeps its
+		// pages and T1 keeps shrinking from its LRU end
+		refix(buffer, tx, next);
+		assertEquals("adapted target", 2, p.target);
+		assertFalse("LRU of T1 replaced", isResident(buffer,
+				pageIDs[BUFFER_SIZE / 2 + 2]));
+		for (int i = 0; i < BUFFER_SIZE / 2; i++) {
+			assertTrue("T2 page kept", isResident(buffer, pageIDs[i]));
+		}
+		tx.commit();
+	}
+
+	@Test
+	public void testClockSecondChance() throws ServerException {
+		ClockBuffer buffer = new ClockBuffer(blockSpace, BUFFER_SIZE, 1, log,
+				taMgr.getBufferManager());
+		Tx tx = taMgr.begin();
+		int unitID = buffer.createUnit(tx);
+		PageID[] pageIDs = new PageID[BUFFER_SIZE];
+
+		// all reference bits are set after the initial fill
+		for (int i = 0; i < BUFFER_SIZE; i++) {
+			pageIDs[i] = allocate(buffer, tx, unitID);
+		}
+		ClockPartition p = (ClockPartition) buffer.partition(pageIDs[0]);
+
+		// first replacement clears all bits and takes the page under the hand
+		PageID first = p.clock.get(p.hand).getPageID();
+		allocate(buffer, tx, unitID);
+		assertFalse("page under hand replaced", isResident(buffer, first));
+
+		// a referenced page under the hand gets a second chance
+		PageID referenced = p.clock.get(p.hand).getPageID();
+		PageID unreferenced = p.clock.get(p.hand + 1).getPageID();
+		refix(buffer, tx, referenced);
+		allocate(buffer, tx, unitID);
+		assertTrue("referenced page kept", isResident(buffer, referenced));
+		assertFalse("unreferenced page replaced", isResident(buffer,
+				unreferenced));
+
+		// the second chance is used up
+		assertEquals("hand passed referenced page", referenced, p.clock.get(
+				p.hand - 1).getPageID());
+		tx.commit();
+	}
+
+	private PageID allocate(Buffer buffer, Tx tx, int unitID)
+			throws ServerException {
+		Handle handle = buffer.allocatePage(tx, unitID);
+		PageID pageID = handle.getPageID();
+		handle.unlatch();
+		buffer.unfixPage(handle);
+		return pageID;
+	}
+
+	private void refix(Buffer buffer, Tx tx, PageID pageID)
+			throws ServerException {
+		buffer.unfixPage(buffer.fixPage(tx, pageID));
+	}
+
+	private boolean isResident(AbstractBuffer buffer, PageID pageID) {
+		Partition p = buffer.partition(pageID);
+		synchronized (p) {
+			return p.pageNoToFrame.containsKey(pageID);
+		}
+	}
+
+	private void checkReplacement(Buffer buffer) throws ServerException {
+		Tx tx = taMgr.begin();
+		int unitID = buffer.createUnit(tx);
+		PageID[] pageIDs = new PageID[NUMBER_OF_PAGES];
+
+		// fill more pages than the buffer can hold
+		for (int i = 0; i < NUMBER_OF_PAGES; i++) {
+			Handle handle = buffer.allocatePage(tx, unitID);
+			handle.page[Handle.GENERAL_HEADER_SIZE] = (byte) i;
+			pageIDs[i] = handle.getPageID();
+			handle.unlatch();
+			buffer.unfixPage(handle);
+		}
+
+		// refix pages repeatedly in a skewed order to force replacements of
+		// both, dirty and clean pages
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < NUMBER_OF_PAGES; i++) {
+				int no = ((i % 2) == 0) ? i / 2 : (i * 7) % NUMBER_OF_PAGES;
+				Handle handle = buffer.fixPage(tx, pageIDs[no]);
+				assertEquals("restored page number", pageIDs[no], handle
+						.getPageID());
+				assertEquals("restored content", (byte) no,
+						handle.page[Handle.GENERAL_HEADER_SIZE]);
+				buffer.unfixPage(handle);
+			}
+		}
+
+		// keep all buffer positions fixed except one
+		Handle[] fixed = new Handle[BUFFER_SIZE - 1];
+		for (int i = 0; i < fixed.length; i++) {
+			fixed[i] = buffer.fixPage(tx, pageIDs[i]);
+		}
+		for (int i = fixed.length; i < NUMBER_OF_PAGES; i++) {
+			Handle handle = buffer.fixPage(tx, pageIDs[i]);
+			assertEquals("restored content", (byte) i,
+					handle.page[Handle.GENERAL_HEADER_SIZE]);
+			buffer.unfixPage(handle);
+		}
+		for (Handle handle : fixed) {
+			buffer.unfixPage(handle);
+		}
+		tx.commit();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		log = new LogMockup();
+		taMgr = new TaMgrMockup(log);
+		blockSpace = new BlockSpaceMockup("policy.cnt", CONTAINER_NO);
+		blockSpace.create(BLOCK_SIZE, INITIAL_SIZE, 1.0);
+	}
+}
@@ -151,6 +151,23 @@ public class BlockSpaceMockup implements BlockSpace {
 		return BLOCK_HEADER_LENGTH;
 	}
 
+	@Override
+	public int read(int blockNo, byte[][] buffers, int numBlocks)
+			throws StoreException {
+		for (int i = 0; i < numBlocks; i++) {
+			byte[] myBlock = blocks.get(blockNo + i);
+			if (myBlock == null) {
+				if (i == 0) {
+					throw new StoreException(String.format(
+							"Block %s is unused.", blockNo));
+				}
+				return i;
+			}
+			System.arraycopy(myBlock, 0, buffers[i], 0, myBlock.length);
+		}
+		return numBlocks;
+	}
+
 	@Override
 	public void write(int blockNo, byte[] buffer, int numBlocks)
 			throws StoreException {
@@ -168,6 +185,21 @@ public class BlockSpaceMockup implements BlockSpace {
 		}
 	}
 
+	@Override
+	public void write(int blockNo, byte[][] buffers, int numBlocks)
+			throws StoreException {
+		for (int i = 0; i < numBlocks; i++) {
+			byte[] myBlock = blocks.get(blockNo + i);
+
+			if (myBlock == null) {
+				throw new StoreException(String.format("Block %s is unused.",
+						blockNo + i));
+			}
+
+			System.arraycopy(buffers[i], 0, myBlock, 0, myBlock.length);
+		}
+	}
+
 	@Override
 	public void sync() throws StoreException {
 	}
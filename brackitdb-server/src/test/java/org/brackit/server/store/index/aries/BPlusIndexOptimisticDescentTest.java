@@ -0,0 +1,228 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.index.aries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.brackit.server.io.buffer.Handle;
+import org.brackit.server.store.Field;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.util.Calc;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BPlusIndexOptimisticDescentTest extends AbstractBPlusIndexTest {
+
+	private static final int INSERTERS = 4;
+
+	private static final int READERS = 4;
+
+	@Test
+	public void testFallbackAfterFailedAttempts() throws Exception {
+		final LinkedList<Entry> entries = generateEntries(REDUCED_LOAD_SIZE, 0);
+		loadIndex(t2, entries, uniqueRootPageID);
+		int restarts = index.tree.optimisticRestarts;
+
+		// an exclusive latch on the root lets every optimistic attempt fail
+		Handle root = sm.buffer.fixPage(t1, uniqueRootPageID);
+		root.latchX();
+
+		final byte[][] result = new byte[1][];
+		final Throwable[] error = new Throwable[1];
+		Thread reader = new Thread() {
+			public void run() {
+				try {
+					result[0] = index.read(t2, uniqueRootPageID, entries
+							.getFirst().key);
+				} catch (Throwable e) {
+					error[0] = e;
+				}
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+		reader.join(200);
+
+		// the pessimistic descent has to wait for the root latch
+		assertTrue("reader waits for root", reader.isAlive());
+		root.unlatch();
+		sm.buffer.unfixPage(root);
+		reader.join(5000);
+		assertFalse("reader finished", reader.isAlive());
+
+		if (error[0] != null) {
+			throw new AssertionError(error[0]);
+		}
+		assertNotNull("value found", result[0]);
+		assertEquals("read value", 0, Field.UINTEGER.compare(entries
+				.getFirst().value, result[0]));
+		assertEquals("failed optimistic attempts", restarts + 3,
+				index.tree.optimisticRestarts);
+		assertEquals("fixed pages after read", 0, sm.buffer.getFixCount());
+	}
+
+	@Test
+	public void testNoRestartWithoutConcurrency() throws Exception {
+		LinkedList<Entry> entries = generateEntries(REDUCED_LOAD_SIZE, 0);
+		loadIndex(t2, entries, uniqueRootPageID);
+		int restarts = index.tree.optimisticRestarts;
+
+		for (Entry entry : entries) {
+			byte[] value = index.read(t2, uniqueRootPageID, entry.key);
+			assertNotNull("value found", value);
+		}
+		assertEquals("failed optimistic attempts", restarts,
+				index.tree.optimisticRestarts);
+		assertEquals("fixed pages after read", 0, sm.buffer.getFixCount());
+	}
+
+	@Test
+	public void testReadDuringConcurrentSplits() throws Exception {
+		// even keys are loaded, odd keys are inserted concurrently
+		final LinkedList<Entry> loaded = new LinkedList<Entry>();
+		List<LinkedList<Entry>> inserts = new ArrayList<LinkedList<Entry>>();
+		for (int i = 0; i < INSERTERS; i++) {
+			inserts.add(new LinkedList<Entry>());
+		}
+		for (int i = 1; i <= REDUCED_LOAD_SIZE; i++) {
+			loaded.add(new Entry(Calc.fromUIntVar(i * 100), Calc
+					.fromUIntVar(i)));
+			inserts.get(i % INSERTERS).add(
+					new Entry(Calc.fromUIntVar(i * 100 + 50), Calc
+							.fromUIntVar(i)));
+		}
+		loadIndex(t2, loaded, uniqueRootPageID);
+
+		final Throwable[] error = new Throwable[1];
+		final boolean[] done = new boolean[1];
+		Thread[] inserters = new Thread[INSERTERS];
+		Thread[] readers = new Thread[READERS];
+
+		for (int i = 0; i < INSERTERS; i++) {
+			final LinkedList<Entry> entries = inserts.get(i);
+			inserters[i] = new Thread() {
+				public void run() {
+					try {
+						Tx tx = sm.taMgr.begin();
+						for (Entry entry : entries) {
+							index.insert(tx, uniqueRootPageID, entry.key,
+									entry.value);
+						}
+						tx.commit();
+					} catch (Throwable e) {
+						synchronized (error) {
+							error[0] = e;
+						}
+					}
+				}
+			};
+		}
+
+		for (int i = 0; i < READERS; i++) {
+			readers[i] = new Thread() {
+				public void run() {
+					try {
+						Tx tx = sm.taMgr.begin();
+						while (!isDone(done, error)) {
+							for (Entry entry : loaded) {
+								byte[] value = index.read(tx,
+										uniqueRootPageID, entry.key);
+								if ((value == null)
+										|| (Field.UINTEGER.compare(
+												entry.value, value) != 0)) {
+									throw new AssertionError(
+											"Lost loaded key "
+													+ Calc.toUIntVar(entry.key));
+								}
+							}
+						}
+						tx.commit();
+					} catch (Throwable e) {
+						synchronized (error) {
+							error[0] = e;
+						}
+					}
+				}
+			};
+		}
+
+		for (Thread thread : readers) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+		for (Thread thread : inserters) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+		for (Thread thread : inserters) {
+			thread.join(60000);
+			assertFalse("inserter finished", thread.isAlive());
+		}
+		synchronized (error) {
+			done[0] = true;
+		}
+		for (Thread thread : readers) {
+			thread.join(60000);
+			assertFalse("reader finished", thread.isAlive());
+		}
+
+		if (error[0] != null) {
+			throw new AssertionError(error[0]);
+		}
+		assertEquals("fixed pages after concurrent access", 0, sm.buffer
+				.getFixCount());
+		indexPageHelper.checkIndexConsistency(t2, sm.buffer, uniqueRootPageID);
+
+		for (LinkedList<Entry> entries : inserts) {
+			for (Entry entry : entries) {
+				assertNotNull("inserted key found", index.read(t2,
+						uniqueRootPageID, entry.key));
+			}
+		}
+	}
+
+	private static boolean isDone(boolean[] done, Throwable[] error) {
+		synchronized (error) {
+			return (done[0]) || (error[0] != null);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		assumeTrue(BPlusTree.OPTIMISTIC_DESCENT);
+	}
+}
@@ -52,6 +52,8 @@ import org.brackit.server.store.index.IndexAccessException;
 import org.brackit.server.store.index.IndexIterator;
 import org.brackit.server.store.index.aries.page.PageContext;
 import org.brackit.server.store.index.aries.page.PageContextFactory;
+import org.brackit.server.tx.IsolationLevel;
+import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxException;
 import org.brackit.server.util.Calc;
 import org.brackit.xquery.util.log.Logger;
@@ -1406,6 +1408,50 @@ public class BPlusIndexStandardTest extends AbstractBPlusIndexTest {
 		sm.buffer.unfixPage(rootHandle);
 	}
 
+	@Test
+	public void testReadOnlyRejectsUpdates() throws Exception {
+		byte[] key = Calc.fromUIntVar(100);
+		byte[] value = Calc.fromUIntVar(200);
+		Tx readOnly = sm.taMgr.begin(IsolationLevel.SERIALIZABLE, null, true);
+		PageContextFactory fac = new PageContextFactory(sm.bufferManager);
+
+		PageContext page = fac.getPage(readOnly, uniqueRootPageID, false,
+				false);
+		page.cleanup();
+
+		try {
+			fac.getPage(readOnly, uniqueRootPageID, true, true);
+			fail("Could latch page for update with read-only transaction");
+		} catch (IndexOperationException e) {
+			// expected
+		}
+		try {
+			fac.getPage(readOnly, uniqueRootPageID, true, false);
+			fail("Could latch page exclusively with read-only transaction");
+		} catch (IndexOperationException e) {
+			// expected
+		}
+		try {
+			fac.allocate(readOnly, SysMockup.CONTAINER_NO, -1,
+					PageType.INDEX_LEAF, null, Field.UINTEGER, Field.UINTEGER,
+					true, true, true);
+			fail("Could allocate page with read-only transaction");
+		} catch (IndexOperationException e) {
+			// expected
+		}
+		try {
+			index.insert(readOnly, uniqueRootPageID, key, value);
+			fail("Could insert with read-only transaction");
+		} catch (IndexAccessException e) {
+			// expected
+		}
+
+		assertEquals("fixed pages", 0, sm.buffer.getFixCount());
+		assertNull("rejected insert not visible", index.read(readOnly,
+				uniqueRootPageID, key));
+		readOnly.commit();
+	}
+
 	@Test
 	public void testInsertOverflowValues() throws BufferException,
 			IndexAccessException {
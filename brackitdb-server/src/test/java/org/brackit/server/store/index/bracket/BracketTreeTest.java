@@ -27,11 +27,15 @@
  */
 package org.brackit.server.store.index.bracket;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
 import org.brackit.server.io.buffer.Buffer;
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.io.manager.BufferMgr;
 import org.brackit.server.node.DocID;
 import org.brackit.server.node.XTCdeweyID;
+import org.brackit.server.store.index.bracket.page.BPContext;
 import org.brackit.server.store.index.bracket.page.Branch;
 import org.brackit.server.store.index.bracket.page.BranchBPContext;
 import org.brackit.server.store.index.bracket.page.Leaf;
@@ -176,6 +180,45 @@ public class BracketTreeTest {
 
 	}
 
+	@Test
+	public void testReadOnlyRejectsUpdates() throws Exception {
+		Buffer buffer = txMgr.getBufferManager().getBuffer(CONTAINER_NO);
+		Tx readOnly = txMgr.begin(IsolationLevel.SERIALIZABLE, null, true);
+
+		BPContext page = tree.getPage(readOnly, new PageID(1), false, false);
+		page.cleanup();
+
+		try {
+			tree.getPage(readOnly, new PageID(1), true, true);
+			fail("Could latch page for update with read-only transaction");
+		} catch (IndexOperationException e) {
+			// expected
+		}
+		try {
+			tree.getPage(readOnly, new PageID(1), true, false);
+			fail("Could latch page exclusively with read-only transaction");
+		} catch (IndexOperationException e) {
+			// expected
+		}
+		try {
+			tree.allocateLeaf(readOnly, CONTAINER_NO, -1, new PageID(99),
+					true);
+			fail("Could allocate leaf with read-only transaction");
+		} catch (IndexOperationException e) {
+			// expected
+		}
+		try {
+			tree.allocateBranch(readOnly, CONTAINER_NO, -1, new PageID(99), 1,
+					false, true);
+			fail("Could allocate branch with read-only transaction");
+		} catch (IndexOperationException e) {
+			// expected
+		}
+
+		assertEquals("fixed pages", 0, buffer.getFixCount());
+		readOnly.commit();
+	}
+
 	@Ignore
 	@Test
 	public void testDeleteSequence() throws Exception {
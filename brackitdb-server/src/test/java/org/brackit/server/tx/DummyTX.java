@@ -33,6 +33,8 @@ import org.brackit.server.metadata.cache.CachedObjectHook;
 import org.brackit.server.session.Session;
 import org.brackit.server.tx.locking.LockControlBlock;
 import org.brackit.server.tx.log.LogOperation;
+import org.brackit.server.tx.mvcc.Snapshot;
+import org.brackit.server.tx.mvcc.VersionStore;
 
 /**
  * @author Sebastian Baechle
@@ -144,6 +146,15 @@ public class DummyTX implements Tx {
 	public void setLockDepth(int lockDepth) {
 	}
 
+	@Override
+	public CommitMode getCommitMode() {
+		return null;
+	}
+
+	@Override
+	public void setCommitMode(CommitMode commitMode) {
+	}
+
 	@Override
 	public String toShortString() {
 		return null;
@@ -188,4 +199,14 @@ public class DummyTX implements Tx {
 	public boolean releaseDeletedPages() throws TxException {
 		return false;
 	}
+
+	@Override
+	public Snapshot getSnapshot() {
+		return null;
+	}
+
+	@Override
+	public VersionStore getVersionStore() {
+		return null;
+	}
 }
@@ -0,0 +1,169 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxID;
+import org.brackit.server.tx.log.LogException;
+import org.brackit.server.tx.log.LogOperation;
+import org.brackit.server.tx.log.LogReader;
+import org.brackit.server.tx.log.Loggable;
+import org.brackit.server.tx.log.impl.CheckpointLogOperation;
+import org.brackit.server.tx.log.impl.LogRecordHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RedoPrefetcherTest {
+
+	private static final long COVER_LSN = 1000;
+
+	private static final PageID DIRTY_PAGE = new PageID(5, 17);
+
+	private static final PageID CLEAN_PAGE = new PageID(5, 18);
+
+	private Map<PageID, Long> dirtyPages;
+
+	private RedoPrefetcher prefetcher;
+
+	@Test
+	public void testDirtiedAfterUpdate() {
+		assertTrue("update before recovery LSN", prefetcher
+				.isObsolete(update(DIRTY_PAGE, 100)));
+	}
+
+	@Test
+	public void testDirtiedBeforeUpdate() {
+		assertFalse("update at recovery LSN", prefetcher.isObsolete(update(
+				DIRTY_PAGE, 500)));
+		assertFalse("update after recovery LSN", prefetcher
+				.isObsolete(update(DIRTY_PAGE, 600)));
+	}
+
+	@Test
+	public void testPageMissingInDirtyPageTable() {
+		// e.g., a crash after the checkpoint record but before the write
+		// that cleaned the page was stable: only the page LSN can tell
+		assertFalse("page not in dirty page table", prefetcher
+				.isObsolete(update(CLEAN_PAGE, 100)));
+	}
+
+	@Test
+	public void testUpdateNotCovered() {
+		assertFalse("update after cover LSN", prefetcher.isObsolete(update(
+				DIRTY_PAGE, COVER_LSN)));
+	}
+
+	@Test
+	public void testWithoutCheckpoint() {
+		RedoPrefetcher prefetcher = new RedoPrefetcher(null, null, 16, null,
+				COVER_LSN);
+		assertFalse("no dirty page table", prefetcher.isObsolete(update(
+				DIRTY_PAGE, 100)));
+	}
+
+	@Test
+	public void testCheckpointReadAhead() throws Exception {
+		final Queue<Loggable> log = new ArrayDeque<Loggable>();
+		Loggable first = update(DIRTY_PAGE, 100);
+		log.add(first);
+		log.add(update(CLEAN_PAGE, 200));
+		Loggable checkpoint = new LogRecordHelper().createCheckpoint(
+				new TxID(0), -1, new CheckpointLogOperation(COVER_LSN,
+						dirtyPages, new HashMap<TxID, long[]>()));
+		checkpoint.setLSN(300);
+		log.add(checkpoint);
+
+		LogReader reader = new LogReader() {
+			@Override
+			public Loggable next() {
+				return log.poll();
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		RedoPrefetcher prefetcher = new RedoPrefetcher(reader, null, 16,
+				null, -1);
+		assertFalse("no checkpoint read yet", prefetcher.isObsolete(first));
+
+		// the look-ahead passes the checkpoint before the first record is
+		// handed out
+		assertTrue("first record", prefetcher.next() == first);
+		assertTrue("update before recovery LSN of later checkpoint",
+				prefetcher.isObsolete(first));
+	}
+
+	private Loggable update(final PageID pageID, long lsn) {
+		LogOperation logOp = new LogOperation((byte) 0) {
+			@Override
+			public PageID getRedoPageID() {
+				return pageID;
+			}
+
+			@Override
+			public void toBytes(ByteBuffer buffer) {
+			}
+
+			@Override
+			public int getSize() {
+				return 0;
+			}
+
+			@Override
+			public void redo(Tx tx, long LSN) throws LogException {
+			}
+
+			@Override
+			public void undo(Tx tx, long LSN, long undoNextLSN)
+					throws LogException {
+			}
+		};
+		Loggable loggable = new LogRecordHelper().createUpdate(new TxID(1),
+				-1, logOp);
+		loggable.setLSN(lsn);
+		return loggable;
+	}
+
+	@Before
+	public void setUp() {
+		dirtyPages = new HashMap<PageID, Long>();
+		dirtyPages.put(DIRTY_PAGE, 500L);
+		prefetcher = new RedoPrefetcher(null, null, 16, dirtyPages, COVER_LSN);
+	}
+}
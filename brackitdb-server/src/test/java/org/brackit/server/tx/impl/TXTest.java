@@ -0,0 +1,132 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.brackit.server.io.buffer.Buffer;
+import org.brackit.server.io.buffer.Handle;
+import org.brackit.server.io.manager.BufferMgr;
+import org.brackit.server.tx.IsolationLevel;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.log.LogException;
+import org.brackit.server.tx.log.impl.LogMockup;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TXTest {
+
+	private static final String CONTAINER_NAME = "txtest.cnt";
+
+	private static final int CONTAINER_NO = 98;
+
+	private CountingLog log;
+
+	private TaMgrMockup taMgr;
+
+	private Buffer buffer;
+
+	/**
+	 * Counts the requests to force the log.
+	 */
+	private static class CountingLog extends LogMockup {
+		int flushes;
+
+		@Override
+		public void flush(long lsn) throws LogException {
+			flushes++;
+			super.flush(lsn);
+		}
+
+		@Override
+		public void flushDeferred(long lsn) throws LogException {
+			flushes++;
+			super.flushDeferred(lsn);
+		}
+	}
+
+	@Test
+	public void testReadOnlyCommitWithoutLogIO() throws Exception {
+		Handle handle = allocate();
+		long nextLSN = log.getNextLSN();
+		int flushes = log.flushes;
+
+		Tx tx = taMgr.begin(IsolationLevel.SERIALIZABLE, null, true);
+		handle = buffer.fixPage(tx, handle.getPageID());
+		handle.latchS();
+		handle.unlatch();
+		buffer.unfixPage(handle);
+		tx.commit();
+
+		assertEquals("log forced", flushes, log.flushes);
+		assertEquals("log written", nextLSN, log.getNextLSN());
+	}
+
+	@Test
+	public void testCommitWithoutUpdatesWithoutLogIO() throws Exception {
+		Handle handle = allocate();
+		long nextLSN = log.getNextLSN();
+		int flushes = log.flushes;
+
+		Tx tx = taMgr.begin();
+		handle = buffer.fixPage(tx, handle.getPageID());
+		handle.latchS();
+		handle.unlatch();
+		buffer.unfixPage(handle);
+		tx.commit();
+
+		assertEquals("log forced", flushes, log.flushes);
+		assertEquals("log written", nextLSN, log.getNextLSN());
+	}
+
+	@Test
+	public void testCommitWithUpdatesForcesLog() throws Exception {
+		int flushes = log.flushes;
+		allocate();
+		assertEquals("log forced", flushes + 1, log.flushes);
+	}
+
+	private Handle allocate() throws Exception {
+		Tx tx = taMgr.begin();
+		Handle handle = buffer.allocatePage(tx, buffer.createUnit(tx));
+		handle.unlatch();
+		buffer.unfixPage(handle);
+		tx.commit();
+		return handle;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		log = new CountingLog();
+		taMgr = new TaMgrMockup(log);
+		BufferMgr bufferManager = taMgr.getBufferManager();
+		bufferManager.createBuffer(10, 4096, CONTAINER_NO, CONTAINER_NAME, 20,
+				10);
+		buffer = bufferManager.getBuffer(CONTAINER_NO);
+	}
+}
@@ -163,6 +163,53 @@ public class GenericLockServiceTest {
 				t1.getLockCB().get(lockService).getLocks().size());
 	}
 
+	@Test
+	public void testLockCache() throws TxException {
+		SimpleLockNameFactory path = buildLockNames(1, 2);
+		SimpleLockNameFactory subtree = buildLockNames(1, 2, 3);
+
+		lockService.request(t1, path, LockClass.COMMIT_DURATION, URIX.Mode.R,
+				false);
+		String held = t1.getLockCB().get(lockService).getLocks().toString();
+		assertEquals("ta lock count", 2, t1.getLockCB().get(lockService)
+				.getLocks().size());
+
+		// covered commit-duration requests are granted from the cache
+		assertEquals("cached mode", URIX.Mode.R, lockService.request(t1,
+				path, LockClass.COMMIT_DURATION, URIX.Mode.R, false));
+		assertEquals("cached mode", URIX.Mode.R, lockService.request(t1,
+				subtree, LockClass.COMMIT_DURATION, URIX.Mode.R, false));
+		assertEquals("held counts after cached grants", held, t1
+				.getLockCB().get(lockService).getLocks().toString());
+
+		// short-duration requests go to the lock table and count on the
+		// covering lock, so that their release restores its count
+		LockName covering = path.getLockName(1);
+		int count = lockService.getLock(t1, covering).getCount();
+		assertEquals("short mode", URIX.Mode.R, lockService.request(t1,
+				subtree, LockClass.SHORT_DURATION, URIX.Mode.R, false));
+		assertEquals("held count during short lock", count + 1, lockService
+				.getLock(t1, covering).getCount());
+		lockService.release(t1, subtree);
+		assertEquals("held count after release", count, lockService.getLock(
+				t1, covering).getCount());
+
+		// commit-duration locks survive further releases
+		lockService.release(t1, subtree);
+		assertEquals("held count after second release", count, lockService
+				.getLock(t1, covering).getCount());
+		assertEquals("ta lock count after release", 2, t1.getLockCB().get(
+				lockService).getLocks().size());
+		assertEquals("cached mode after release", URIX.Mode.R, lockService
+				.request(t1, path, LockClass.COMMIT_DURATION, URIX.Mode.R,
+						false));
+
+		t1.commit();
+
+		assertEquals("ta lock count after commit", 0,
+				t1.getLockCB().get(lockService).getLocks().size());
+	}
+
 	@Test
 	public void testReRequest() throws TxException {
 		lockService.request(t1, buildLockNames(1), LockClass.COMMIT_DURATION,
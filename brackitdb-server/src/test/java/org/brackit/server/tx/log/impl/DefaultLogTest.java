@@ -28,6 +28,16 @@
 package org.brackit.server.tx.log.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
 
 import org.brackit.server.ServerException;
 import org.brackit.server.io.manager.BufferMgr;
@@ -35,8 +45,13 @@ import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxException;
 import org.brackit.server.tx.TxMgr;
 import org.brackit.server.tx.impl.TaMgrMockup;
+import org.brackit.server.tx.TxID;
 import org.brackit.server.tx.log.LogException;
+import org.brackit.server.tx.log.LogProperties;
+import org.brackit.server.tx.log.LogReader;
 import org.brackit.server.tx.log.Loggable;
+import org.brackit.server.tx.log.impl.virtual.RAFSegmentHelper;
+import org.brackit.xquery.util.Cfg;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -125,6 +140,274 @@ public class DefaultLogTest {
 				.getTxID());
 	}
 
+	@Test
+	public void testFlushWaitsForReservedSlot() throws Exception {
+		CountDownLatch gate = new CountDownLatch(1);
+		Loggable slow = new GatedRecord(t1, gate, false);
+		Appender appender = append(slow);
+
+		long lsn = log.append(log.getLoggableHelper().createEOT(t2.getID(),
+				-1, true));
+		Flusher flusher = new Flusher(lsn);
+		flusher.start();
+		flusher.join(200);
+		assertTrue("flush waits for reserved slot", flusher.isAlive());
+
+		// the waiting flush must not block the log monitor
+		Thread reader = new Thread() {
+			public void run() {
+				try {
+					log.first();
+				} catch (LogException e) {
+				}
+			}
+		};
+		reader.start();
+		reader.join(5000);
+		assertFalse("log monitor available", reader.isAlive());
+
+		gate.countDown();
+		appender.join(5000);
+		flusher.join(5000);
+		assertFalse("flush finished", flusher.isAlive());
+		assertNull("append error", appender.error);
+		assertNull("flush error", flusher.error);
+		assertEquals("restored record", slow.getLSN(), log.get(slow.getLSN())
+				.getLSN());
+	}
+
+	@Test
+	public void testFailedAppendFailsLog() throws Exception {
+		CountDownLatch gate = new CountDownLatch(1);
+		Appender appender = append(new GatedRecord(t1, gate, true));
+
+		long lsn = log.append(log.getLoggableHelper().createEOT(t2.getID(),
+				-1, true));
+		Flusher flusher = new Flusher(lsn);
+		flusher.start();
+		flusher.join(200);
+		assertTrue("flush waits for reserved slot", flusher.isAlive());
+
+		gate.countDown();
+		appender.join(5000);
+		flusher.join(5000);
+		assertFalse("flush released", flusher.isAlive());
+		assertNotNull("append error", appender.error);
+		assertNotNull("flush error", flusher.error);
+
+		try {
+			log.append(log.getLoggableHelper().createEOT(t1.getID(), -1,
+					true));
+			fail("append to failed log");
+		} catch (LogException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSyncFlushWithoutGroupCommit() throws Exception {
+		Cfg.set(LogProperties.GROUP_COMMIT, "false");
+		Cfg.set(LogProperties.ASYNC_COMMIT_WINDOW, 0);
+		final DefaultLog log;
+
+		try {
+			// a slow sync widens the window between writing and forcing
+			LogMonitor monitor = new LogMonitor() {
+				@Override
+				synchronized void logSynced(long nanos) {
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+					}
+					super.logSynced(nanos);
+				}
+			};
+			log = new DefaultLog(new LogRecordHelper(), new SimpleLogBuffer(),
+					new RAFSegmentHelper(".", "SyncFlushTest", 1 << 16, 2),
+					1 << 16, monitor);
+			log.open();
+		} finally {
+			Cfg.set(LogProperties.GROUP_COMMIT, "true");
+			Cfg.set(LogProperties.ASYNC_COMMIT_WINDOW, 200);
+		}
+
+		final Exception[] error = new Exception[1];
+		Thread[] committers = new Thread[4];
+
+		for (int i = 0; i < committers.length; i++) {
+			final TxID txID = new TxID(i + 1);
+			committers[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < 100; j++) {
+							long lsn = log.append(log.getLoggableHelper()
+									.createEOT(txID, -1, true));
+
+							if (j % 2 == 0) {
+								log.flushDeferred(lsn);
+							} else {
+								log.flush(lsn);
+
+								if (log.getSyncedLSN() <= lsn) {
+									throw new LogException(
+											"Flush of LSN %s returned before sync.",
+											lsn);
+								}
+							}
+						}
+					} catch (Exception e) {
+						synchronized (error) {
+							error[0] = e;
+						}
+					}
+				}
+			};
+		}
+
+		try {
+			for (Thread committer : committers) {
+				committer.start();
+			}
+			for (Thread committer : committers) {
+				committer.join(30000);
+				assertFalse("committer finished", committer.isAlive());
+			}
+			if (error[0] != null) {
+				throw error[0];
+			}
+		} finally {
+			log.close();
+			log.clear();
+		}
+	}
+
+	@Test
+	public void testRecoverTornRecord() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			log.append(log.getLoggableHelper().createEOT(t1.getID(), i, true));
+		}
+		Loggable last = log.getLoggableHelper().createEOT(t2.getID(), 4711,
+				true);
+		long lastLSN = log.append(last);
+		log.flushAll();
+		log.close();
+
+		// zero the end of the last record and zero-fill the rest of the
+		// segment as if it was preallocated and the write was torn
+		byte[] bytes = last.toBytes();
+		int torn = bytes.length - 1;
+		while (bytes[torn] == 0) {
+			torn--;
+		}
+		File[] segments = new File(".").listFiles();
+		Arrays.sort(segments);
+		File tail = null;
+		for (File segment : segments) {
+			if ((segment.getName().startsWith(DefaultLog.class.getName()))
+					&& (segment.getName().endsWith(".log"))) {
+				tail = segment;
+			}
+		}
+		assertNotNull("tail segment", tail);
+		RandomAccessFile file = new RandomAccessFile(tail, "rw");
+		long length = file.length();
+		file.seek(length - bytes.length + torn);
+		file.write(new byte[bytes.length - torn]);
+		file.setLength(length + 4096);
+		file.close();
+
+		log.open();
+		assertEquals("end of log", lastLSN, log.getNextLSN());
+
+		LogReader reader = log.openReader();
+		Loggable loggable;
+		int count = 0;
+		while ((loggable = reader.next()) != null) {
+			assertTrue("record before torn record", loggable.getLSN() < lastLSN);
+			count++;
+		}
+		reader.close();
+		assertEquals("complete records", 10, count);
+	}
+
+	private Appender append(Loggable loggable) throws InterruptedException {
+		long next = log.getNextLSN();
+		Appender appender = new Appender(loggable);
+		appender.start();
+		// wait until the appender reserved its LSN
+		while ((log.getNextLSN() == next) && (appender.isAlive())) {
+			Thread.sleep(1);
+		}
+		return appender;
+	}
+
+	/**
+	 * Commit record which is serialized only after the gate opened.
+	 */
+	private static class GatedRecord extends LogRecord {
+		private final CountDownLatch gate;
+
+		private final boolean fail;
+
+		GatedRecord(Tx tx, CountDownLatch gate, boolean fail) {
+			super(Loggable.TYPE_EOT, tx.getID(), -1,
+					new EOTLogOperation(true), -1);
+			this.gate = gate;
+			this.fail = fail;
+		}
+
+		@Override
+		public byte[] toBytes() {
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			if (fail) {
+				throw new RuntimeException("Serialization failed.");
+			}
+			return super.toBytes();
+		}
+	}
+
+	private class Appender extends Thread {
+		private final Loggable loggable;
+
+		volatile Exception error;
+
+		Appender(Loggable loggable) {
+			this.loggable = loggable;
+		}
+
+		@Override
+		public void run() {
+			try {
+				log.append(loggable);
+			} catch (Exception e) {
+				error = e;
+			}
+		}
+	}
+
+	private class Flusher extends Thread {
+		private final long lsn;
+
+		volatile Exception error;
+
+		Flusher(long lsn) {
+			this.lsn = lsn;
+		}
+
+		@Override
+		public void run() {
+			try {
+				log.flush(lsn);
+			} catch (Exception e) {
+				error = e;
+			}
+		}
+	}
+
 	@Before
 	public void setUp() throws ServerException {
 		log = new DefaultLog(".", DefaultLog.class.getName(), 500);
@@ -95,6 +95,14 @@ public final class LogFileMockup implements LogFile {
 		return buffer.getLength();
 	}
 
+	@Override
+	public void setLength(long length) throws LogException {
+		if (checkOpen)
+			checkOpen();
+
+		buffer.truncate((int) length);
+	}
+
 	@Override
 	public void seek(long pos) throws LogException {
 		if (checkOpen)
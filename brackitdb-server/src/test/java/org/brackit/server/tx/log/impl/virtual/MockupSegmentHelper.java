@@ -92,6 +92,15 @@ public class MockupSegmentHelper implements SegmentLogFileHelper {
 		return tail;
 	}
 
+	@Override
+	public void recycle(SegmentLogFile segment) throws LogException {
+		segment.delete();
+	}
+
+	@Override
+	public void close() throws LogException {
+	}
+
 	@Override
 	public void delete() throws LogException {
 		files.clear();
@@ -0,0 +1,209 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.mvcc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.brackit.server.io.buffer.Handle;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.tx.DummyTX;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxException;
+import org.brackit.server.tx.TxID;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VersionStoreTest {
+	private static final int OFFSET = 100;
+
+	private VersionStore store;
+
+	private long nextTxID;
+
+	private Tx createTx() {
+		final TxID txID = new TxID(++nextTxID);
+		return new DummyTX() {
+			@Override
+			public TxID getID() {
+				return txID;
+			}
+		};
+	}
+
+	private Handle createPage(int pageNo) {
+		Handle handle = new Handle(256) {
+		};
+		handle.init(new PageID(pageNo), 0);
+		return handle;
+	}
+
+	private void modify(Tx tx, Handle handle, int value) {
+		store.beforeUpdate(tx, handle);
+		handle.page[OFFSET] = (byte) value;
+	}
+
+	private int read(Snapshot snapshot, Handle handle) throws TxException {
+		Handle version = snapshot.getVersion(handle.getPageID());
+		return (version != null) ? version.page[OFFSET]
+				: handle.page[OFFSET];
+	}
+
+	@Before
+	public void setUp() {
+		store = new VersionStore();
+	}
+
+	@Test
+	public void testSnapshotSeesCommittedState() throws TxException {
+		Handle page = createPage(1);
+		Tx writer = createTx();
+		modify(writer, page, 1);
+		store.finish(writer);
+
+		Tx other = createTx();
+		modify(other, page, 2);
+		Snapshot snapshot = store.openSnapshot();
+		modify(other, page, 3);
+		assertEquals("uncommitted change invisible", 1, read(snapshot, page));
+
+		store.finish(other);
+		assertEquals("change committed after begin invisible", 1, read(
+				snapshot, page));
+
+		Snapshot later = store.openSnapshot();
+		assertEquals("committed change visible", 3, read(later, page));
+		assertNull("current page visible", later.getVersion(page.getPageID()));
+
+		snapshot.close();
+		later.close();
+		assertEquals("versions collected", 0, store.versionedPages());
+	}
+
+	@Test
+	public void testDependentWriterInvisible() throws TxException {
+		Handle page1 = createPage(1);
+		Handle page2 = createPage(2);
+		Tx first = createTx();
+		Tx second = createTx();
+
+		modify(first, page1, 1);
+		modify(second, page1, 2);
+		modify(second, page2, 2);
+		store.finish(second);
+
+		// second modified page1 after first and must not be seen partially
+		Snapshot snapshot = store.openSnapshot();
+		assertEquals("page1 before first writer", 0, read(snapshot, page1));
+		assertEquals("page2 without dependent writer", 0, read(snapshot,
+				page2));
+
+		store.finish(first);
+		Snapshot later = store.openSnapshot();
+		assertEquals("page1 after both writers", 2, read(later, page1));
+		assertEquals("page2 after both writers", 2, read(later, page2));
+
+		assertEquals("versions kept for active snapshot", 2, store
+				.versionedPages());
+		snapshot.close();
+		assertEquals("versions collected", 0, store.versionedPages());
+		later.close();
+	}
+
+	@Test
+	public void testInterleavedWriters() throws TxException {
+		Handle page = createPage(1);
+		Tx first = createTx();
+		Tx second = createTx();
+
+		modify(first, page, 1);
+		modify(second, page, 2);
+		modify(first, page, 3);
+		store.finish(first);
+
+		Snapshot snapshot = store.openSnapshot();
+		assertEquals("interleaved writers invisible", 0, read(snapshot, page));
+
+		store.finish(second);
+		Snapshot later = store.openSnapshot();
+		assertNotNull("older snapshot still versioned", snapshot
+				.getVersion(page.getPageID()));
+		assertEquals("interleaved writers visible", 3, read(later, page));
+
+		snapshot.close();
+		later.close();
+		assertEquals("versions collected", 0, store.versionedPages());
+	}
+
+	@Test
+	public void testAllocatedPage() throws TxException {
+		Handle page = createPage(1);
+		Tx writer = createTx();
+		store.allocated(writer, page);
+		Snapshot snapshot = store.openSnapshot();
+
+		try {
+			snapshot.getVersion(page.getPageID());
+			fail("allocated page visible in snapshot");
+		} catch (TxException e) {
+			// expected
+		}
+
+		store.finish(writer);
+		snapshot.close();
+		assertEquals("versions collected", 0, store.versionedPages());
+	}
+
+	@Test
+	public void testDroppedPageReused() throws TxException {
+		Handle page = createPage(1);
+		page.page[OFFSET] = 7;
+		Snapshot snapshot = store.openSnapshot();
+
+		// a dropped page is versioned before it is deallocated
+		Tx dropper = createTx();
+		store.beforeUpdate(dropper, page);
+		store.finish(dropper);
+
+		Tx reuser = createTx();
+		store.allocated(reuser, page);
+		page.page[OFFSET] = 9;
+		store.finish(reuser);
+
+		assertEquals("dropped content retained", 7, read(snapshot, page));
+
+		Snapshot later = store.openSnapshot();
+		assertEquals("reused page visible", 9, read(later, page));
+
+		snapshot.close();
+		later.close();
+		assertEquals("versions collected", 0, store.versionedPages());
+	}
+}
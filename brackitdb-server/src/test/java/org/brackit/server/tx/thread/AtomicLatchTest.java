@@ -0,0 +1,329 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AtomicLatchTest {
+
+	private AtomicLatch latch;
+
+	@Test
+	public void testSharedCompatibility() {
+		latch.latchS();
+		assertTrue("S compatible with S", latch.latchSC());
+		assertTrue("U compatible with S", latch.latchUC());
+		assertEquals("mode", Latch.MODE_U, latch.getMode());
+		assertFalse("U blocks new S", latch.latchSC());
+		assertFalse("U incompatible with U", latch.latchUC());
+		assertFalse("X incompatible with S and U", latch.latchXC());
+		latch.unlatch();
+		assertEquals("mode", Latch.MODE_S, latch.getMode());
+		assertFalse("X incompatible with S", latch.latchXC());
+		latch.unlatch();
+		latch.unlatch();
+		assertEquals("mode", Latch.MODE_NONE, latch.getMode());
+		assertTrue("X on free latch", latch.latchXC());
+		latch.unlatch();
+	}
+
+	@Test
+	public void testExclusiveCompatibility() {
+		latch.latchX();
+		assertTrue("latched X", latch.isLatchedX());
+		assertFalse("S incompatible with X", latch.latchSC());
+		assertFalse("U incompatible with X", latch.latchUC());
+		assertFalse("X incompatible with X", latch.latchXC());
+		latch.unlatch();
+		assertFalse("latched", latch.isLatchedS());
+	}
+
+	@Test
+	public void testBlockedRequests() throws Exception {
+		latch.latchX();
+		Waiter reader = new Waiter(Latch.MODE_S);
+		Waiter writer = new Waiter(Latch.MODE_X);
+		writer.start();
+		assertFalse("X waits for X", writer.acquired.await(100,
+				TimeUnit.MILLISECONDS));
+		reader.start();
+		assertFalse("S waits for X", reader.acquired.await(100,
+				TimeUnit.MILLISECONDS));
+		latch.unlatch();
+		assertTrue("X granted", writer.acquired.await(5, TimeUnit.SECONDS));
+		assertTrue("latched X", latch.isLatchedX());
+		assertFalse("S defers to waiting X", reader.acquired.await(100,
+				TimeUnit.MILLISECONDS));
+		writer.release.countDown();
+		assertTrue("S granted", reader.acquired.await(5, TimeUnit.SECONDS));
+		reader.release.countDown();
+		reader.join();
+		writer.join();
+		assertEquals("mode", Latch.MODE_NONE, latch.getMode());
+	}
+
+	@Test
+	public void testUpXWaitsForReaders() throws Exception {
+		Waiter reader = new Waiter(Latch.MODE_S);
+		reader.start();
+		assertTrue("S granted", reader.acquired.await(5, TimeUnit.SECONDS));
+
+		latch.latchU();
+		Thread releaser = new Thread() {
+			public void run() {
+				try {
+					sleep(100);
+				} catch (InterruptedException e) {
+				}
+				reader.release.countDown();
+			}
+		};
+		releaser.start();
+		latch.upX();
+		assertEquals("reader left before upgrade", 0, reader.release
+				.getCount());
+		assertTrue("latched X", latch.isLatchedX());
+		assertFalse("S incompatible with X", latch.latchSC());
+		latch.unlatch();
+		releaser.join();
+		reader.join();
+		assertEquals("mode", Latch.MODE_NONE, latch.getMode());
+	}
+
+	@Test
+	public void testUpXWithoutUpdateLatch() {
+		latch.latchS();
+		try {
+			latch.upX();
+			throw new AssertionError("upgrade of shared latch");
+		} catch (IllegalStateException e) {
+			// expected
+		} finally {
+			latch.unlatch();
+		}
+	}
+
+	@Test
+	public void testDownS() {
+		latch.latchX();
+		latch.downS();
+		assertEquals("downgraded X", Latch.MODE_S, latch.getMode());
+		assertTrue("S compatible", latch.latchSC());
+		assertFalse("X incompatible", latch.latchXC());
+		latch.unlatch();
+		latch.unlatch();
+
+		latch.latchU();
+		latch.downS();
+		assertEquals("downgraded U", Latch.MODE_S, latch.getMode());
+		assertTrue("U compatible", latch.latchUC());
+		latch.unlatch();
+		latch.unlatch();
+		assertEquals("mode", Latch.MODE_NONE, latch.getMode());
+	}
+
+	@Test
+	public void testVersionParity() {
+		int stamp = latch.readVersion();
+		assertTrue("stamp of free latch", stamp != -1);
+		assertEquals("even version", 0, stamp & 1);
+
+		latch.latchS();
+		latch.latchU();
+		latch.unlatch();
+		latch.unlatch();
+		assertTrue("S and U keep version", latch.validate(stamp));
+
+		latch.latchX();
+		assertEquals("no stamp while latched X", -1, latch.readVersion());
+		assertFalse("X invalidates", latch.validate(stamp));
+		latch.unlatch();
+		assertFalse("X invalidates", latch.validate(stamp));
+		assertFalse("no stamp", latch.validate(-1));
+
+		stamp = latch.readVersion();
+		assertEquals("even version", 0, stamp & 1);
+		latch.latchU();
+		latch.upX();
+		assertEquals("no stamp after upgrade", -1, latch.readVersion());
+		latch.downS();
+		int downgraded = latch.readVersion();
+		assertTrue("stamp after downgrade", downgraded != -1);
+		assertFalse("upgrade invalidates", latch.validate(stamp));
+		latch.unlatch();
+		assertTrue("S keeps version", latch.validate(downgraded));
+
+		assertTrue("XC", latch.latchXC());
+		assertEquals("no stamp while latched X", -1, latch.readVersion());
+		latch.unlatch();
+		assertFalse("XC invalidates", latch.validate(downgraded));
+	}
+
+	@Test
+	public void testStress() throws Exception {
+		final int[] pair = new int[2];
+		final int[] writes = new int[1];
+		final Throwable[] error = new Throwable[1];
+		final int iterations = 20000;
+		Thread[] threads = new Thread[8];
+
+		for (int i = 0; i < threads.length; i++) {
+			final long seed = i;
+			threads[i] = new Thread() {
+				public void run() {
+					Random rand = new Random(seed);
+					try {
+						for (int j = 0; j < iterations; j++) {
+							switch (rand.nextInt(6)) {
+							case 0:
+								latch.latchX();
+								write(pair, writes);
+								latch.unlatch();
+								break;
+							case 1:
+								latch.latchU();
+								check(pair);
+								latch.upX();
+								write(pair, writes);
+								latch.unlatch();
+								break;
+							case 2:
+								latch.latchU();
+								latch.downS();
+								check(pair);
+								latch.unlatch();
+								break;
+							case 3:
+								if (latch.latchXC()) {
+									write(pair, writes);
+									latch.downS();
+									check(pair);
+									latch.unlatch();
+								}
+								break;
+							case 4:
+								if (!latch.latchSC()) {
+									latch.latchS();
+								}
+								check(pair);
+								latch.unlatch();
+								break;
+							default:
+								// optimistic read
+								int stamp = latch.readVersion();
+								int a = pair[0];
+								int b = pair[1];
+								if ((latch.validate(stamp)) && (a != b)) {
+									throw new AssertionError(String.format(
+											"validated torn read %s != %s",
+											a, b));
+								}
+							}
+						}
+					} catch (Throwable e) {
+						synchronized (error) {
+							error[0] = e;
+						}
+					}
+				}
+			};
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		if (error[0] != null) {
+			throw new AssertionError(error[0]);
+		}
+		assertEquals("mode", Latch.MODE_NONE, latch.getMode());
+		assertEquals("lost writes", writes[0], pair[0]);
+		check(pair);
+	}
+
+	private static void write(int[] pair, int[] writes) {
+		pair[0]++;
+		Thread.yield();
+		pair[1]++;
+		writes[0]++;
+	}
+
+	private static void check(int[] pair) {
+		if (pair[0] != pair[1]) {
+			throw new AssertionError(String.format("torn read %s != %s",
+					pair[0], pair[1]));
+		}
+	}
+
+	/**
+	 * Acquires the latch in the given mode and holds it until released.
+	 */
+	private class Waiter extends Thread {
+		final int mode;
+
+		final CountDownLatch acquired = new CountDownLatch(1);
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		Waiter(int mode) {
+			this.mode = mode;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			if (mode == Latch.MODE_S) {
+				latch.latchS();
+			} else {
+				latch.latchX();
+			}
+			acquired.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+			latch.unlatch();
+		}
+	}
+
+	@Before
+	public void setUp() {
+		latch = new AtomicLatch();
+	}
+}
@@ -188,7 +188,8 @@ public class LatchTest {
 	public static void main(String[] args) {
 		LatchTest test = new LatchTest();
 
-		Latch[] latches = new Latch[] { new SyncLatch() };
+		Latch[] latches = new Latch[] { new SyncLatch(),
+				new AtomicLatch() };
 
 		for (Latch latch : latches) {
 			System.out.println(latch.getClass().getSimpleName() + ":\n");